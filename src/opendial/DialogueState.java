@@ -26,30 +26,39 @@ package opendial;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.logging.Logger;
 
 import opendial.bn.BNetwork;
 import opendial.bn.distribs.CategoricalTable;
+import opendial.bn.distribs.ContinuousDistribution;
+import opendial.bn.distribs.EmpiricalDistribution;
 import opendial.bn.distribs.IndependentDistribution;
 import opendial.bn.distribs.MultivariateDistribution;
 import opendial.bn.distribs.MultivariateTable;
 import opendial.bn.distribs.SingleValueDistribution;
 import opendial.bn.distribs.UtilityTable;
+import opendial.bn.distribs.densityfunctions.DensityFunction;
+import opendial.bn.distribs.densityfunctions.DirichletDensityFunction;
 import opendial.bn.nodes.ActionNode;
 import opendial.bn.nodes.BNode;
 import opendial.bn.nodes.ChanceNode;
 import opendial.bn.nodes.UtilityNode;
+import opendial.bn.values.Value;
 import opendial.bn.values.ValueFactory;
 import opendial.datastructs.Assignment;
 import opendial.datastructs.Template;
 import opendial.datastructs.ValueRange;
+import opendial.datastructs.VariableId;
 import opendial.domains.rules.Rule;
 import opendial.domains.rules.distribs.AnchoredRule;
 import opendial.domains.rules.distribs.EquivalenceDistribution;
 import opendial.domains.rules.distribs.OutputDistribution;
+import opendial.inference.FactoredDecision;
 import opendial.inference.SwitchingAlgorithm;
 import opendial.inference.approximate.SamplingAlgorithm;
 import opendial.modules.StatePruner;
@@ -85,6 +94,12 @@ public class DialogueState extends BNetwork {
 	/** Subset of variables that are currently incrementally constructed */
 	Set<String> incrementalVars;
 
+	/** Subset of variables with a pending (not yet committed) update */
+	Set<String> newVars;
+
+	// probability mass dropped by the resource bounds since the last reset
+	double droppedMass = 0.0;
+
 	// ===================================
 	// DIALOGUE STATE CONSTRUCTION
 	// ===================================
@@ -108,6 +123,8 @@ public class DialogueState extends BNetwork {
 		evidence = new Assignment();
 		parameterVars = new HashSet<String>();
 		incrementalVars = new HashSet<String>();
+		newVars = new HashSet<String>();
+		getChanceNodeIds().stream().forEach(id -> trackNewVariable(id, true));
 	}
 
 	/**
@@ -122,6 +139,8 @@ public class DialogueState extends BNetwork {
 		this.evidence = new Assignment(evidence);
 		parameterVars = new HashSet<String>();
 		incrementalVars = new HashSet<String>();
+		newVars = new HashSet<String>();
+		getChanceNodeIds().stream().forEach(id -> trackNewVariable(id, true));
 	}
 
 	/**
@@ -137,6 +156,8 @@ public class DialogueState extends BNetwork {
 		this.evidence = new Assignment(evidence);
 		parameterVars = new HashSet<String>();
 		incrementalVars = new HashSet<String>();
+		newVars = new HashSet<String>();
+		getChanceNodeIds().stream().forEach(id -> trackNewVariable(id, true));
 	}
 
 	/**
@@ -150,6 +171,7 @@ public class DialogueState extends BNetwork {
 			return;
 		}
 		evidence.removePairs(getChanceNodeIds());
+		newVars.clear();
 		super.reset(network);
 		if (network instanceof DialogueState) {
 			evidence.addAssignment(((DialogueState) network).getEvidence());
@@ -460,6 +482,28 @@ public class DialogueState extends BNetwork {
 		}
 	}
 
+	/**
+	 * Returns the N-best joint assignments of the action variables, together with
+	 * their expected utilities. Contrary to {@link #queryUtil(Collection)}, the
+	 * query exploits the additive structure of the utility nodes to avoid
+	 * enumerating the full cartesian product of the action values (see
+	 * {@link FactoredDecision}).
+	 * 
+	 * @param actionVars the action variables to consider
+	 * @param nbest the number of joint actions to return
+	 * @return the utility table for the N-best joint actions
+	 */
+	public UtilityTable queryUtil(Collection<String> actionVars, int nbest) {
+		try {
+			return new FactoredDecision().queryBestActions(this, actionVars,
+					evidence, nbest);
+		}
+		catch (Exception e) {
+			log.warning("cannot perform inference: " + e);
+			return new UtilityTable();
+		}
+	}
+
 	/**
 	 * Returns the total utility of the dialogue state (marginalising over all
 	 * possible state variables).
@@ -504,6 +548,89 @@ public class DialogueState extends BNetwork {
 		return parameterVars;
 	}
 
+	/**
+	 * Returns the dimension associated with each value of the rule node that
+	 * depends on the given parameter, provided the parameter follows a Dirichlet
+	 * distribution and its only output node is a probability rule drawing its
+	 * effects with probabilities given by the dimensions of the parameter (in which
+	 * case the posterior of the parameter can be updated in closed form). Else,
+	 * returns an empty map.
+	 * 
+	 * @param paramId the parameter identifier
+	 * @return the dimension associated with each value of the rule node, or an
+	 *         empty map
+	 */
+	public Map<Value, Integer> getCategoricalDimensions(String paramId) {
+		if (!parameterVars.contains(paramId) || !hasChanceNode(paramId)) {
+			return new HashMap<Value, Integer>();
+		}
+		ChanceNode paramNode = getChanceNode(paramId);
+		Set<BNode> outputNodes = paramNode.getOutputNodes();
+		if (!(paramNode.getDistrib() instanceof ContinuousDistribution)
+				|| outputNodes.size() != 1) {
+			return new HashMap<Value, Integer>();
+		}
+		DensityFunction function =
+				((ContinuousDistribution) paramNode.getDistrib()).getFunction();
+		BNode outputNode = outputNodes.iterator().next();
+		if (!(function instanceof DirichletDensityFunction)
+				|| !(outputNode instanceof ChanceNode)
+				|| !(((ChanceNode) outputNode).getDistrib() instanceof AnchoredRule)) {
+			return new HashMap<Value, Integer>();
+		}
+		AnchoredRule rule = (AnchoredRule) ((ChanceNode) outputNode).getDistrib();
+		return rule.getCategoricalDimensions(paramId, function.getDimensions());
+	}
+
+	/**
+	 * Returns the parameters (among the ones provided as argument) whose posterior
+	 * can be computed in closed form (see {@link #getCategoricalDimensions}),
+	 * mapped to the identifier of the rule node that depends on them.
+	 * 
+	 * @param paramIds the parameter identifiers
+	 * @return the mapping from conjugate parameters to their rule node
+	 */
+	public Map<String, String> getConjugateParameters(Collection<String> paramIds) {
+		Map<String, String> conjugates = new HashMap<String, String>();
+		for (String paramId : paramIds) {
+			if (!getCategoricalDimensions(paramId).isEmpty()) {
+				conjugates.put(paramId, getChanceNode(paramId).getOutputNodesIds()
+						.iterator().next());
+			}
+		}
+		return conjugates;
+	}
+
+	/**
+	 * Returns the posterior distribution for a Dirichlet parameter whose output node
+	 * is a categorical draw, given the weighted samples for the rule node. The
+	 * posterior is computed in closed form from the probability of each outcome.
+	 * The parameter must be one of the conjugate parameters of the state (see
+	 * {@link #getConjugateParameters}).
+	 * 
+	 * @param paramId the parameter identifier
+	 * @param samples the weighted samples (including the rule node)
+	 * @return the posterior distribution for the parameter
+	 */
+	public ContinuousDistribution getConjugatePosterior(String paramId,
+			EmpiricalDistribution samples) {
+		ChanceNode paramNode = getChanceNode(paramId);
+		Map<Value, Integer> dimensions = getCategoricalDimensions(paramId);
+		String ruleId = paramNode.getOutputNodesIds().iterator().next();
+		DirichletDensityFunction prior =
+				(DirichletDensityFunction) ((ContinuousDistribution) paramNode
+						.getDistrib()).getFunction();
+		IndependentDistribution outcomes = samples.getMarginal(ruleId);
+		double[] probs = new double[prior.getDimensions()];
+		for (Value outcome : outcomes.getValues()) {
+			if (dimensions.containsKey(outcome)) {
+				probs[dimensions.get(outcome)] += outcomes.getProb(outcome);
+			}
+		}
+		return new ContinuousDistribution(paramId,
+				prior.getPosteriorFromOutcome(probs));
+	}
+
 	/**
 	 * Returns a sample of all the variables in the dialogue state
 	 * 
@@ -515,18 +642,13 @@ public class DialogueState extends BNetwork {
 
 	/**
 	 * Returns the set of updated variables in the dialogue state (that is, the one
-	 * that have a prime ' in their label.
+	 * that have a prime ' in their label. The set is maintained as nodes are added,
+	 * removed or renamed, and does not require scanning the state.
 	 * 
 	 * @return the list of updated variables
 	 */
 	public synchronized Set<String> getNewVariables() {
-		Set<String> newVars = new HashSet<String>();
-		for (String var : getChanceNodeIds()) {
-			if (var.endsWith("'")) {
-				newVars.add(var.substring(0, var.length() - 1));
-			}
-		}
-		return newVars;
+		return new HashSet<String>(newVars);
 	}
 
 	/**
@@ -536,7 +658,7 @@ public class DialogueState extends BNetwork {
 	 * @return true if the variable is incremental, false otherwise
 	 */
 	public boolean isIncremental(String var) {
-		return incrementalVars.contains(var.replace("'", ""));
+		return incrementalVars.contains(VariableId.of(var).getBase());
 	}
 
 	/**
@@ -548,10 +670,93 @@ public class DialogueState extends BNetwork {
 		return incrementalVars;
 	}
 
+	/**
+	 * Returns the probability mass that was dropped from the state variables to
+	 * enforce the resource bounds of the state pruner, accumulated over all
+	 * prunings since the last call to {@link #resetDroppedMass()} (i.e. since the
+	 * start of the current update cycle, when the state is used by a dialogue
+	 * system).
+	 * 
+	 * @return the dropped probability mass
+	 */
+	public double getDroppedMass() {
+		return droppedMass;
+	}
+
+	/**
+	 * Resets the accumulated probability mass dropped by the state pruner to zero.
+	 */
+	public void resetDroppedMass() {
+		droppedMass = 0.0;
+	}
+
 	// ===================================
 	// UTILITY FUNCTIONS
 	// ===================================
 
+	/**
+	 * Adds a new node to the dialogue state, and records its variable as updated if
+	 * its label is primed.
+	 * 
+	 * @param node the node to add
+	 */
+	@Override
+	public void addNode(BNode node) {
+		super.addNode(node);
+		if (node instanceof ChanceNode) {
+			trackNewVariable(node.getId(), true);
+		}
+	}
+
+	/**
+	 * Removes a node from the dialogue state, given its identifier
+	 * 
+	 * @param nodeId the node identifier
+	 * @return the value for the node, if it exists
+	 */
+	@Override
+	public BNode removeNode(String nodeId) {
+		BNode node = super.removeNode(nodeId);
+		if (node instanceof ChanceNode) {
+			trackNewVariable(nodeId, false);
+		}
+		return node;
+	}
+
+	/**
+	 * Modifies the node identifier in the dialogue state
+	 * 
+	 * @param oldNodeId the old node identifier
+	 * @param newNodeId the new node identifier
+	 */
+	@Override
+	public void modifyVariableId(String oldNodeId, String newNodeId) {
+		if (hasChanceNode(oldNodeId)) {
+			trackNewVariable(oldNodeId, false);
+		}
+		super.modifyVariableId(oldNodeId, newNodeId);
+	}
+
+	/**
+	 * Records (or erases) the variable as updated if the node identifier denotes a
+	 * pending variable. Does nothing during the construction of the state.
+	 * 
+	 * @param nodeId the node identifier
+	 * @param added true if the node was added, false if it was removed
+	 */
+	private void trackNewVariable(String nodeId, boolean added) {
+		VariableId id = VariableId.of(nodeId);
+		if (newVars == null || !id.isPending()) {
+			return;
+		}
+		else if (added) {
+			newVars.add(id.getBase());
+		}
+		else {
+			newVars.remove(id.getBase());
+		}
+	}
+
 	public void setAsCommitted(String var) {
 		if (incrementalVars.contains(var)) {
 			incrementalVars.remove(var);
@@ -565,7 +770,7 @@ public class DialogueState extends BNetwork {
 	 */
 	public void reduce() {
 		if (!getNewVariables().isEmpty() || !evidence.isEmpty()) {
-			StatePruner.prune(this);
+			droppedMass += StatePruner.prune(this);
 		}
 	}
 
@@ -583,6 +788,25 @@ public class DialogueState extends BNetwork {
 		return sn;
 	}
 
+	/**
+	 * Returns the part of the dialogue state that contains the given nodes, together
+	 * with the evidence and the parameter and incremental variables of the state.
+	 * 
+	 * <p>
+	 * NB: the nodes are not copied but moved to the returned state, and the node
+	 * identifiers should cover complete cliques of the network (as the edges to
+	 * other nodes are left unchanged).
+	 * 
+	 * @param nodeIds the identifiers of the nodes to include
+	 * @return the corresponding dialogue state
+	 */
+	public DialogueState getSubState(Collection<String> nodeIds) {
+		DialogueState sub = new DialogueState(getNodes(nodeIds), evidence);
+		sub.parameterVars = new HashSet<String>(parameterVars);
+		sub.incrementalVars = new HashSet<String>(incrementalVars);
+		return sub;
+	}
+
 	/**
 	 * Returns a string representation of the dialogue state
 	 * 
@@ -668,10 +892,11 @@ public class DialogueState extends BNetwork {
 			// else, simply add an additional edge
 			else {
 				outputNode = getChanceNode(updatedVar);
-				outputDistrib = (OutputDistribution) outputNode.getDistrib();
+				outputDistrib =
+						(OutputDistribution) outputNode.getMutableDistrib();
 			}
-			outputNode.addInputNode(ruleNode);
 			outputDistrib.addEffects(arule.getEffects());
+			outputNode.addInputNode(ruleNode);
 
 		}
 	}
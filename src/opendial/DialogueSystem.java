@@ -81,6 +81,12 @@ public class DialogueSystem {
 	// the dialogue state
 	protected DialogueState curState;
 
+	// the last published snapshot of the dialogue state
+	protected volatile DialogueState snapshot;
+
+	// the version number of the last published snapshot
+	protected volatile long snapshotVersion = 0;
+
 	// the dialogue domain
 	protected Domain domain;
 
@@ -108,6 +114,7 @@ public class DialogueSystem {
 
 		settings = new Settings();
 		curState = new DialogueState();
+		snapshot = curState.copy();
 
 		// inserting standard modules
 		modules = new ArrayList<Module>();
@@ -175,6 +182,7 @@ public class DialogueSystem {
 		changeSettings(domain.getSettings());
 		curState = domain.getInitialState().copy();
 		curState.setParameters(domain.getParameters());
+		publishSnapshot();
 		if (!paused) {
 			startSystem();
 		}
@@ -634,6 +642,7 @@ public class DialogueSystem {
 		}
 
 		updating = true;
+		curState.resetDroppedMass();
 
 		// finding the new variables that must be processed
 		Set<String> toProcess = curState.getNewVariables();
@@ -664,9 +673,26 @@ public class DialogueSystem {
 		}
 
 		updating = false;
+		if (!updatedVars.isEmpty()) {
+			publishSnapshot();
+		}
 		return updatedVars;
 	}
 
+	/**
+	 * Publishes a new snapshot of the current dialogue state. The snapshot is a
+	 * copy of the state that is never modified by the system afterwards, and can
+	 * therefore be read without any locking while the system continues its
+	 * updates. Older snapshots are garbage-collected once no reader refers to them.
+	 */
+	protected void publishSnapshot() {
+		synchronized (curState) {
+			DialogueState newSnapshot = curState.copy();
+			snapshotVersion++;
+			snapshot = newSnapshot;
+		}
+	}
+
 	/**
 	 * Connects to a remote client with the given IP address and port
 	 * 
@@ -694,6 +720,29 @@ public class DialogueSystem {
 		return curState;
 	}
 
+	/**
+	 * Returns the snapshot of the dialogue state published after the last completed
+	 * update. Contrary to {@link #getState()}, the snapshot is not modified by
+	 * subsequent updates, and can be queried from other threads without blocking
+	 * the system (or observing partially updated states). The snapshot must be
+	 * treated as read-only.
+	 * 
+	 * @return the last published snapshot of the dialogue state
+	 */
+	public DialogueState getSnapshot() {
+		return snapshot;
+	}
+
+	/**
+	 * Returns the version number of the last published snapshot, which is
+	 * incremented after each completed update of the dialogue state.
+	 * 
+	 * @return the snapshot version
+	 */
+	public long getSnapshotVersion() {
+		return snapshotVersion;
+	}
+
 	/**
 	 * Returns who holds the current conversational floor (user, system, or free)
 	 * 
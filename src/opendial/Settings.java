@@ -67,6 +67,9 @@ public class Settings {
 	/** Number of discretisation buckets to convert continuous distributions */
 	public static int discretisationBuckets = 50;
 
+	/** Whether to place the discretisation buckets at the quantiles */
+	public static boolean quantileDiscretisation = false;
+
 	/** Whether to show the GUI */
 	public boolean showGUI;
 
@@ -209,6 +212,10 @@ public class Settings {
 			else if (key.equalsIgnoreCase("discretisation")) {
 				discretisationBuckets = Integer.parseInt(mapping.getProperty(key));
 			}
+			else if (key.equalsIgnoreCase("quantiles")) {
+				quantileDiscretisation =
+						Boolean.parseBoolean(mapping.getProperty(key));
+			}
 
 			else if (key.equalsIgnoreCase("recording")) {
 				if (mapping.getProperty(key).trim().equalsIgnoreCase("last")) {
@@ -291,6 +298,7 @@ public class Settings {
 		mapping.setProperty("samples", "" + nbSamples);
 		mapping.setProperty("timeout", "" + maxSamplingTime);
 		mapping.setProperty("discretisation", "" + discretisationBuckets);
+		mapping.setProperty("quantiles", "" + quantileDiscretisation);
 		mapping.setProperty(
 				"modules",
 				""
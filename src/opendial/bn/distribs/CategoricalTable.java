@@ -24,10 +24,15 @@
 package opendial.bn.distribs;
 
 import java.util.logging.*;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Random;
 import java.util.Set;
 
 import opendial.bn.distribs.densityfunctions.DiscreteDensityFunction;
@@ -36,7 +41,6 @@ import opendial.bn.values.DoubleVal;
 import opendial.bn.values.NoneVal;
 import opendial.bn.values.Value;
 import opendial.bn.values.ValueFactory;
-import opendial.datastructs.Intervals;
 import opendial.utils.InferenceUtils;
 import opendial.utils.MathUtils;
 import opendial.utils.StringUtils;
@@ -53,6 +57,12 @@ import org.w3c.dom.Node;
  * builder = new CategoricalTable.Builder("variable name"); builder.addRow(...);
  * CategoricalTable table = builder.build();
  * 
+ * <p>
+ * The table is stored as parallel arrays of values and probabilities. Sampling
+ * relies on the cumulative probabilities of the rows, and the lookup of numeric
+ * values that are not in the table (for continuous distributions) relies on a
+ * sorted index of the numeric values.
+ * 
  * @author Pierre Lison (plison@ifi.uio.no)
  *
  */
@@ -64,11 +74,41 @@ public class CategoricalTable implements IndependentDistribution {
 	// the variable name
 	String variable;
 
-	// the probability table
-	Map<Value, Double> table;
+	// the values of the table
+	Value[] values;
+
+	// the probabilities of each value (in the same order)
+	double[] probs;
+
+	// the hashcodes of each value (in the same order)
+	int[] hashes;
+
+	// index of the values in the arrays (only created for large tables)
+	Map<Value, Integer> indices;
+
+	// The lazily created caches below may be read concurrently by threads
+	// sharing the table (e.g. through a state snapshot). Each cache is thus
+	// fully built before being published through a single volatile field.
+
+	// set of values in the table (lazily created)
+	volatile Set<Value> valueSet;
+
+	// cumulative probabilities (used for binary search in sampling)
+	volatile double[] cumulative;
+
+	// whether the table can be converted to a continuous distribution (lazily
+	// determined)
+	volatile Boolean continuous;
+
+	// sorted numeric values and their indices in the arrays (used for binary
+	// search in continuous tables)
+	volatile SortedNumbers sortedNumbers;
 
-	// probability intervals (used for binary search in sampling)
-	Intervals<Value> intervals;
+	// tables up to this size are searched without index
+	static final int MAX_UNINDEXED_SIZE = 8;
+
+	// sampler for the table
+	static final Random sampler = new Random();
 
 	// ===================================
 	// TABLE CONSTRUCTION
@@ -84,7 +124,22 @@ public class CategoricalTable implements IndependentDistribution {
 	 */
 	protected CategoricalTable(String variable, Map<Value, Double> headTable) {
 		this.variable = variable;
-		this.table = headTable;
+		setRows(headTable.keySet().toArray(new Value[headTable.size()]),
+				headTable.values().stream().mapToDouble(d -> d).toArray(),
+				headTable.size());
+	}
+
+	/**
+	 * Constructs a new probability table with the given rows.
+	 * 
+	 * @param variable the name of the random variable
+	 * @param values the values of the table
+	 * @param probs the probabilities for each value
+	 * @param size the number of rows to include
+	 */
+	CategoricalTable(String variable, Value[] values, double[] probs, int size) {
+		this.variable = variable;
+		setRows(values, probs, size);
 	}
 
 	/**
@@ -139,22 +194,25 @@ public class CategoricalTable implements IndependentDistribution {
 	 */
 	@Override
 	public boolean pruneValues(double threshold) {
-		Map<Value, Double> newTable = new HashMap<Value, Double>();
-		boolean changed = false;
-		for (Value row : table.keySet()) {
-			double prob = table.get(row);
-			if (prob >= threshold) {
-				newTable.put(row, prob);
-			}
-			else {
-				changed = true;
+		Value[] newValues = new Value[values.length];
+		double[] newProbs = new double[values.length];
+		int k = 0;
+		double total = 0.0;
+		for (int i = 0; i < values.length; i++) {
+			if (probs[i] >= threshold) {
+				newValues[k] = values[i];
+				newProbs[k++] = probs[i];
+				total += probs[i];
 			}
 		}
 
+		boolean changed = (k < values.length);
 		if (changed) {
-			table = InferenceUtils.normalise(newTable);
+			for (int i = 0; i < k && total > 0.0; i++) {
+				newProbs[i] /= total;
+			}
+			setRows(newValues, newProbs, k);
 		}
-		intervals = null;
 		return changed;
 	}
 
@@ -171,36 +229,32 @@ public class CategoricalTable implements IndependentDistribution {
 	@Override
 	public double getProb(Value val) {
 
-		if (table.containsKey(val)) {
-			return table.get(val);
+		int index = indexOf(val);
+		if (index >= 0) {
+			return probs[index];
 		}
 
 		// if the distribution has continuous values, search for the closest
 		// element
 		else if (val instanceof DoubleVal && isContinuous()) {
-			double toFind = ((DoubleVal) val).getDouble();
-			Value closest =
-					table.keySet()
-							.stream()
-							.filter(v -> v instanceof DoubleVal)
-							.min((v1, v2) -> Double.compare(
-									Math.abs(((DoubleVal) v1).getDouble() - toFind),
-									Math.abs(((DoubleVal) v2).getDouble() - toFind)))
-							.get();
-			return getProb(closest);
+			index = getClosest(((DoubleVal) val).getDouble());
+			return (index >= 0) ? probs[index] : 0.0f;
 		}
 
 		else if (val instanceof ArrayVal && isContinuous()) {
 			double[] toFind = ((ArrayVal) val).getArray();
-			Value closest =
-					table.keySet()
-							.stream()
-							.filter(v -> v instanceof ArrayVal)
-							.min((v1, v2) -> Double.compare(MathUtils.getDistance(
-									((ArrayVal) v1).getArray(), toFind), MathUtils
-									.getDistance(((ArrayVal) v2).getArray(), toFind)))
-							.get();
-			return getProb(closest);
+			double minDistance = Double.MAX_VALUE;
+			for (int i = 0; i < values.length; i++) {
+				if (values[i] instanceof ArrayVal) {
+					double distance = MathUtils.getDistance(
+							((ArrayVal) values[i]).getArray(), toFind);
+					if (distance < minDistance) {
+						minDistance = distance;
+						index = i;
+					}
+				}
+			}
+			return (index >= 0) ? probs[index] : 0.0f;
 		}
 		return 0.0f;
 	}
@@ -212,7 +266,7 @@ public class CategoricalTable implements IndependentDistribution {
 	 * @return true if the table contains a row for the assignment, false otherwise
 	 */
 	public boolean hasProb(Value head) {
-		return table.containsKey(head);
+		return indexOf(head) >= 0;
 	}
 
 	/**
@@ -223,19 +277,37 @@ public class CategoricalTable implements IndependentDistribution {
 	 */
 	@Override
 	public Value sample() {
-		if (intervals == null) {
-			if (table.isEmpty()) {
-				log.warning("creating intervals for an empty table");
-			}
-			intervals = new Intervals<Value>(table);
-		}
-		if (intervals.isEmpty()) {
-			log.warning("interval is empty, table: " + table);
+		if (values.length == 0) {
+			log.warning("cannot sample from an empty table");
 			return ValueFactory.none();
 		}
+		double[] cumul = cumulative;
+		if (cumul == null) {
+			cumul = new double[values.length];
+			double total = 0.0;
+			for (int i = 0; i < values.length; i++) {
+				total += probs[i];
+				cumul[i] = total;
+			}
+			if (total < 0.0001) {
+				throw new RuntimeException("total prob is null: " + this);
+			}
+			cumulative = cumul;
+		}
 
-		Value sample = intervals.sample();
-		return sample;
+		double rand = sampler.nextDouble() * cumul[cumul.length - 1];
+		int min = 0;
+		int max = cumul.length - 1;
+		while (min < max) {
+			int mid = (min + max) >>> 1;
+			if (cumul[mid] > rand) {
+				max = mid;
+			}
+			else {
+				min = mid + 1;
+			}
+		}
+		return values[min];
 	}
 
 	/**
@@ -249,13 +321,13 @@ public class CategoricalTable implements IndependentDistribution {
 
 		if (isContinuous()) {
 			Map<double[], Double> points = new HashMap<double[], Double>();
-			for (Value v : getValues()) {
-				if (v instanceof ArrayVal) {
-					points.put(((ArrayVal) v).getArray(), getProb(v));
+			for (int i = 0; i < values.length; i++) {
+				if (values[i] instanceof ArrayVal) {
+					points.put(((ArrayVal) values[i]).getArray(), probs[i]);
 				}
-				else if (v instanceof DoubleVal) {
-					points.put(new double[] { ((DoubleVal) v).getDouble() },
-							getProb(v));
+				else if (values[i] instanceof DoubleVal) {
+					points.put(new double[] { ((DoubleVal) values[i]).getDouble() },
+							probs[i]);
 				}
 			}
 			DiscreteDensityFunction fun = new DiscreteDensityFunction(points);
@@ -291,12 +363,11 @@ public class CategoricalTable implements IndependentDistribution {
 	 * @return true if empty, false otherwise
 	 */
 	public boolean isEmpty() {
-		if (table.isEmpty()) {
+		if (values.length == 0) {
 			return true;
 		}
 		else
-			return (table.size() == 1 && table.keySet().iterator().next()
-					.equals(ValueFactory.none()));
+			return (values.length == 1 && values[0].equals(ValueFactory.none()));
 	}
 
 	/**
@@ -306,7 +377,7 @@ public class CategoricalTable implements IndependentDistribution {
 	 * @return the distribution with the subset of values
 	 */
 	public CategoricalTable getNBest(int nbest) {
-		Map<Value, Double> ntable = InferenceUtils.getNBest(table, nbest);
+		Map<Value, Double> ntable = InferenceUtils.getNBest(getTable(), nbest);
 		Builder builder = new Builder(variable);
 		for (Value v : ntable.keySet()) {
 			builder.addRow(v, ntable.get(v));
@@ -322,14 +393,13 @@ public class CategoricalTable implements IndependentDistribution {
 	 */
 	@Override
 	public Value getBest() {
-		if (table.size() > 0) {
+		if (values.length > 0) {
 			double maxprob = -10;
 			Value maxVal = ValueFactory.none();
-			for (Value v : table.keySet()) {
-				double prob = table.get(v);
-				if (prob > maxprob) {
-					maxprob = prob;
-					maxVal = v;
+			for (int i = 0; i < values.length; i++) {
+				if (probs[i] > maxprob) {
+					maxprob = probs[i];
+					maxVal = values[i];
 				}
 			}
 			return maxVal;
@@ -346,7 +416,7 @@ public class CategoricalTable implements IndependentDistribution {
 	 * @return the size of the table
 	 */
 	public int size() {
-		return table.size();
+		return values.length;
 	}
 
 	/**
@@ -356,7 +426,13 @@ public class CategoricalTable implements IndependentDistribution {
 	 */
 	@Override
 	public Set<Value> getValues() {
-		return table.keySet();
+		Set<Value> set = valueSet;
+		if (set == null) {
+			set = Collections.unmodifiableSet(
+					new LinkedHashSet<Value>(Arrays.asList(values)));
+			valueSet = set;
+		}
+		return set;
 	}
 
 	// ===================================
@@ -368,7 +444,11 @@ public class CategoricalTable implements IndependentDistribution {
 	 */
 	@Override
 	public int hashCode() {
-		return table.hashCode();
+		int hash = 0;
+		for (int i = 0; i < values.length; i++) {
+			hash += hashes[i] ^ Double.hashCode(probs[i]);
+		}
+		return hash;
 	}
 
 	/**
@@ -380,7 +460,7 @@ public class CategoricalTable implements IndependentDistribution {
 	public String toString() {
 
 		Map<Value, Double> sortedTable =
-				InferenceUtils.getNBest(table, Math.max(table.size(), 1));
+				InferenceUtils.getNBest(getTable(), Math.max(values.length, 1));
 
 		String str = "";
 		for (Entry<Value, Double> entry : sortedTable.entrySet()) {
@@ -419,11 +499,7 @@ public class CategoricalTable implements IndependentDistribution {
 	 */
 	@Override
 	public CategoricalTable copy() {
-		Map<Value, Double> newTable = new HashMap<Value, Double>();
-		for (Value v : table.keySet()) {
-			newTable.put(v, table.get(v));
-		}
-		return new CategoricalTable(variable, newTable);
+		return new CategoricalTable(variable, values, probs, values.length);
 	}
 
 	/**
@@ -440,6 +516,7 @@ public class CategoricalTable implements IndependentDistribution {
 		id.setValue(variable.replace("'", ""));
 		var.setAttributeNode(id);
 
+		Map<Value, Double> table = getTable();
 		for (Value v : InferenceUtils.getNBest(table, table.size()).keySet()) {
 			if (!v.equals(ValueFactory.none())) {
 				Element valueNode = doc.createElement("value");
@@ -456,11 +533,16 @@ public class CategoricalTable implements IndependentDistribution {
 	}
 
 	/**
-	 * Returns the table of values with their probability.
+	 * Returns the table of values with their probability. The table is created
+	 * from the rows, and modifying it has no effect on the distribution.
 	 * 
 	 * @return the table
 	 */
 	public Map<Value, Double> getTable() {
+		Map<Value, Double> table = new LinkedHashMap<Value, Double>();
+		for (int i = 0; i < values.length; i++) {
+			table.put(values[i], probs[i]);
+		}
 		return table;
 	}
 
@@ -475,18 +557,138 @@ public class CategoricalTable implements IndependentDistribution {
 	 * @return true if convertible to continuous, false otherwise.
 	 */
 	private boolean isContinuous() {
-		if (!table.keySet().isEmpty()) {
-			for (Value v : getValues()) {
+		Boolean cont = continuous;
+		if (cont == null) {
+			boolean result = values.length > 1;
+			for (Value v : values) {
 				if (!(v instanceof ArrayVal) && !(v instanceof DoubleVal)
 						&& !(v instanceof NoneVal)) {
-					return false;
+					result = false;
 				}
 			}
-			if (getValues().size() > 1) {
-				return true;
+			cont = result;
+			continuous = cont;
+		}
+		return cont;
+	}
+
+	/**
+	 * Sets the rows of the table, and erases the cached data structures.
+	 * 
+	 * @param newValues the values
+	 * @param newProbs the probabilities for each value
+	 * @param size the number of rows to include
+	 */
+	private void setRows(Value[] newValues, double[] newProbs, int size) {
+		values = Arrays.copyOf(newValues, size);
+		probs = Arrays.copyOf(newProbs, size);
+		hashes = new int[size];
+		for (int i = 0; i < size; i++) {
+			hashes[i] = values[i].hashCode();
+		}
+		indices = null;
+		if (size > MAX_UNINDEXED_SIZE) {
+			indices = new HashMap<Value, Integer>(size * 2);
+			for (int i = 0; i < size; i++) {
+				indices.put(values[i], i);
 			}
 		}
-		return false;
+		valueSet = null;
+		cumulative = null;
+		continuous = null;
+		sortedNumbers = null;
+	}
+
+	/**
+	 * Returns the index of the value in the table, or -1 if the value is not
+	 * included.
+	 * 
+	 * @param val the value
+	 * @return the index of the value
+	 */
+	private int indexOf(Value val) {
+		if (indices != null) {
+			Integer index = indices.get(val);
+			return (index != null) ? index : -1;
+		}
+		int hash = val.hashCode();
+		for (int i = 0; i < values.length; i++) {
+			if (hashes[i] == hash && (values[i] == val || values[i].equals(val))) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Returns the index of the numeric value in the table that is the closest to
+	 * the given number, or -1 if the table has no numeric value. The search is a
+	 * binary search on the sorted numeric values.
+	 * 
+	 * @param toFind the number to find
+	 * @return the index of the closest numeric value
+	 */
+	private int getClosest(double toFind) {
+		SortedNumbers sortedNbs = sortedNumbers;
+		if (sortedNbs == null) {
+			Integer[] numeric = new Integer[values.length];
+			int nb = 0;
+			for (int i = 0; i < values.length; i++) {
+				if (values[i] instanceof DoubleVal) {
+					numeric[nb++] = i;
+				}
+			}
+			Arrays.sort(numeric, 0, nb, (i1, i2) -> Double.compare(
+					((DoubleVal) values[i1]).getDouble(),
+					((DoubleVal) values[i2]).getDouble()));
+			double[] numbers = new double[nb];
+			int[] sorted = new int[nb];
+			for (int i = 0; i < nb; i++) {
+				sorted[i] = numeric[i];
+				numbers[i] = ((DoubleVal) values[sorted[i]]).getDouble();
+			}
+			sortedNbs = new SortedNumbers(numbers, sorted);
+			sortedNumbers = sortedNbs;
+		}
+		double[] numbers = sortedNbs.numbers;
+		int[] sorted = sortedNbs.indices;
+		if (numbers.length == 0) {
+			return -1;
+		}
+		int pos = Arrays.binarySearch(numbers, toFind);
+		if (pos >= 0) {
+			return sorted[pos];
+		}
+		int upper = -pos - 1;
+		int lower = upper - 1;
+		if (upper == numbers.length) {
+			return sorted[lower];
+		}
+		else if (lower < 0) {
+			return sorted[upper];
+		}
+		double lowerDist = Math.abs(numbers[lower] - toFind);
+		double upperDist = Math.abs(numbers[upper] - toFind);
+		if (lowerDist < upperDist
+				|| (lowerDist == upperDist && sorted[lower] < sorted[upper])) {
+			return sorted[lower];
+		}
+		return sorted[upper];
+	}
+
+	/**
+	 * Immutable pair of sorted numeric values and their indices in the arrays,
+	 * published at once to threads reading the table.
+	 */
+	private static final class SortedNumbers {
+
+		final double[] numbers;
+		final int[] indices;
+
+		SortedNumbers(double[] numbers, int[] indices) {
+			this.numbers = numbers;
+			this.indices = indices;
+		}
 	}
 
 	// ===================================
@@ -638,7 +840,14 @@ public class CategoricalTable implements IndependentDistribution {
 				return new SingleValueDistribution(variable, singleValue);
 			}
 			else {
-				return new CategoricalTable(variable, table);
+				Value[] values = new Value[table.size()];
+				double[] probs = new double[table.size()];
+				int i = 0;
+				for (Entry<Value, Double> row : table.entrySet()) {
+					values[i] = row.getKey();
+					probs[i++] = row.getValue();
+				}
+				return new CategoricalTable(variable, values, probs, i);
 			}
 		}
 
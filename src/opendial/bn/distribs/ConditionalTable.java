@@ -33,6 +33,7 @@ import java.util.Set;
 import opendial.bn.values.Value;
 import opendial.bn.values.ValueFactory;
 import opendial.datastructs.Assignment;
+import opendial.datastructs.AssignmentIndex;
 import opendial.datastructs.ValueRange;
 import opendial.utils.StringUtils;
 
@@ -68,6 +69,9 @@ public class ConditionalTable implements ProbDistribution {
 	// the probability table
 	protected HashMap<Assignment, IndependentDistribution> table;
 
+	// index over the conditional assignments (built upon the first lookup)
+	volatile AssignmentIndex<IndependentDistribution> index;
+
 	// ===================================
 	// TABLE CONSTRUCTION
 	// ===================================
@@ -111,13 +115,17 @@ public class ConditionalTable implements ProbDistribution {
 		for (Assignment condition : new ArrayList<Assignment>(table.keySet())) {
 			table.get(condition).modifyVariableId(oldVarId, newVarId);
 			if (condition.containsVar(oldVarId)) {
+				// the conditions may be shared with copies of the table, and are
+				// therefore not modified in place
 				IndependentDistribution distrib = table.remove(condition);
-				Value v = condition.removePair(oldVarId);
-				condition.addPair(newVarId, v);
-				table.put(condition, distrib);
+				Assignment newCondition = new Assignment(condition);
+				Value v = newCondition.removePair(oldVarId);
+				newCondition.addPair(newVarId, v);
+				table.put(newCondition, distrib);
 			}
 		}
 
+		index = null;
 		if (conditionalVars.contains(oldVarId)) {
 			conditionalVars.remove(oldVarId);
 			conditionalVars.add(newVarId);
@@ -143,6 +151,7 @@ public class ConditionalTable implements ProbDistribution {
 					+ distrib.getVariable());
 		}
 		conditionalVars.addAll(condition.getVariables());
+		index = null;
 	}
 
 	/**
@@ -184,10 +193,10 @@ public class ConditionalTable implements ProbDistribution {
 	@Override
 	public Value sample(Assignment condition) {
 
-		if (condition.size() != conditionalVars.size()) {
-			condition = condition.getTrimmed(conditionalVars);
-		}
-		IndependentDistribution subdistrib = table.get(condition);
+		AssignmentIndex<IndependentDistribution> index = getIndex();
+		IndependentDistribution subdistrib =
+				(condition.size() != conditionalVars.size()) ? index.get(condition)
+						: index.getExact(condition);
 		if (subdistrib != null) {
 			return subdistrib.sample();
 		}
@@ -209,11 +218,12 @@ public class ConditionalTable implements ProbDistribution {
 	 */
 	@Override
 	public double getProb(Assignment condition, Value head) {
-		if (condition.size() > conditionalVars.size()) {
-			condition = condition.getTrimmed(conditionalVars);
-		}
-		if (table.containsKey(condition)) {
-			return table.get(condition).getProb(head);
+		AssignmentIndex<IndependentDistribution> index = getIndex();
+		IndependentDistribution subdistrib =
+				(condition.size() > conditionalVars.size()) ? index.get(condition)
+						: index.getExact(condition);
+		if (subdistrib != null) {
+			return subdistrib.getProb(head);
 		}
 		else if (condition.isDefault()) {
 			log.warning("void condition cannot be found in " + toString());
@@ -239,8 +249,9 @@ public class ConditionalTable implements ProbDistribution {
 	 */
 	@Override
 	public IndependentDistribution getProbDistrib(Assignment condition) {
-		if (table.containsKey(condition)) {
-			return table.get(condition);
+		IndependentDistribution subdistrib = getIndex().getExact(condition);
+		if (subdistrib != null) {
+			return subdistrib;
 		}
 		else {
 			return new SingleValueDistribution(headVar, ValueFactory.none());
@@ -256,24 +267,42 @@ public class ConditionalTable implements ProbDistribution {
 	 */
 	@Override
 	public ProbDistribution getPosterior(Assignment condition) {
-		if (table.containsKey(condition)) {
-			return table.get(condition);
+		AssignmentIndex<IndependentDistribution> index = getIndex();
+		IndependentDistribution subdistrib = index.getExact(condition);
+		if (subdistrib != null) {
+			return subdistrib;
 		}
 		ConditionalTable newDistrib = new ConditionalTable(headVar);
-		for (Assignment a : table.keySet()) {
-			if (a.consistentWith(condition)) {
-				Assignment remaining = a.getPruned(condition.getVariables());
-				if (!newDistrib.table.containsKey(remaining)) {
-					newDistrib.addDistrib(remaining, table.get(a));
-				}
-				else {
-					log.warning("inconsistent results for partial posterior");
-				}
+		for (Assignment a : index.getConsistentKeys(condition)) {
+			Assignment remaining = a.getPruned(condition.getVariables());
+			if (!newDistrib.table.containsKey(remaining)) {
+				newDistrib.addDistrib(remaining, table.get(a));
+			}
+			else {
+				log.warning("inconsistent results for partial posterior");
 			}
 		}
 		return newDistrib;
 	}
 
+	/**
+	 * Returns the index over the conditional assignments of the table, building it
+	 * if necessary.
+	 * 
+	 * @return the index for the table
+	 */
+	private AssignmentIndex<IndependentDistribution> getIndex() {
+		AssignmentIndex<IndependentDistribution> current = index;
+		if (current == null) {
+			current = new AssignmentIndex<IndependentDistribution>(conditionalVars);
+			for (Assignment condition : table.keySet()) {
+				current.put(condition, table.get(condition));
+			}
+			index = current;
+		}
+		return current;
+	}
+
 	/**
 	 * Returns all possible values specified in the table. The input values are here
 	 * ignored (for efficiency reasons), so the method simply extracts all possible
@@ -29,6 +29,7 @@ import java.util.Set;
 
 import opendial.Settings;
 import opendial.bn.distribs.densityfunctions.DensityFunction;
+import opendial.bn.distribs.densityfunctions.DiscretisationCache;
 import opendial.bn.values.ArrayVal;
 import opendial.bn.values.DoubleVal;
 import opendial.bn.values.Value;
@@ -57,8 +58,9 @@ public class ContinuousDistribution implements IndependentDistribution {
 	// density function for the distribution
 	DensityFunction function;
 
-	// discrete equivalent of the distribution
-	CategoricalTable discreteCache;
+	// discrete equivalent of the distribution (lazily created, and published
+	// through a volatile field as the distribution may be shared by threads)
+	volatile CategoricalTable discreteCache;
 
 	// ===================================
 	// DISTRIBUTION CONSTRUCTION
@@ -122,16 +124,21 @@ public class ContinuousDistribution implements IndependentDistribution {
 
 	/**
 	 * Returns a discretised version of the distribution. The number of
-	 * discretisation buckets is defined in the configuration settings
+	 * discretisation buckets is defined in the configuration settings. The
+	 * discretisations are shared across copies of the distribution through the
+	 * {@link DiscretisationCache}.
 	 * 
 	 * @return the discretised version of the distribution
 	 */
 	@Override
 	public CategoricalTable toDiscrete() {
 
-		if (discreteCache == null) {
+		CategoricalTable discrete = discreteCache;
+		if (discrete == null) {
 			Map<double[], Double> discretisation =
-					function.discretise(Settings.discretisationBuckets);
+					DiscretisationCache.discretise(function,
+							Settings.discretisationBuckets,
+							Settings.quantileDiscretisation);
 			CategoricalTable.Builder builder =
 					new CategoricalTable.Builder(variable);
 			for (double[] value : discretisation.keySet()) {
@@ -140,9 +147,10 @@ public class ContinuousDistribution implements IndependentDistribution {
 								.create(value[0]);
 				builder.addRow(val, discretisation.get(value));
 			}
-			discreteCache = builder.build().toDiscrete();
+			discrete = builder.build().toDiscrete();
+			discreteCache = discrete;
 		}
-		return discreteCache;
+		return discrete;
 	}
 
 	/**
@@ -29,6 +29,7 @@ import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Random;
@@ -39,12 +40,19 @@ import opendial.bn.distribs.densityfunctions.KernelDensityFunction;
 import opendial.bn.values.ArrayVal;
 import opendial.bn.values.DoubleVal;
 import opendial.bn.values.Value;
+import opendial.bn.values.ValueFactory;
 import opendial.datastructs.Assignment;
 
 /**
  * Distribution defined "empirically" in terms of a set of samples on a collection of
  * random variables. This distribution can then be explicitly converted into a table
  * or a continuous distribution (depending on the variable type).
+ * 
+ * <p>
+ * The samples are stored column by column: each variable is associated with a
+ * column of doubles (for variables with real values) or with a column of integer
+ * codes pointing to a dictionary of values (for all other variables). Each sample is
+ * also associated with a weight.
  *
  * @author Pierre Lison (plison@ifi.uio.no)
  *
@@ -54,18 +62,34 @@ public class EmpiricalDistribution implements MultivariateDistribution {
 	// logger
 	public final static Logger log = Logger.getLogger("OpenDial");
 
-	// list of samples for the empirical distribution
-	protected List<Assignment> samples;
+	// minimum number of distinct values for a variable to be considered continuous
+	static final int MIN_CONTINUOUS_VALUES = 5;
+
+	// the columns of samples, for each random variable
+	Map<String, Column> columns;
+
+	// the weights of the samples
+	double[] weights;
+
+	// the number of samples
+	int size;
+
+	// the total weight of the samples
+	double totalWeight;
+
+	// whether all samples have the same weight
+	boolean uniformWeights;
 
 	// random sampler
 	Random sampler;
 
-	// cache for the discrete and continuous distributions
-	MultivariateTable discreteCache;
-	ContinuousDistribution continuousCache;
+	// cumulative weights of the samples (used for sampling, if the weights differ)
+	volatile double[] cumulative;
 
-	// the names of the random variables
-	Set<String> variables;
+	// cache for the discrete and continuous distributions (published through
+	// volatile fields, as the distribution may be read by several threads)
+	volatile MultivariateTable discreteCache;
+	volatile ContinuousDistribution continuousCache;
 
 	// ===================================
 	// CONSTRUCTION METHODS
@@ -75,8 +99,9 @@ public class EmpiricalDistribution implements MultivariateDistribution {
 	 * Constructs an empirical distribution with an empty set of samples
 	 */
 	public EmpiricalDistribution() {
-		this.samples = new ArrayList<Assignment>();
-		this.variables = new HashSet<String>();
+		this.columns = new LinkedHashMap<String, Column>();
+		this.weights = new double[16];
+		uniformWeights = true;
 		sampler = new Random();
 	}
 
@@ -98,10 +123,33 @@ public class EmpiricalDistribution implements MultivariateDistribution {
 	 * @param sample the sample to add
 	 */
 	public void addSample(Assignment sample) {
-		samples.add(sample);
-		discreteCache = null;
-		continuousCache = null;
-		variables.addAll(sample.getVariables());
+		addSample(sample, 1.0);
+	}
+
+	/**
+	 * Adds a new sample to the distribution, with a particular weight
+	 * 
+	 * @param sample the sample to add
+	 * @param weight the weight of the sample
+	 */
+	public void addSample(Assignment sample, double weight) {
+		if (size == weights.length) {
+			int capacity = weights.length * 2;
+			weights = Arrays.copyOf(weights, capacity);
+			columns.values().forEach(c -> c.ensureCapacity(capacity));
+		}
+		for (String var : sample.getVariables()) {
+			Column column = columns.get(var);
+			if (column == null) {
+				column = new Column(weights.length);
+				columns.put(var, column);
+			}
+			column.set(size, sample.getValue(var));
+		}
+		uniformWeights = uniformWeights && (size == 0 || weight == weights[0]);
+		weights[size++] = weight;
+		totalWeight += weight;
+		resetCaches();
 	}
 
 	/**
@@ -110,12 +158,8 @@ public class EmpiricalDistribution implements MultivariateDistribution {
 	 * @param varId the id of the variable to remove
 	 */
 	public void removeVariable(String varId) {
-		variables.remove(varId);
-		discreteCache = null;
-		continuousCache = null;
-		for (Assignment s : samples) {
-			s.removePair(varId);
-		}
+		columns.remove(varId);
+		resetCaches();
 	}
 
 	// ===================================
@@ -124,22 +168,34 @@ public class EmpiricalDistribution implements MultivariateDistribution {
 
 	/**
 	 * Samples from the distribution. In this case, simply selects one arbitrary
-	 * sample out of the set defining the distribution
+	 * sample (according to its weight) out of the set defining the distribution
 	 * 
 	 * @return the selected sample
 	 */
 	@Override
 	public Assignment sample() {
 
-		if (!samples.isEmpty()) {
-			int selection = sampler.nextInt(samples.size());
-			Assignment selected = samples.get(selection);
-			return selected;
-		}
-		else {
+		if (size == 0) {
 			log.warning("distribution has no samples");
 			return new Assignment();
 		}
+		else if (uniformWeights) {
+			return getSample(sampler.nextInt(size));
+		}
+		double[] current = cumulative;
+		if (current == null) {
+			current = new double[size];
+			double total = 0.0;
+			for (int i = 0; i < size; i++) {
+				total += weights[i];
+				current[i] = total;
+			}
+			cumulative = current;
+		}
+		int index = Arrays.binarySearch(current,
+				sampler.nextDouble() * current[current.length - 1]);
+		index = (index >= 0) ? index : Math.min(-index - 1, current.length - 1);
+		return getSample(index);
 	}
 
 	/**
@@ -147,7 +203,7 @@ public class EmpiricalDistribution implements MultivariateDistribution {
 	 */
 	@Override
 	public Set<String> getVariables() {
-		return new HashSet<String>(variables);
+		return new HashSet<String>(columns.keySet());
 	}
 
 	/**
@@ -156,6 +212,10 @@ public class EmpiricalDistribution implements MultivariateDistribution {
 	 * @return the collection of samples
 	 */
 	public Collection<Assignment> getSamples() {
+		List<Assignment> samples = new ArrayList<Assignment>(size);
+		for (int i = 0; i < size; i++) {
+			samples.add(getSample(i));
+		}
 		return samples;
 	}
 
@@ -165,7 +225,7 @@ public class EmpiricalDistribution implements MultivariateDistribution {
 	 * @return the number of samples.
 	 */
 	public int size() {
-		return samples.size();
+		return size;
 	}
 
 	/**
@@ -175,11 +235,7 @@ public class EmpiricalDistribution implements MultivariateDistribution {
 	 */
 	@Override
 	public Set<Assignment> getValues() {
-		Set<Assignment> possible = new HashSet<Assignment>();
-		for (Assignment sample : samples) {
-			possible.add(sample);
-		}
-		return possible;
+		return new HashSet<Assignment>(getRows(columns.keySet()).values());
 	}
 
 	/**
@@ -208,17 +264,22 @@ public class EmpiricalDistribution implements MultivariateDistribution {
 	 */
 	@Override
 	public MultivariateTable toDiscrete() {
-		if (discreteCache == null) {
+		MultivariateTable discrete = discreteCache;
+		if (discrete == null) {
 			MultivariateTable.Builder probs = new MultivariateTable.Builder();
-			double incr = 1.0 / samples.size();
-			for (Assignment sample : samples) {
-				Assignment trimmed = sample.getTrimmed(variables);
-				probs.incrementRow(trimmed, incr);
+			Map<RowKey, Assignment> rows = getRows(columns.keySet());
+			Map<RowKey, Double> masses = new HashMap<RowKey, Double>();
+			RowKey[] keys = getKeys(columns.keySet());
+			for (int i = 0; i < size; i++) {
+				masses.merge(keys[i], weights[i], (w1, w2) -> w1 + w2);
 			}
-
-			discreteCache = probs.build();
+			for (RowKey key : rows.keySet()) {
+				probs.addRow(rows.get(key), masses.get(key) / totalWeight);
+			}
+			discrete = probs.build();
+			discreteCache = discrete;
 		}
-		return discreteCache;
+		return discrete;
 
 	}
 
@@ -229,16 +290,18 @@ public class EmpiricalDistribution implements MultivariateDistribution {
 	 * @return the corresponding continuous distribution. content is discrete.
 	 */
 	public ContinuousDistribution toContinuous() {
-		if (continuousCache == null) {
-			if (variables.size() != 1) {
+		ContinuousDistribution continuous = continuousCache;
+		if (continuous == null) {
+			if (columns.size() != 1) {
 				throw new RuntimeException(
 						"cannot convert distribution to continuous for P("
-								+ variables + ")");
+								+ columns.keySet() + ")");
 			}
-			String headVar = variables.iterator().next();
-			continuousCache = createContinuous(headVar);
+			String headVar = columns.keySet().iterator().next();
+			continuous = createContinuous(headVar);
+			continuousCache = continuous;
 		}
-		return continuousCache;
+		return continuous;
 	}
 
 	/**
@@ -250,8 +313,10 @@ public class EmpiricalDistribution implements MultivariateDistribution {
 	 */
 	@Override
 	public IndependentDistribution getMarginal(String var) {
-		if (sample().getTrimmed(Arrays.asList(var)).containContinuousValues()
-				&& samples.stream().distinct().limit(5).count() == 5) {
+		Column column = columns.get(var);
+		if (column != null && column.isContinuous(size)
+				&& column.countDistinct(size, MIN_CONTINUOUS_VALUES)
+						>= MIN_CONTINUOUS_VALUES) {
 			return createContinuous(var);
 		}
 		else {
@@ -275,11 +340,14 @@ public class EmpiricalDistribution implements MultivariateDistribution {
 		}
 		else {
 			Builder builder = new ConditionalTable.Builder(var);
-			double incr = 1.0 / samples.size();
-			for (Assignment sample : samples) {
-				Assignment condition = sample.getTrimmed(condVars);
-				Value val = sample.getValue(var);
-				builder.incrementRow(condition, val, incr);
+			Map<RowKey, Assignment> conditions = getRows(condVars);
+			RowKey[] keys = getKeys(condVars);
+			Column head = columns.get(var);
+			for (int i = 0; i < size; i++) {
+				Value val = (head != null) ? head.get(i) : null;
+				builder.incrementRow(conditions.get(keys[i]),
+						(val != null) ? val : ValueFactory.none(),
+						weights[i] / totalWeight);
 			}
 			builder.normalise();
 			return builder.build();
@@ -295,14 +363,32 @@ public class EmpiricalDistribution implements MultivariateDistribution {
 	public IndependentDistribution createDiscrete(String headVar) {
 
 		CategoricalTable.Builder probs = new CategoricalTable.Builder(headVar);
-
-		double incr = 1.0 / samples.size();
-
-		for (Assignment sample : samples) {
-			Value val = sample.getValue(headVar);
-			probs.incrementRow(val, incr);
+		Column column = columns.get(headVar);
+		if (column == null) {
+			probs.addRow(ValueFactory.none(), 1.0);
+			return probs.build();
+		}
+		column = column.getEncoded(size);
+		double[] masses = new double[column.dictionary.size()];
+		double noneMass = 0.0;
+		for (int i = 0; i < size; i++) {
+			int code = column.codes[i];
+			if (code >= 0) {
+				masses[code] += weights[i];
+			}
+			else {
+				noneMass += weights[i];
+			}
+		}
+		for (int code = 0; code < masses.length; code++) {
+			if (masses[code] > 0.0) {
+				probs.incrementRow(column.dictionary.get(code), masses[code]
+						/ totalWeight);
+			}
+		}
+		if (noneMass > 0.0) {
+			probs.incrementRow(ValueFactory.none(), noneMass / totalWeight);
 		}
-
 		return probs.build();
 	}
 
@@ -315,8 +401,18 @@ public class EmpiricalDistribution implements MultivariateDistribution {
 	public ContinuousDistribution createContinuous(String headVar) {
 
 		List<double[]> values = new ArrayList<double[]>();
-		for (Assignment a : samples) {
-			Value v = a.getValue(headVar);
+		Column column = columns.get(headVar);
+		for (int i : getResampledRows()) {
+			if (column == null) {
+				break;
+			}
+			else if (column.numbers != null) {
+				if (!Double.isNaN(column.numbers[i])) {
+					values.add(new double[] { column.numbers[i] });
+				}
+				continue;
+			}
+			Value v = column.get(i);
 			if (v instanceof ArrayVal) {
 				values.add(((ArrayVal) v).getArray());
 			}
@@ -340,39 +436,46 @@ public class EmpiricalDistribution implements MultivariateDistribution {
 	@Override
 	public boolean pruneValues(double threshold) {
 
-		Map<String, Map<Value, Integer>> frequencies =
-				new HashMap<String, Map<Value, Integer>>();
-
-		for (Assignment sample : samples) {
-			for (String var : sample.getVariables()) {
-				Value val = sample.getValue(var);
-				if (!frequencies.containsKey(var)) {
-					frequencies.put(var, new HashMap<Value, Integer>());
-				}
-				Map<Value, Integer> valFreq = frequencies.get(var);
-				if (!valFreq.containsKey(val)) {
-					valFreq.put(val, 1);
+		boolean[] pruned = new boolean[size];
+		double minMass = totalWeight * threshold;
+		for (Column column : columns.values()) {
+			if (column.codes == null) {
+				continue;
+			}
+			double[] masses = new double[column.dictionary.size()];
+			for (int i = 0; i < size; i++) {
+				if (column.codes[i] >= 0) {
+					masses[column.codes[i]] += weights[i];
 				}
-				else {
-					valFreq.put(val, valFreq.get(val) + 1);
+			}
+			for (int i = 0; i < size; i++) {
+				int code = column.codes[i];
+				if (code >= 0 && masses[code] < minMass) {
+					Value v = column.dictionary.get(code);
+					pruned[i] = pruned[i]
+							|| !(v instanceof DoubleVal || v instanceof ArrayVal);
 				}
 			}
 		}
 
-		boolean changed = false;
-		int minNumber = (int) (samples.size() * threshold);
-		for (int i = 0; i < samples.size(); i++) {
-			Assignment sample = samples.get(i);
-			for (String var : sample.getVariables()) {
-				if (frequencies.get(var).get(sample.getValue(var)) < minNumber) {
-					samples.remove(i);
-					changed = true;
-					continue;
+		int newSize = 0;
+		double newTotal = 0.0;
+		for (int i = 0; i < size; i++) {
+			if (!pruned[i]) {
+				for (Column column : columns.values()) {
+					column.move(i, newSize);
 				}
+				weights[newSize++] = weights[i];
+				newTotal += weights[i];
 			}
 		}
-		discreteCache = null;
-		continuousCache = null;
+		boolean changed = (newSize < size);
+		for (Column column : columns.values()) {
+			column.clear(newSize, size);
+		}
+		size = newSize;
+		totalWeight = newTotal;
+		resetCaches();
 		return changed;
 	}
 
@@ -385,16 +488,9 @@ public class EmpiricalDistribution implements MultivariateDistribution {
 	@Override
 	public void modifyVariableId(String oldId, String newId) {
 
-		if (variables.contains(oldId)) {
-			variables.remove(oldId);
-			variables.add(newId);
-		}
-
-		for (Assignment a : samples) {
-			if (a.containsVar(oldId)) {
-				Value v = a.removePair(oldId);
-				a.addPair(newId, v);
-			}
+		Column column = columns.remove(oldId);
+		if (column != null) {
+			columns.put(newId, column);
 		}
 
 		if (discreteCache != null) {
@@ -412,7 +508,14 @@ public class EmpiricalDistribution implements MultivariateDistribution {
 	 */
 	@Override
 	public EmpiricalDistribution copy() {
-		EmpiricalDistribution copy = new EmpiricalDistribution(samples);
+		EmpiricalDistribution copy = new EmpiricalDistribution();
+		for (String var : columns.keySet()) {
+			copy.columns.put(var, columns.get(var).copy());
+		}
+		copy.weights = Arrays.copyOf(weights, weights.length);
+		copy.size = size;
+		copy.totalWeight = totalWeight;
+		copy.uniformWeights = uniformWeights;
 		return copy;
 	}
 
@@ -437,20 +540,350 @@ public class EmpiricalDistribution implements MultivariateDistribution {
 		return toDiscrete().toString();
 	}
 
+	// ===================================
+	// PRIVATE METHODS
+	// ===================================
+
 	private boolean isContinuous() {
+		return columns.size() == 1 && size > 0
+				&& columns.values().iterator().next().isContinuous(1);
+	}
+
+	/**
+	 * Resets the cached distributions
+	 */
+	private void resetCaches() {
+		discreteCache = null;
+		continuousCache = null;
+		cumulative = null;
+	}
+
+	/**
+	 * Reconstructs the sample at the given row.
+	 * 
+	 * @param row the row index
+	 * @return the corresponding sample
+	 */
+	private Assignment getSample(int row) {
+		Assignment sample = new Assignment();
+		for (String var : columns.keySet()) {
+			Value v = columns.get(var).get(row);
+			if (v != null) {
+				sample.addPair(var, v);
+			}
+		}
+		return sample;
+	}
+
+	/**
+	 * Returns the keys for each row of samples, restricted to the given variables
+	 * (variables without any column are ignored).
+	 * 
+	 * @param vars the variables
+	 * @return the row keys, for each sample
+	 */
+	private RowKey[] getKeys(Collection<String> vars) {
+		List<Column> encoded = new ArrayList<Column>();
+		for (String var : vars) {
+			if (columns.containsKey(var)) {
+				encoded.add(columns.get(var).getEncoded(size));
+			}
+		}
+		RowKey[] keys = new RowKey[size];
+		for (int i = 0; i < size; i++) {
+			int[] codes = new int[encoded.size()];
+			for (int j = 0; j < codes.length; j++) {
+				codes[j] = encoded.get(j).codes[i];
+			}
+			keys[i] = new RowKey(codes);
+		}
+		return keys;
+	}
 
-		for (String var : getVariables()) {
-			Assignment a = samples.get(0);
-			if (a.containsVar(var) && a.containContinuousValues()) {
-				if (getVariables().size() == 1) {
-					return true;
+	/**
+	 * Returns the distinct rows of samples restricted to the given variables,
+	 * indexed by their key.
+	 * 
+	 * @param vars the variables
+	 * @return the distinct (trimmed) samples
+	 */
+	private Map<RowKey, Assignment> getRows(Collection<String> vars) {
+		RowKey[] keys = getKeys(vars);
+		Map<RowKey, Assignment> rows = new HashMap<RowKey, Assignment>();
+		for (int i = 0; i < size; i++) {
+			if (!rows.containsKey(keys[i])) {
+				Assignment row = new Assignment();
+				for (String var : vars) {
+					Value v = columns.containsKey(var) ? columns.get(var).get(i) : null;
+					if (v != null) {
+						row.addPair(var, v);
+					}
 				}
-				else {
-					return false;
+				rows.put(keys[i], row);
+			}
+		}
+		return rows;
+	}
+
+	/**
+	 * Returns the row indices of the samples, where each index is repeated in
+	 * proportion to the weight of the sample (systematic resampling). If all samples
+	 * have the same weight, simply returns all row indices.
+	 * 
+	 * @return the resampled row indices
+	 */
+	private int[] getResampledRows() {
+		int[] rows = new int[size];
+		if (uniformWeights) {
+			for (int i = 0; i < size; i++) {
+				rows[i] = i;
+			}
+			return rows;
+		}
+		double step = totalWeight / size;
+		double threshold = step * sampler.nextDouble();
+		double cumul = 0.0;
+		int j = 0;
+		for (int i = 0; i < size && j < size; i++) {
+			cumul += weights[i];
+			while (j < size && threshold < cumul) {
+				rows[j++] = i;
+				threshold += step;
+			}
+		}
+		while (j < size) {
+			rows[j++] = size - 1;
+		}
+		return rows;
+	}
+
+	/**
+	 * Key for a row of samples, in terms of the dictionary codes of its values.
+	 */
+	private static final class RowKey {
+
+		final int[] codes;
+		final int hash;
+
+		RowKey(int[] codes) {
+			this.codes = codes;
+			this.hash = Arrays.hashCode(codes);
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			return o instanceof RowKey && Arrays.equals(codes, ((RowKey) o).codes);
+		}
+	}
+
+	/**
+	 * Column of sampled values for a random variable. As long as all values are
+	 * real numbers, the column is stored as an array of doubles (with NaN marking
+	 * the rows without any value). Otherwise, the values are encoded as integer
+	 * codes in a dictionary (with -1 marking the rows without any value).
+	 */
+	static final class Column {
+
+		// the values for each row (if the column is numeric)
+		double[] numbers;
+
+		// the codes for each row (if the column is dictionary-encoded)
+		int[] codes;
+
+		// the dictionary of values and the code of each value
+		List<Value> dictionary;
+		Map<Value, Integer> encoding;
+
+		/**
+		 * Creates a new (numeric) column
+		 * 
+		 * @param capacity the initial capacity
+		 */
+		Column(int capacity) {
+			numbers = new double[capacity];
+			Arrays.fill(numbers, Double.NaN);
+		}
+
+		/**
+		 * Sets the value for the given row
+		 * 
+		 * @param row the row index
+		 * @param v the value
+		 */
+		void set(int row, Value v) {
+			if (numbers != null) {
+				if (v instanceof DoubleVal && !Double.isNaN(((DoubleVal) v).getDouble())) {
+					numbers[row] = ((DoubleVal) v).getDouble();
+					return;
+				}
+				Column encoded = getEncoded(numbers.length);
+				numbers = null;
+				codes = encoded.codes;
+				dictionary = encoded.dictionary;
+				encoding = encoded.encoding;
+			}
+			Integer code = encoding.get(v);
+			if (code == null) {
+				code = dictionary.size();
+				dictionary.add(v);
+				encoding.put(v, code);
+			}
+			codes[row] = code;
+		}
+
+		/**
+		 * Returns the value for the given row (null if the row has no value)
+		 * 
+		 * @param row the row index
+		 * @return the value, or null
+		 */
+		Value get(int row) {
+			if (numbers != null) {
+				return Double.isNaN(numbers[row]) ? null : ValueFactory
+						.create(numbers[row]);
+			}
+			return (codes[row] >= 0) ? dictionary.get(codes[row]) : null;
+		}
+
+		/**
+		 * Moves the value from one row to another
+		 * 
+		 * @param from the source row
+		 * @param to the target row
+		 */
+		void move(int from, int to) {
+			if (numbers != null) {
+				numbers[to] = numbers[from];
+			}
+			else {
+				codes[to] = codes[from];
+			}
+		}
+
+		/**
+		 * Removes the values from the rows between start (inclusive) and end
+		 * (exclusive)
+		 * 
+		 * @param start the start row
+		 * @param end the end row
+		 */
+		void clear(int start, int end) {
+			if (numbers != null) {
+				Arrays.fill(numbers, start, end, Double.NaN);
+			}
+			else {
+				Arrays.fill(codes, start, end, -1);
+			}
+		}
+
+		/**
+		 * Ensures that the column can hold the given number of rows
+		 * 
+		 * @param capacity the capacity
+		 */
+		void ensureCapacity(int capacity) {
+			if (numbers != null && numbers.length < capacity) {
+				int oldLength = numbers.length;
+				numbers = Arrays.copyOf(numbers, capacity);
+				Arrays.fill(numbers, oldLength, capacity, Double.NaN);
+			}
+			else if (codes != null && codes.length < capacity) {
+				int oldLength = codes.length;
+				codes = Arrays.copyOf(codes, capacity);
+				Arrays.fill(codes, oldLength, capacity, -1);
+			}
+		}
+
+		/**
+		 * Returns a dictionary-encoded version of the column (the column itself if
+		 * it is already encoded).
+		 * 
+		 * @param size the number of rows to encode
+		 * @return the encoded column
+		 */
+		Column getEncoded(int size) {
+			if (numbers == null) {
+				return this;
+			}
+			Column encoded = new Column(0);
+			encoded.numbers = null;
+			encoded.codes = new int[numbers.length];
+			Arrays.fill(encoded.codes, -1);
+			encoded.dictionary = new ArrayList<Value>();
+			encoded.encoding = new HashMap<Value, Integer>();
+			for (int i = 0; i < size; i++) {
+				if (!Double.isNaN(numbers[i])) {
+					encoded.set(i, ValueFactory.create(numbers[i]));
+				}
+			}
+			return encoded;
+		}
+
+		/**
+		 * Returns true if the first value of the column is continuous (DoubleVal or
+		 * ArrayVal), and false otherwise
+		 * 
+		 * @param size the number of rows
+		 * @return true if the column is continuous, false otherwise
+		 */
+		boolean isContinuous(int size) {
+			for (int i = 0; i < size; i++) {
+				Value v = get(i);
+				if (v != null) {
+					return v instanceof DoubleVal || v instanceof ArrayVal;
+				}
+			}
+			return false;
+		}
+
+		/**
+		 * Counts the distinct values in the column, up to a maximum
+		 * 
+		 * @param size the number of rows
+		 * @param max the maximum count
+		 * @return the number of distinct values (at most max)
+		 */
+		int countDistinct(int size, int max) {
+			if (numbers == null) {
+				return Math.min(dictionary.size(), max);
+			}
+			double[] distinct = new double[max];
+			int count = 0;
+			for (int i = 0; i < size && count < max; i++) {
+				boolean found = Double.isNaN(numbers[i]);
+				for (int j = 0; j < count && !found; j++) {
+					found = (distinct[j] == numbers[i]);
+				}
+				if (!found) {
+					distinct[count++] = numbers[i];
 				}
 			}
+			return count;
+		}
+
+		/**
+		 * Returns a copy of the column
+		 * 
+		 * @return the copy
+		 */
+		Column copy() {
+			Column copy = new Column(0);
+			if (numbers != null) {
+				copy.numbers = Arrays.copyOf(numbers, numbers.length);
+			}
+			else {
+				copy.numbers = null;
+				copy.codes = Arrays.copyOf(codes, codes.length);
+				copy.dictionary = new ArrayList<Value>(dictionary);
+				copy.encoding = new HashMap<Value, Integer>(encoding);
+			}
+			return copy;
 		}
-		return false;
 	}
 
 }
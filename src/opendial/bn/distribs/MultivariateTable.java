@@ -56,8 +56,10 @@ public class MultivariateTable implements MultivariateDistribution {
 	// the probability table
 	Map<Assignment, Double> table;
 
-	// probability intervals (used for binary search in sampling)
-	Intervals<Assignment> intervals;
+	// probability intervals (used for binary search in sampling), lazily
+	// created and published through a volatile field, as the table may be
+	// shared between threads
+	volatile Intervals<Assignment> intervals;
 
 	// sampler
 	Random sampler;
@@ -192,15 +194,17 @@ public class MultivariateTable implements MultivariateDistribution {
 	@Override
 	public Assignment sample() {
 
-		if (intervals == null) {
-			intervals = new Intervals<Assignment>(table);
+		Intervals<Assignment> intervs = intervals;
+		if (intervs == null) {
+			intervs = new Intervals<Assignment>(table);
+			intervals = intervs;
 		}
-		if (intervals.isEmpty()) {
+		if (intervs.isEmpty()) {
 			log.warning("interval is empty, table: " + table);
 			return new Assignment();
 		}
 
-		return intervals.sample();
+		return intervs.sample();
 	}
 
 	/**
@@ -265,6 +265,70 @@ public class DirichletDensityFunction implements DensityFunction {
 		return variance;
 	}
 
+	/**
+	 * Returns the posterior Dirichlet obtained after observing the given counts for
+	 * each dimension (conjugate update of the hyper-parameters).
+	 * 
+	 * @param counts the observed counts for each dimension
+	 * @return the posterior Dirichlet
+	 */
+	public DirichletDensityFunction getPosterior(double[] counts) {
+		if (counts.length != alphas.length) {
+			throw new RuntimeException("incompatible sizes: " + counts.length + "!="
+					+ alphas.length);
+		}
+		double[] newAlphas = new double[alphas.length];
+		for (int i = 0; i < alphas.length; i++) {
+			newAlphas[i] = alphas[i] + counts[i];
+		}
+		return new DirichletDensityFunction(newAlphas);
+	}
+
+	/**
+	 * Returns the posterior Dirichlet after a single categorical draw whose outcome
+	 * is only known through a probability for each dimension. The remaining
+	 * probability mass corresponds to the case where no draw took place. The exact
+	 * posterior is a mixture of Dirichlets, which is approximated by the Dirichlet
+	 * with the same first and second moments. If the outcome is certain, the result
+	 * is identical to the conjugate update.
+	 * 
+	 * @param outcomeProbs the probability of each outcome
+	 * @return the (approximate) posterior Dirichlet
+	 */
+	public DirichletDensityFunction getPosteriorFromOutcome(double[] outcomeProbs) {
+		if (outcomeProbs.length != alphas.length) {
+			throw new RuntimeException("incompatible sizes: " + outcomeProbs.length
+					+ "!=" + alphas.length);
+		}
+		double sum = getAlphaSum();
+		double noDraw = 1.0 - Arrays.stream(outcomeProbs).sum();
+		double[] means = new double[alphas.length];
+		double precision = 0.0;
+		int nbEstimates = 0;
+		for (int j = 0; j < alphas.length; j++) {
+			double a = alphas[j];
+			double p = outcomeProbs[j];
+			means[j] = noDraw * a / sum + ((1 - noDraw) * a + p) / (sum + 1);
+			double square = noDraw * a * (a + 1) / (sum * (sum + 1))
+					+ ((1 - noDraw) * a * (a + 1) + 2 * p * (a + 1))
+					/ ((sum + 1) * (sum + 2));
+			double spread = square - means[j] * means[j];
+			if (spread > 0) {
+				precision += (means[j] - square) / spread;
+				nbEstimates++;
+			}
+		}
+		if (nbEstimates == 0) {
+			return copy();
+		}
+		precision = precision / nbEstimates;
+		double[] newAlphas = new double[alphas.length];
+		for (int j = 0; j < alphas.length; j++) {
+			newAlphas[j] = means[j] * precision;
+		}
+		return new DirichletDensityFunction(newAlphas);
+	}
+
 	/**
 	 * Throws an exception (calculating the CDF of a Dirichlet is quite hard and not
 	 * currently implemented).
@@ -283,7 +347,20 @@ public class DirichletDensityFunction implements DensityFunction {
 	 */
 	@Override
 	public int hashCode() {
-		return -32 + Arrays.asList(alphas).hashCode();
+		return -32 + Arrays.hashCode(alphas);
+	}
+
+	/**
+	 * Returns true if the object is a Dirichlet with the same hyper-parameters, and
+	 * false otherwise
+	 * 
+	 * @param o the object to compare
+	 * @return true if the Dirichlets are identical, false otherwise
+	 */
+	@Override
+	public boolean equals(Object o) {
+		return o == this || (o instanceof DirichletDensityFunction
+				&& Arrays.equals(alphas, ((DirichletDensityFunction) o).alphas));
 	}
 
 	private double getAlphaSum() {
@@ -0,0 +1,185 @@
+// =================================================================                                                                   
+// Copyright (C) 2011-2015 Pierre Lison (plison@ifi.uio.no)
+
+// Permission is hereby granted, free of charge, to any person 
+// obtaining a copy of this software and associated documentation 
+// files (the "Software"), to deal in the Software without restriction, 
+// including without limitation the rights to use, copy, modify, merge, 
+// publish, distribute, sublicense, and/or sell copies of the Software, 
+// and to permit persons to whom the Software is furnished to do so, 
+// subject to the following conditions:
+
+// The above copyright notice and this permission notice shall be 
+// included in all copies or substantial portions of the Software.
+
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, 
+// EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+// MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. 
+// IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY 
+// CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, 
+// TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE 
+// SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+// =================================================================                                                                   
+
+package opendial.bn.distribs.densityfunctions;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.logging.Logger;
+
+/**
+ * Cache for the discretisations of density functions. The cache is shared by all
+ * continuous distributions and is indexed by the content of the density functions
+ * (through their equals and hashCode methods), which means that copies of a
+ * distribution reuse the discretisation of the original. As density functions are
+ * immutable, the cached discretisations never need to be invalidated. The cache
+ * holds at most MAX_CACHE_SIZE discretisations (least recently used first out).
+ * 
+ * <p>
+ * The class also provides a discretisation method based on quantiles, where each
+ * bucket is placed at the centre of a region of equal probability mass.
+ *
+ * @author Pierre Lison (plison@ifi.uio.no)
+ */
+public class DiscretisationCache {
+
+	// logger
+	final static Logger log = Logger.getLogger("OpenDial");
+
+	/** maximum number of discretisations in the cache */
+	public static final int MAX_CACHE_SIZE = 500;
+
+	// number of bisection steps to invert the cumulative distribution
+	static final int BISECTION_STEPS = 60;
+
+	// the cached discretisations
+	static final Map<CacheKey, Map<double[], Double>> cache =
+			new LinkedHashMap<CacheKey, Map<double[], Double>>(64, 0.75f, true) {
+				private static final long serialVersionUID = 1L;
+
+				@Override
+				protected boolean removeEldestEntry(
+						Map.Entry<CacheKey, Map<double[], Double>> eldest) {
+					return size() > MAX_CACHE_SIZE;
+				}
+			};
+
+	/**
+	 * Returns the discretisation of the density function, retrieving it from the
+	 * cache if it has already been computed for this function (or an identical
+	 * one).
+	 * 
+	 * @param function the density function
+	 * @param nbBuckets the number of buckets
+	 * @param quantiles whether to place the buckets at the quantiles of the function
+	 *            (for univariate functions)
+	 * @return the discretised values and their probability mass
+	 */
+	public static Map<double[], Double> discretise(DensityFunction function,
+			int nbBuckets, boolean quantiles) {
+		CacheKey key = new CacheKey(function, nbBuckets, quantiles);
+		Map<double[], Double> discretisation;
+		synchronized (cache) {
+			discretisation = cache.get(key);
+		}
+		if (discretisation == null) {
+			discretisation = Collections.unmodifiableMap(
+					(quantiles) ? discretiseByQuantiles(function, nbBuckets)
+							: function.discretise(nbBuckets));
+			synchronized (cache) {
+				cache.put(key, discretisation);
+			}
+		}
+		return discretisation;
+	}
+
+	/**
+	 * Discretises the density function by placing each bucket at the centre (in
+	 * terms of probability mass) of a region of mass 1/nbBuckets. The method only
+	 * applies to univariate functions with a cumulative distribution. For other
+	 * functions, the default discretisation is used.
+	 * 
+	 * @param function the density function
+	 * @param nbBuckets the number of buckets
+	 * @return the discretised values and their probability mass
+	 */
+	public static Map<double[], Double> discretiseByQuantiles(
+			DensityFunction function, int nbBuckets) {
+		if (function.getDimensions() != 1) {
+			return function.discretise(nbBuckets);
+		}
+		double mean = function.getMean()[0];
+		double spread = 10 * Math.sqrt(function.getVariance()[0]) + 1.0;
+		TreeMap<Double, Double> quantiles = new TreeMap<Double, Double>();
+		try {
+			for (int i = 0; i < nbBuckets; i++) {
+				double target = (i + 0.5) / nbBuckets;
+				double low = mean - spread;
+				double high = mean + spread;
+				for (int j = 0; j < BISECTION_STEPS; j++) {
+					double mid = (low + high) / 2.0;
+					if (function.getCDF(mid) < target) {
+						low = mid;
+					}
+					else {
+						high = mid;
+					}
+				}
+				quantiles.merge((low + high) / 2.0, 1.0 / nbBuckets, (p1,
+						p2) -> p1 + p2);
+			}
+		}
+		catch (RuntimeException e) {
+			log.fine("cannot use quantiles to discretise " + function + ": " + e);
+			return function.discretise(nbBuckets);
+		}
+		Map<double[], Double> values = new HashMap<double[], Double>();
+		for (Map.Entry<Double, Double> q : quantiles.entrySet()) {
+			values.put(new double[] { q.getKey() }, q.getValue());
+		}
+		return values;
+	}
+
+	/**
+	 * Clears the cache.
+	 */
+	public static void clear() {
+		synchronized (cache) {
+			cache.clear();
+		}
+	}
+
+	/**
+	 * Key for the cache (density function, number of buckets and placement)
+	 */
+	static final class CacheKey {
+
+		final DensityFunction function;
+		final int nbBuckets;
+		final boolean quantiles;
+
+		CacheKey(DensityFunction function, int nbBuckets, boolean quantiles) {
+			this.function = function;
+			this.nbBuckets = nbBuckets;
+			this.quantiles = quantiles;
+		}
+
+		@Override
+		public int hashCode() {
+			return function.hashCode() + 31 * nbBuckets + (quantiles ? 1 : 0);
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (!(o instanceof CacheKey)) {
+				return false;
+			}
+			CacheKey other = (CacheKey) o;
+			return nbBuckets == other.nbBuckets && quantiles == other.quantiles
+					&& function.equals(other.function);
+		}
+	}
+}
@@ -247,7 +247,21 @@ public class GaussianDensityFunction implements DensityFunction {
 	 */
 	@Override
 	public int hashCode() {
-		return mean.hashCode() + variance.hashCode();
+		return Arrays.hashCode(mean) + Arrays.hashCode(variance);
+	}
+
+	/**
+	 * Returns true if the object is a Gaussian with the same mean and variance, and
+	 * false otherwise
+	 *
+	 * @param o the object to compare
+	 * @return true if the Gaussians are identical, false otherwise
+	 */
+	@Override
+	public boolean equals(Object o) {
+		return o == this || (o instanceof GaussianDensityFunction
+				&& Arrays.equals(mean, ((GaussianDensityFunction) o).mean)
+				&& Arrays.equals(variance, ((GaussianDensityFunction) o).variance));
 	}
 
 	/**
@@ -31,9 +31,7 @@ import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 import java.util.Random;
-import java.util.function.Function;
 import java.util.stream.Collectors;
-import java.util.stream.IntStream;
 
 import opendial.utils.MathUtils;
 import opendial.utils.StringUtils;
@@ -44,6 +42,28 @@ import org.w3c.dom.Element;
 /**
  * Density function represented as a Gaussian kernel of data points. The distribution
  * is more exactly a Product KDE (a multivariate extension of classical KDE).
+ * 
+ * <p>
+ * For one-dimensional (unbounded) densities with at least MIN_GRID_POINTS points,
+ * the density is evaluated on a regular grid with GRID_RESOLUTION nodes per
+ * bandwidth: the points are first linearly binned onto the grid, the binned
+ * weights are convolved with the kernel (truncated at MAX_KERNEL_DISTANCE
+ * bandwidths), and the density of a point is then linearly interpolated between
+ * its two neighbouring grid nodes. Once the grid is built, each evaluation takes
+ * constant time. Denoting by r the grid resolution and by L the kernel distance,
+ * the linear binning and the interpolation each contribute an absolute error of
+ * at most 1/(8r^2) times the peak density of a single kernel (as the second
+ * derivative of the Gaussian kernel is bounded by its peak value), and the
+ * truncation at most exp(-L^2/2) times this peak density, hence a total error of
+ * at most (1/(4r^2) + exp(-L^2/2)) times 1/(h*sqrt(2*pi)), with h the bandwidth.
+ * 
+ * <p>
+ * Other densities are evaluated by summing the kernels whose centre lies within
+ * MAX_KERNEL_DISTANCE bandwidths of the evaluated point along the first dimension
+ * (the points being sorted along this dimension). This pruning has an absolute
+ * error of at most exp(-MAX_KERNEL_DISTANCE^2/2) times the peak density of a
+ * single kernel, but remains linear in the number of points in the worst case.
+ * The exact density remains available through {@link #getExactDensity(double...)}.
  *
  * @author Pierre Lison (plison@ifi.uio.no)
  *
@@ -58,6 +78,25 @@ public class KernelDensityFunction implements DensityFunction {
 	// shorter bandwidth (for multivariate sampling)
 	final double[] samplingDeviation;
 
+	// inverse of the bandwidths
+	final double[] invBandwidths;
+
+	// normalisation factor for the kernels
+	final double normalisation;
+
+	// maximum distance (in bandwidths along the first dimension) between the
+	// evaluated point and the kernels included in the density estimate
+	public static final double MAX_KERNEL_DISTANCE = 7.0;
+
+	// number of grid nodes per bandwidth for the grid-interpolated density
+	public static final int GRID_RESOLUTION = 32;
+
+	// minimum number of points for the density to be evaluated on a grid
+	public static final int MIN_GRID_POINTS = 200;
+
+	// maximum number of grid nodes (beyond which the kernels are summed)
+	public static final int MAX_GRID_SIZE = 100000;
+
 	// the kernel function
 	static final GaussianDensityFunction kernel = new GaussianDensityFunction(0.0,
 			1.0);
@@ -65,6 +104,17 @@ public class KernelDensityFunction implements DensityFunction {
 	// the points
 	final double[][] points;
 
+	// the coordinates of the points for each dimension, sorted along the first
+	// dimension (created upon the first density evaluation)
+	volatile double[][] sortedCoordinates;
+
+	// the density evaluated on a regular grid, for one-dimensional densities
+	// (created upon the first density evaluation)
+	volatile DensityGrid grid;
+
+	// the hashcode for the points (computed upon the first call)
+	int hash;
+
 	// the sampler
 	static final Random sampler = new Random(Calendar.getInstance()
 			.getTimeInMillis() + Thread.currentThread().getId());
@@ -88,6 +138,12 @@ public class KernelDensityFunction implements DensityFunction {
 		samplingDeviation =
 				Arrays.stream(bandwidths)
 						.map(b -> b / Math.pow(bandwidths.length, 2)).toArray();
+		invBandwidths = Arrays.stream(bandwidths).map(b -> 1.0 / b).toArray();
+		double norm = 1.0;
+		for (int d = 0; d < getKernelDimensions(); d++) {
+			norm *= invBandwidths[d] / Math.sqrt(2 * Math.PI);
+		}
+		normalisation = norm;
 	}
 
 	/**
@@ -109,28 +165,60 @@ public class KernelDensityFunction implements DensityFunction {
 	}
 
 	/**
-	 * Returns the density for the given point
+	 * Returns the density for the given point. The density is interpolated from
+	 * the density grid for one-dimensional densities, and otherwise summed over
+	 * the kernels located within MAX_KERNEL_DISTANCE bandwidths of the point.
 	 * 
 	 * @param x the point
 	 * @return its density
 	 */
 	@Override
 	public double getDensity(double... x) {
-		int dim = (isBounded) ? bandwidths.length - 1 : bandwidths.length;
-
-		// Density of x for a single point in the KDE
-		Function<double[], Double> pointDensity =
-				p -> IntStream
-						.range(0, dim)
-						.mapToDouble(
-								d -> Math.log(kernel.getDensity((x[d] - p[d])
-										/ bandwidths[d])
-										/ bandwidths[d])).sum();
-
-		double density =
-				Arrays.stream(points)
-						.mapToDouble(p -> Math.exp(pointDensity.apply(p))).sum()
-						/ points.length;
+		DensityGrid densityGrid = getGrid();
+		if (densityGrid != null) {
+			return densityGrid.getDensity(x[0]);
+		}
+		double[][] coordinates = getSortedCoordinates();
+		double radius = MAX_KERNEL_DISTANCE * bandwidths[0];
+		int start = getFirstIndex(coordinates[0], x[0] - radius);
+		int end = getFirstIndex(coordinates[0], x[0] + radius);
+		return getDensity(coordinates, start, end, x);
+	}
+
+	/**
+	 * Returns the exact density for the given point, summing the kernels of all
+	 * points.
+	 * 
+	 * @param x the point
+	 * @return its density
+	 */
+	public double getExactDensity(double... x) {
+		return getDensity(getSortedCoordinates(), 0, points.length, x);
+	}
+
+	/**
+	 * Returns the density for the given point, summing the kernels of the points
+	 * between start (inclusive) and end (exclusive) in the sorted coordinates.
+	 * 
+	 * @param coordinates the sorted coordinates of the points
+	 * @param start the first point
+	 * @param end the last point (exclusive)
+	 * @param x the point
+	 * @return its density
+	 */
+	private double getDensity(double[][] coordinates, int start, int end,
+			double... x) {
+		int dim = getKernelDimensions();
+		double total = 0.0;
+		for (int i = start; i < end; i++) {
+			double dist = 0.0;
+			for (int d = 0; d < dim; d++) {
+				double z = (x[d] - coordinates[d][i]) * invBandwidths[d];
+				dist += z * z;
+			}
+			total += Math.exp(-0.5 * dist);
+		}
+		double density = total * normalisation / points.length;
 
 		// bounded support (cf. Jones 1993)
 		if (isBounded) {
@@ -205,6 +293,9 @@ public class KernelDensityFunction implements DensityFunction {
 	@Override
 	public KernelDensityFunction copy() {
 		KernelDensityFunction copy = new KernelDensityFunction(points);
+		copy.sortedCoordinates = sortedCoordinates;
+		copy.grid = grid;
+		copy.hash = hash;
 		return copy;
 	}
 
@@ -237,7 +328,30 @@ public class KernelDensityFunction implements DensityFunction {
 	 */
 	@Override
 	public int hashCode() {
-		return Arrays.asList(points).hashCode();
+		if (hash == 0) {
+			hash = Arrays.deepHashCode(points);
+		}
+		return hash;
+	}
+
+	/**
+	 * Returns true if the object is a kernel density function with the same
+	 * points, and false otherwise
+	 *
+	 * @param o the object to compare
+	 * @return true if the functions are identical, false otherwise
+	 */
+	@Override
+	public boolean equals(Object o) {
+		if (o == this) {
+			return true;
+		}
+		else if (!(o instanceof KernelDensityFunction)) {
+			return false;
+		}
+		KernelDensityFunction other = (KernelDensityFunction) o;
+		return other.points == points || (other.hashCode() == hashCode()
+				&& Arrays.deepEquals(other.points, points));
 	}
 
 	/**
@@ -309,6 +423,122 @@ public class KernelDensityFunction implements DensityFunction {
 		return nbOfLowerPoints / points.length;
 	}
 
+	/**
+	 * Returns the number of dimensions on which the kernels are defined (for a
+	 * bounded density, the last dimension is determined by the others).
+	 * 
+	 * @return the number of kernel dimensions
+	 */
+	private int getKernelDimensions() {
+		return (isBounded) ? bandwidths.length - 1 : bandwidths.length;
+	}
+
+	/**
+	 * Returns the coordinates of the points for each dimension, sorted along the
+	 * first dimension.
+	 * 
+	 * @return the sorted coordinates
+	 */
+	private double[][] getSortedCoordinates() {
+		double[][] coordinates = sortedCoordinates;
+		if (coordinates == null) {
+			Integer[] order = new Integer[points.length];
+			for (int i = 0; i < order.length; i++) {
+				order[i] = i;
+			}
+			Arrays.sort(order, (i, j) -> Double.compare(points[i][0], points[j][0]));
+			coordinates = new double[bandwidths.length][points.length];
+			for (int i = 0; i < order.length; i++) {
+				for (int d = 0; d < bandwidths.length; d++) {
+					coordinates[d][i] = points[order[i]][d];
+				}
+			}
+			sortedCoordinates = coordinates;
+		}
+		return coordinates;
+	}
+
+	/**
+	 * Returns the density grid for the function, or null if the density cannot be
+	 * evaluated on a grid (i.e. if the density is multivariate or bounded, if it
+	 * has fewer than MIN_GRID_POINTS points, or if the grid would have more than
+	 * MAX_GRID_SIZE nodes).
+	 * 
+	 * @return the density grid (if any)
+	 */
+	private DensityGrid getGrid() {
+		DensityGrid densityGrid = grid;
+		if (densityGrid != null || bandwidths.length != 1 || isBounded
+				|| points.length < MIN_GRID_POINTS) {
+			return densityGrid;
+		}
+		double[] coordinates = getSortedCoordinates()[0];
+		double step = bandwidths[0] / GRID_RESOLUTION;
+		int support = (int) Math.ceil(MAX_KERNEL_DISTANCE * GRID_RESOLUTION);
+		double span = (coordinates[points.length - 1] - coordinates[0]) / step;
+		if (span + 2 * support + 2 > MAX_GRID_SIZE) {
+			return null;
+		}
+		double start = coordinates[0] - support * step;
+		int size = (int) span + 2 * support + 2;
+
+		// step 1: linear binning of the points onto the grid
+		double[] weights = new double[size];
+		for (double coordinate : coordinates) {
+			double pos = (coordinate - start) / step;
+			int j = Math.min((int) pos, size - 2);
+			double frac = pos - j;
+			weights[j] += 1 - frac;
+			weights[j + 1] += frac;
+		}
+
+		// step 2: convolution of the binned weights with the truncated kernel
+		double[] kernelValues = new double[support + 1];
+		for (int m = 0; m <= support; m++) {
+			double z = ((double) m) / GRID_RESOLUTION;
+			kernelValues[m] = Math.exp(-0.5 * z * z);
+		}
+		double[] densities = new double[size];
+		double factor = normalisation / points.length;
+		for (int j = 0; j < size; j++) {
+			if (weights[j] == 0.0) {
+				continue;
+			}
+			double w = weights[j] * factor;
+			int min = Math.max(0, j - support);
+			int max = Math.min(size - 1, j + support);
+			for (int i = min; i <= max; i++) {
+				densities[i] += w * kernelValues[Math.abs(i - j)];
+			}
+		}
+		densityGrid = new DensityGrid(start, step, densities);
+		grid = densityGrid;
+		return densityGrid;
+	}
+
+	/**
+	 * Returns the index of the first value that is greater or equal to the
+	 * threshold in the sorted array (or the array length if no such value exists).
+	 * 
+	 * @param sorted the sorted values
+	 * @param threshold the threshold
+	 * @return the corresponding index
+	 */
+	private static int getFirstIndex(double[] sorted, double threshold) {
+		int low = 0;
+		int high = sorted.length;
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (sorted[mid] < threshold) {
+				low = mid + 1;
+			}
+			else {
+				high = mid;
+			}
+		}
+		return low;
+	}
+
 	/**
 	 * Returns the standard deviation.
 	 * 
@@ -370,4 +600,50 @@ public class KernelDensityFunction implements DensityFunction {
 		return gaussian.generateXML(doc);
 	}
 
+	/**
+	 * Immutable grid of density values at regularly spaced nodes, with linear
+	 * interpolation between the nodes.
+	 */
+	private static final class DensityGrid {
+
+		// position of the first node
+		final double start;
+
+		// distance between two successive nodes
+		final double step;
+
+		// density values at each node
+		final double[] values;
+
+		/**
+		 * Creates a new density grid
+		 * 
+		 * @param start the position of the first node
+		 * @param step the distance between two nodes
+		 * @param values the density values at each node
+		 */
+		DensityGrid(double start, double step, double[] values) {
+			this.start = start;
+			this.step = step;
+			this.values = values;
+		}
+
+		/**
+		 * Returns the density interpolated at the given position (0 outside the
+		 * grid).
+		 * 
+		 * @param x the position
+		 * @return the interpolated density
+		 */
+		double getDensity(double x) {
+			double pos = (x - start) / step;
+			if (!(pos >= 0) || pos > values.length - 1) {
+				return 0.0;
+			}
+			int j = Math.min((int) pos, values.length - 2);
+			double frac = pos - j;
+			return (1 - frac) * values[j] + frac * values[j + 1];
+		}
+	}
+
 }
@@ -167,6 +167,20 @@ public class UniformDensityFunction implements DensityFunction {
 		return (new Double(maximum)).hashCode() - (new Double(minimum)).hashCode();
 	}
 
+	/**
+	 * Returns true if the object is a uniform distribution with the same bounds, and
+	 * false otherwise
+	 *
+	 * @param o the object to compare
+	 * @return true if the distributions are identical, false otherwise
+	 */
+	@Override
+	public boolean equals(Object o) {
+		return o instanceof UniformDensityFunction
+				&& ((UniformDensityFunction) o).minimum == minimum
+				&& ((UniformDensityFunction) o).maximum == maximum;
+	}
+
 	/**
 	 * Returns the mean of the distribution
 	 * 
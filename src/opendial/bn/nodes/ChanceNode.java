@@ -53,6 +53,10 @@ public class ChanceNode extends BNode {
 	// the probability distribution for the node
 	protected ProbDistribution distrib;
 
+	// whether the distribution is shared with copies of the node (in which case
+	// it must be copied before any in-place modification)
+	protected volatile boolean sharedDistrib = false;
+
 	// the set of cached values for the node
 	// NB: if the node has a continuous range, these values are based on
 	// a discretisation procedure defined by the distribution
@@ -94,6 +98,7 @@ public class ChanceNode extends BNode {
 	 */
 	public void setDistrib(ProbDistribution distrib) {
 		this.distrib = distrib;
+		sharedDistrib = false;
 		if (!distrib.getVariable().equals(nodeId)) {
 			log.warning(nodeId + "  != " + distrib.getVariable());
 		}
@@ -101,13 +106,15 @@ public class ChanceNode extends BNode {
 	}
 
 	/**
-	 * Adds a new (input) relation for the node
+	 * Adds a new (input) relation for the node. Since the range of the node may
+	 * depend on its input nodes, the cached values are erased.
 	 *
 	 * @param inputNode the input node to connect
 	 */
 	@Override
 	public void addInputNode(BNode inputNode) {
 		super.addInputNode(inputNode);
+		cachedValues = null;
 	}
 
 	/**
@@ -120,7 +127,7 @@ public class ChanceNode extends BNode {
 		// log.fine("changing id from " + this.nodeId + " to " + nodeId);
 		String oldId = nodeId;
 		super.setId(newId);
-		distrib.modifyVariableId(oldId, newId);
+		getMutableDistrib().modifyVariableId(oldId, newId);
 	}
 
 	/**
@@ -129,7 +136,7 @@ public class ChanceNode extends BNode {
 	 * @param threshold the probability threshold
 	 */
 	public void pruneValues(double threshold) {
-		if (distrib.pruneValues(threshold)) {
+		if (getMutableDistrib().pruneValues(threshold)) {
 			cachedValues = null;
 		}
 	}
@@ -278,6 +285,21 @@ public class ChanceNode extends BNode {
 		return distrib;
 	}
 
+	/**
+	 * Returns the probability distribution attached to the node, for the purpose of
+	 * modifying it in place. If the distribution is shared with copies of the node,
+	 * it is first copied, so that the modification only affects this node.
+	 * 
+	 * @return the (non-shared) distribution
+	 */
+	public ProbDistribution getMutableDistrib() {
+		if (sharedDistrib) {
+			distrib = distrib.copy();
+			sharedDistrib = false;
+		}
+		return distrib;
+	}
+
 	/**
 	 * Returns the "factor matrix" mapping assignments of conditional variables + the
 	 * node variable to a probability value.
@@ -307,13 +329,16 @@ public class ChanceNode extends BNode {
 
 	/**
 	 * Returns a copy of the node. Note that only the node content is copied, not its
-	 * connection with other nodes.
+	 * connection with other nodes. The distribution is shared between the node and
+	 * its copy until one of them modifies it (copy-on-write).
 	 *
 	 * @return the copy
 	 */
 	@Override
 	public ChanceNode copy() {
-		ChanceNode cn = new ChanceNode(nodeId, distrib.copy());
+		ChanceNode cn = new ChanceNode(nodeId, distrib);
+		cn.sharedDistrib = true;
+		sharedDistrib = true;
 		if (cachedValues != null) {
 			cn.cachedValues = new HashSet<Value>(cachedValues);
 		}
@@ -345,8 +370,12 @@ public class ChanceNode extends BNode {
 
 	@Override
 	protected void modifyVariableId(String oldId, String newId) {
+		// only the distributions conditioned on the variable need to be modified
+		boolean isInput = inputNodes.containsKey(oldId);
 		super.modifyVariableId(oldId, newId);
-		distrib.modifyVariableId(oldId, newId);
+		if (isInput) {
+			getMutableDistrib().modifyVariableId(oldId, newId);
+		}
 	}
 
 }
@@ -49,6 +49,10 @@ public class UtilityNode extends BNode {
 	// the utility distribution
 	protected UtilityFunction distrib;
 
+	// whether the distribution is shared with copies of the node (in which case
+	// it must be copied before any in-place modification)
+	protected volatile boolean sharedDistrib = false;
+
 	// ===================================
 	// NODE CONSTRUCTION
 	// ===================================
@@ -83,7 +87,7 @@ public class UtilityNode extends BNode {
 	 */
 	public void addUtility(Assignment input, double value) {
 		if (distrib instanceof UtilityTable) {
-			((UtilityTable) distrib).setUtil(input, value);
+			((UtilityTable) getMutableFunction()).setUtil(input, value);
 		}
 		else {
 			log.warning("utility distribution is not a table, cannot add value");
@@ -97,7 +101,7 @@ public class UtilityNode extends BNode {
 	 */
 	public void removeUtility(Assignment input) {
 		if (distrib instanceof UtilityTable) {
-			((UtilityTable) distrib).removeUtil(input);
+			((UtilityTable) getMutableFunction()).removeUtil(input);
 		}
 		else {
 			log.warning("utility distribution is not a table, cannot remove value");
@@ -106,12 +110,13 @@ public class UtilityNode extends BNode {
 
 	public void setDistrib(UtilityFunction distrib) {
 		this.distrib = distrib;
+		sharedDistrib = false;
 	}
 
 	@Override
 	public void setId(String newId) {
 		super.setId(newId);
-		distrib.modifyVariableId(this.nodeId, newId);
+		getMutableFunction().modifyVariableId(this.nodeId, newId);
 	}
 
 	// ===================================
@@ -148,6 +153,20 @@ public class UtilityNode extends BNode {
 		return distrib;
 	}
 
+	/**
+	 * Returns the utility distribution, for the purpose of modifying it in place. If
+	 * the distribution is shared with copies of the node, it is first copied.
+	 * 
+	 * @return the (non-shared) utility distribution
+	 */
+	public UtilityFunction getMutableFunction() {
+		if (sharedDistrib) {
+			distrib = distrib.copy();
+			sharedDistrib = false;
+		}
+		return distrib;
+	}
+
 	/**
 	 * Returns the factor matrix associated with the utility node, which maps an
 	 * assignment of input variable to a given utility.
@@ -172,13 +191,16 @@ public class UtilityNode extends BNode {
 
 	/**
 	 * Returns a copy of the utility node. Note that only the node content is copied,
-	 * not its connection with other nodes.
+	 * not its connection with other nodes. The utility distribution is shared
+	 * between the node and its copy until one of them modifies it.
 	 * 
 	 * @return the copy
 	 */
 	@Override
 	public UtilityNode copy() {
-		UtilityNode copy = new UtilityNode(nodeId, distrib.copy());
+		UtilityNode copy = new UtilityNode(nodeId, distrib);
+		copy.sharedDistrib = true;
+		sharedDistrib = true;
 		return copy;
 	}
 
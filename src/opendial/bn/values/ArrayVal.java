@@ -131,8 +131,11 @@ public final class ArrayVal implements Value {
 	 */
 	@Override
 	public boolean equals(Object o) {
-		if (o instanceof ArrayVal) {
-			return ((ArrayVal) o).getVector().equals(getVector());
+		if (o == this) {
+			return true;
+		}
+		else if (o instanceof ArrayVal) {
+			return Arrays.equals(((ArrayVal) o).array, array);
 		}
 		return false;
 	}
@@ -67,7 +67,7 @@ public final class BooleanVal implements Value {
 	 */
 	@Override
 	public boolean equals(Object o) {
-		return (o instanceof BooleanVal && ((BooleanVal) o).getBoolean() == getBoolean());
+		return (o == this || (o instanceof BooleanVal && ((BooleanVal) o).b == b));
 	}
 
 	/**
@@ -86,7 +86,7 @@ public final class BooleanVal implements Value {
 	 */
 	@Override
 	public BooleanVal copy() {
-		return new BooleanVal(b);
+		return this;
 	}
 
 	/**
@@ -116,7 +116,7 @@ public final class BooleanVal implements Value {
 	@Override
 	public Value concatenate(Value v) {
 		if (v instanceof BooleanVal) {
-			return new BooleanVal(b & ((BooleanVal) v).getBoolean());
+			return ValueFactory.create(b & ((BooleanVal) v).getBoolean());
 		}
 		else if (v instanceof NoneVal) {
 			return this;
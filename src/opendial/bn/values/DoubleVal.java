@@ -71,10 +71,8 @@ public final class DoubleVal implements Value {
 	 */
 	@Override
 	public boolean equals(Object o) {
-		boolean result =
-				(o instanceof DoubleVal && Math.abs(((DoubleVal) o).getDouble()
-						- getDouble()) < 0.000001);
-		return result;
+		return (o == this || (o instanceof DoubleVal
+				&& Math.abs(((DoubleVal) o).d - d) < 0.000001));
 	}
 
 	/**
@@ -57,7 +57,7 @@ public final class NoneVal implements Value {
 	 */
 	@Override
 	public boolean equals(Object o) {
-		return (o instanceof NoneVal);
+		return (o == this || o instanceof NoneVal);
 	}
 
 	/**
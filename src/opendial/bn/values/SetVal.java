@@ -92,7 +92,7 @@ public final class SetVal implements Value {
 	 */
 	@Override
 	public boolean equals(Object o) {
-		return ((o instanceof SetVal && ((SetVal) o).getSet().equals(getSet())));
+		return (o == this || (o instanceof SetVal && ((SetVal) o).set.equals(set)));
 	}
 
 	/**
@@ -71,7 +71,10 @@ public final class StringVal implements Value {
 	 */
 	@Override
 	public boolean equals(Object o) {
-		if (o instanceof StringVal) {
+		if (o == this) {
+			return true;
+		}
+		else if (o instanceof StringVal) {
 			StringVal stringval = (StringVal) o;
 			if (stringval.str.equalsIgnoreCase(str)) {
 				return true;
@@ -29,7 +29,8 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.LinkedList;
 import java.util.List;
-import java.util.regex.Matcher;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.regex.Pattern;
 
 /**
@@ -46,24 +47,30 @@ public class ValueFactory {
 	// none value (no need to recreate one everytime)
 	static final NoneVal noneValue = new NoneVal();
 
+	// canonical boolean values
+	static final BooleanVal trueValue = new BooleanVal(true);
+	static final BooleanVal falseValue = new BooleanVal(false);
+
 	// pattern to find a double value
 	public static Pattern doublePattern = Pattern
 			.compile("[-+]?[0-9]*\\.?[0-9]+([eE][-+]?[0-9]+)?");
 
-	// pattern to find an array of doubles
-	static Pattern arrayPattern = Pattern
-			.compile("\\[([-+]?[0-9]*\\.?[0-9]+([eE][-+]?[0-9]+)?,\\s*)*"
-					+ "([-+]?[0-9]*\\.?[0-9]+([eE][-+]?[0-9]+)?)\\]");
+	// maximum number of string representations kept in the cache
+	static final int MAX_CACHE_SIZE = 20000;
 
-	static Pattern setPattern = Pattern.compile("[\\w\\-_\\.\\^\\=\\s]*"
-			+ "([\\[\\(][\\w\\-_,\\.\\^\\=\\s\\(]+\\)*[\\]\\)])?",
-			Pattern.UNICODE_CHARACTER_CLASS | Pattern.UNICODE_CASE);
+	// cache of values created from their string representation (only for
+	// immutable values, i.e. excluding sets and arrays)
+	static final Map<String, Value> cache = new ConcurrentHashMap<String, Value>();
 
 	/**
 	 * Creates a new value based on the provided string representation. If the string
 	 * contains a numeric value, "true", "false", "None", or opening and closing
 	 * brackets, convert it to the appropriate values. Else, returns a string value.
 	 * 
+	 * <p>
+	 * The values are interned: creating twice a (non-set, non-array) value from the
+	 * same string representation returns the same instance.
+	 * 
 	 * @param str the string representation for the value
 	 * @return the resulting value
 	 */
@@ -72,48 +79,228 @@ public class ValueFactory {
 		if (str == null) {
 			return noneValue;
 		}
+		Value value = cache.get(str);
+		if (value == null) {
+			value = parse(str);
+			if (!(value instanceof SetVal) && !(value instanceof ArrayVal)) {
+				if (cache.size() >= MAX_CACHE_SIZE) {
+					cache.clear();
+				}
+				cache.put(str, value);
+			}
+		}
+		return value;
+	}
+
+	/**
+	 * Parses the string representation of a value.
+	 * 
+	 * @param str the string representation for the value
+	 * @return the resulting value
+	 */
+	private static Value parse(String str) {
 
-		Matcher m = doublePattern.matcher(str);
-		if (m.matches()) {
+		int length = str.length();
+		if (isDouble(str, 0, length)) {
 			return new DoubleVal(Double.parseDouble(str));
 		}
 		else if (str.equalsIgnoreCase("true")) {
-			return new BooleanVal(true);
+			return trueValue;
 		}
 		else if (str.equalsIgnoreCase("false")) {
-			return new BooleanVal(false);
+			return falseValue;
 		}
 		else if (str.equalsIgnoreCase("None")) {
-			return none();
+			return noneValue;
 		}
-		// adds the converted value
-		else {
-			Matcher m2 = arrayPattern.matcher(str);
-			if (m2.matches()) {
+		else if (length >= 2 && str.charAt(0) == '['
+				&& str.charAt(length - 1) == ']') {
+			if (isArray(str)) {
 				List<Double> subVals = new ArrayList<Double>();
-				for (String subVal : str.replace("[", "").replace("]", "")
-						.split(",")) {
+				for (String subVal : str.substring(1, length - 1).split(",")) {
 					subVals.add(Double.parseDouble(subVal));
 				}
 				return new ArrayVal(subVals);
 			}
-			else if (str.startsWith("[") && str.endsWith("]")) {
-
-				LinkedList<Value> subVals = new LinkedList<Value>();
-				Matcher m3 = setPattern.matcher(str.substring(1, str.length() - 1));
-				while (m3.find()) {
-					String subval = m3.group(0).trim();
-					if (subval.length() > 0) {
-						subVals.add(create(subval));
-					}
+
+			LinkedList<Value> subVals = new LinkedList<Value>();
+			String content = str.substring(1, length - 1);
+			int pos = 0;
+			while (pos <= content.length()) {
+				int next = findSubValue(content, pos);
+				if (next == pos) {
+					pos++;
+					continue;
+				}
+				String subval = content.substring(pos, next).trim();
+				if (subval.length() > 0) {
+					subVals.add(create(subval));
 				}
-				return new SetVal(subVals);
+				pos = next;
 			}
+			return new SetVal(subVals);
 		}
 
 		return new StringVal(str);
 	}
 
+	/**
+	 * Returns true if the substring between start and end is a double (following
+	 * the syntax of the double pattern), and false otherwise.
+	 * 
+	 * @param str the string
+	 * @param start the start index (inclusive)
+	 * @param end the end index (exclusive)
+	 * @return true if the substring is a double, false otherwise
+	 */
+	private static boolean isDouble(String str, int start, int end) {
+		int i = start;
+		if (i < end && (str.charAt(i) == '-' || str.charAt(i) == '+')) {
+			i++;
+		}
+		int intDigits = 0;
+		while (i < end && isDigit(str.charAt(i))) {
+			i++;
+			intDigits++;
+		}
+		if (i < end && str.charAt(i) == '.') {
+			i++;
+			int fracDigits = 0;
+			while (i < end && isDigit(str.charAt(i))) {
+				i++;
+				fracDigits++;
+			}
+			if (fracDigits == 0) {
+				return false;
+			}
+		}
+		else if (intDigits == 0) {
+			return false;
+		}
+		if (i < end && (str.charAt(i) == 'e' || str.charAt(i) == 'E')) {
+			i++;
+			if (i < end && (str.charAt(i) == '-' || str.charAt(i) == '+')) {
+				i++;
+			}
+			int expDigits = 0;
+			while (i < end && isDigit(str.charAt(i))) {
+				i++;
+				expDigits++;
+			}
+			if (expDigits == 0) {
+				return false;
+			}
+		}
+		return i == end;
+	}
+
+	/**
+	 * Returns true if the string (of the form [...]) is an array of doubles
+	 * separated by commas, and false otherwise.
+	 * 
+	 * @param str the string
+	 * @return true if the string is an array of doubles, false otherwise
+	 */
+	private static boolean isArray(String str) {
+		int start = 1;
+		int end = str.length() - 1;
+		while (true) {
+			int comma = str.indexOf(',', start);
+			if (comma < 0 || comma > end) {
+				return isDouble(str, start, end);
+			}
+			else if (!isDouble(str, start, comma)) {
+				return false;
+			}
+			start = comma + 1;
+			while (start < end && Character.isWhitespace(str.charAt(start))) {
+				start++;
+			}
+		}
+	}
+
+	/**
+	 * Returns the end position of the element of a set starting at the given
+	 * position. An element consists of a sequence of word characters (including
+	 * whitespaces and the symbols -_.^=), optionally followed by a bracketed
+	 * expression. If no element starts at the position, returns the position
+	 * itself.
+	 * 
+	 * @param str the content of the set
+	 * @param pos the start position
+	 * @return the end position of the element
+	 */
+	private static int findSubValue(String str, int pos) {
+		int length = str.length();
+		int i = pos;
+		while (i < length && isElementChar(str.codePointAt(i), false)) {
+			i += Character.charCount(str.codePointAt(i));
+		}
+		if (i < length && (str.charAt(i) == '[' || str.charAt(i) == '(')) {
+			int j = i + 1;
+			while (j < length && isElementChar(str.codePointAt(j), true)) {
+				j += Character.charCount(str.codePointAt(j));
+			}
+			if (j > i + 1) {
+				int closing = 0;
+				while (j < length && str.charAt(j) == ')') {
+					j++;
+					closing++;
+				}
+				if (j < length && str.charAt(j) == ']') {
+					return j + 1;
+				}
+				else if (closing > 0) {
+					return j;
+				}
+			}
+		}
+		return i;
+	}
+
+	/**
+	 * Returns true if the character can be part of a set element (word
+	 * characters, whitespaces and the symbols -_.^=, as well as commas and opening
+	 * parentheses within brackets), and false otherwise.
+	 * 
+	 * @param c the character (code point)
+	 * @param inBrackets whether the character is within brackets
+	 * @return true if the character can be part of an element, false otherwise
+	 */
+	private static boolean isElementChar(int c, boolean inBrackets) {
+		switch (c) {
+		case '-':
+		case '_':
+		case '.':
+		case '^':
+		case '=':
+			return true;
+		case ',':
+		case '(':
+			return inBrackets;
+		default:
+			if (Character.isAlphabetic(c) || Character.isDigit(c)
+					|| Character.isWhitespace(c) || Character.isSpaceChar(c)) {
+				return true;
+			}
+			int type = Character.getType(c);
+			return type == Character.NON_SPACING_MARK
+					|| type == Character.ENCLOSING_MARK
+					|| type == Character.COMBINING_SPACING_MARK
+					|| type == Character.CONNECTOR_PUNCTUATION;
+		}
+	}
+
+	/**
+	 * Returns true if the character is an ASCII digit, and false otherwise
+	 * 
+	 * @param c the character
+	 * @return true if the character is a digit, false otherwise
+	 */
+	private static boolean isDigit(char c) {
+		return c >= '0' && c <= '9';
+	}
+
 	/**
 	 * Returns a double value given the double
 	 * 
@@ -135,7 +322,7 @@ public class ValueFactory {
 	 * @return the double
 	 */
 	public static BooleanVal create(boolean b) {
-		return new BooleanVal(b);
+		return (b) ? trueValue : falseValue;
 	}
 
 	/**
@@ -24,15 +24,20 @@
 package opendial.datastructs;
 
 import java.util.logging.*;
+import java.util.AbstractCollection;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
-import java.util.Collections;
-import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.NoSuchElementException;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiPredicate;
 
 import opendial.bn.values.ArrayVal;
 import opendial.bn.values.DoubleVal;
@@ -49,8 +54,11 @@ import org.w3c.dom.Element;
  * conjunction of (variable,value) pairs.
  * 
  * <p>
- * Technically, the assignment is encoded as a map between the variable identifiers
- * and their associated value. This class offers various methods are provided for
+ * Technically, the assignment is encoded as two parallel arrays: a sorted array of
+ * variable symbols (integers uniquely associated with each variable identifier)
+ * and an array with their associated values. This compact encoding allows most
+ * operations on pairs of assignments (merges, consistency checks, etc.) to be
+ * performed as linear merges. This class offers various methods are provided for
  * creating, comparing and manipulating such assignments.
  *
  * @author Pierre Lison (plison@ifi.uio.no)
@@ -61,12 +69,27 @@ public class Assignment {
 	// logger
 	final static Logger log = Logger.getLogger("OpenDial");
 
-	// the hashmap encoding the assignment
-	protected final Map<String, Value> map;
+	// empty arrays (shared by all empty assignments)
+	static final int[] EMPTY_VARS = new int[0];
+	static final Value[] EMPTY_VALS = new Value[0];
+
+	// the symbols for the variables in the assignment, in increasing order
+	int[] vars;
+
+	// the values for the variables (in the same order)
+	Value[] vals;
+
+	// the number of pairs in the assignment
+	int size;
 
 	// the cached value for the hash
 	int cachedHash = 0;
 
+	// views on the variables, values and pairs of the assignment
+	Set<String> varsView;
+	Collection<Value> valsView;
+	Map<String, Value> pairsView;
+
 	// ===================================
 	// CONSTRUCTORS
 	// ===================================
@@ -75,7 +98,8 @@ public class Assignment {
 	 * Creates a new, empty assignment
 	 */
 	public Assignment() {
-		map = new HashMap<String, Value>();
+		vars = EMPTY_VARS;
+		vals = EMPTY_VALS;
 	}
 
 	/**
@@ -84,7 +108,10 @@ public class Assignment {
 	 * @param a the assignment to copy
 	 */
 	public Assignment(Assignment a) {
-		map = new HashMap<String, Value>(a.map);
+		vars = (a.size == 0) ? EMPTY_VARS : Arrays.copyOf(a.vars, a.size);
+		vals = (a.size == 0) ? EMPTY_VALS : Arrays.copyOf(a.vals, a.size);
+		size = a.size;
+		cachedHash = a.cachedHash;
 	}
 
 	/**
@@ -94,8 +121,9 @@ public class Assignment {
 	 * @param val the value
 	 */
 	public Assignment(String var, Value val) {
-		map = new HashMap<String, Value>();
-		map.put(var, val);
+		vars = new int[] { Symbols.intern(var) };
+		vals = new Value[] { val };
+		size = 1;
 	}
 
 	/**
@@ -105,8 +133,7 @@ public class Assignment {
 	 * @param val the value (as a string)
 	 */
 	public Assignment(String var, String val) {
-		this();
-		map.put(var, ValueFactory.create(val));
+		this(var, ValueFactory.create(val));
 	}
 
 	/**
@@ -116,8 +143,7 @@ public class Assignment {
 	 * @param val the value (as a double)
 	 */
 	public Assignment(String var, double val) {
-		this();
-		map.put(var, ValueFactory.create(val));
+		this(var, ValueFactory.create(val));
 	}
 
 	/**
@@ -127,8 +153,7 @@ public class Assignment {
 	 * @param val the value (as a boolean)
 	 */
 	public Assignment(String var, boolean val) {
-		this();
-		map.put(var, ValueFactory.create(val));
+		this(var, ValueFactory.create(val));
 	}
 
 	/**
@@ -138,8 +163,7 @@ public class Assignment {
 	 * @param val the value (as a double array)
 	 */
 	public Assignment(String var, double[] val) {
-		this();
-		map.put(var, ValueFactory.create(val));
+		this(var, ValueFactory.create(val));
 	}
 
 	/**
@@ -149,7 +173,9 @@ public class Assignment {
 	 */
 	public Assignment(Assignment... assignments) {
 		this();
-		Arrays.asList(assignments).stream().forEach(a -> addAssignment(a));
+		for (Assignment a : assignments) {
+			addAssignment(a);
+		}
 	}
 
 	/**
@@ -193,8 +219,7 @@ public class Assignment {
 	 * @param val the value
 	 */
 	public Assignment(Assignment ass, String var, Value val) {
-		this();
-		addAssignment(ass);
+		this(ass);
 		addPair(var, val);
 	}
 
@@ -207,8 +232,7 @@ public class Assignment {
 	 * @param val the value
 	 */
 	public Assignment(Assignment ass, String var, String val) {
-		this();
-		addAssignment(ass);
+		this(ass);
 		addPair(var, val);
 	}
 
@@ -221,8 +245,7 @@ public class Assignment {
 	 * @param val the value
 	 */
 	public Assignment(Assignment ass, String var, double val) {
-		this();
-		addAssignment(ass);
+		this(ass);
 		addPair(var, val);
 	}
 
@@ -235,8 +258,7 @@ public class Assignment {
 	 * @param val the value
 	 */
 	public Assignment(Assignment ass, String var, boolean val) {
-		this();
-		addAssignment(ass);
+		this(ass);
 		addPair(var, val);
 	}
 
@@ -261,9 +283,8 @@ public class Assignment {
 	 * @param val2 value of second variable
 	 */
 	public Assignment(String var1, Value val1, String var2, Value val2) {
-		this();
-		map.put(var1, val1);
-		map.put(var2, val2);
+		this(var1, val1);
+		addPair(var2, val2);
 	}
 
 	/**
@@ -335,8 +356,7 @@ public class Assignment {
 	 * @param val the value
 	 */
 	public void addPair(String var, Value val) {
-		map.put(var, val);
-		cachedHash = 0;
+		put(Symbols.intern(var), val);
 	}
 
 	/**
@@ -346,8 +366,7 @@ public class Assignment {
 	 * @param val the value, as a string
 	 */
 	public void addPair(String var, String val) {
-		map.put(var, ValueFactory.create(val));
-		cachedHash = 0;
+		put(Symbols.intern(var), ValueFactory.create(val));
 	}
 
 	/**
@@ -357,8 +376,7 @@ public class Assignment {
 	 * @param val the value, as a double
 	 */
 	public void addPair(String var, double val) {
-		map.put(var, ValueFactory.create(val));
-		cachedHash = 0;
+		put(Symbols.intern(var), ValueFactory.create(val));
 	}
 
 	/**
@@ -368,8 +386,7 @@ public class Assignment {
 	 * @param val the value, as a boolean
 	 */
 	public void addPair(String var, boolean val) {
-		map.put(var, ValueFactory.create(val));
-		cachedHash = 0;
+		put(Symbols.intern(var), ValueFactory.create(val));
 	}
 
 	/**
@@ -379,8 +396,7 @@ public class Assignment {
 	 * @param val the value, as a double array
 	 */
 	public void addPair(String var, double[] val) {
-		map.put(var, ValueFactory.create(val));
-		cachedHash = 0;
+		put(Symbols.intern(var), ValueFactory.create(val));
 	}
 
 	/**
@@ -406,18 +422,60 @@ public class Assignment {
 	 * @param pairs the pairs to add
 	 */
 	public void addPairs(Map<String, Value> pairs) {
-		map.putAll(pairs);
-		cachedHash = 0;
+		for (Entry<String, Value> e : pairs.entrySet()) {
+			put(Symbols.intern(e.getKey()), e.getValue());
+		}
 	}
 
 	/**
 	 * Add a new set of pairs defined in the assignment given as argument (i.e. merge
-	 * the given assignment into the present one).
+	 * the given assignment into the present one). The merge is performed in linear
+	 * time over the two (sorted) assignments.
 	 * 
 	 * @param assignment the assignment to merge
 	 */
 	public void addAssignment(Assignment assignment) {
-		addPairs(assignment.getPairs());
+		int size2 = assignment.size;
+		if (size2 == 0) {
+			return;
+		}
+		else if (size == 0) {
+			vars = Arrays.copyOf(assignment.vars, size2);
+			vals = Arrays.copyOf(assignment.vals, size2);
+			size = size2;
+			cachedHash = assignment.cachedHash;
+			return;
+		}
+		int[] vars2 = assignment.vars;
+		Value[] vals2 = assignment.vals;
+		int[] newVars = new int[size + size2];
+		Value[] newVals = new Value[size + size2];
+		int i = 0, j = 0, k = 0;
+		while (i < size && j < size2) {
+			if (vars[i] < vars2[j]) {
+				newVars[k] = vars[i];
+				newVals[k++] = vals[i++];
+			}
+			else {
+				if (vars[i] == vars2[j]) {
+					i++;
+				}
+				newVars[k] = vars2[j];
+				newVals[k++] = vals2[j++];
+			}
+		}
+		while (i < size) {
+			newVars[k] = vars[i];
+			newVals[k++] = vals[i++];
+		}
+		while (j < size2) {
+			newVars[k] = vars2[j];
+			newVals[k++] = vals2[j++];
+		}
+		vars = newVars;
+		vals = newVals;
+		size = k;
+		cachedHash = 0;
 	}
 
 	/**
@@ -427,7 +485,14 @@ public class Assignment {
 	 * @return the removed value
 	 */
 	public Value removePair(String var) {
-		Value v = map.remove(var);
+		int index = indexOf(var);
+		if (index < 0) {
+			return null;
+		}
+		Value v = vals[index];
+		System.arraycopy(vars, index + 1, vars, index, size - index - 1);
+		System.arraycopy(vals, index + 1, vals, index, size - index - 1);
+		vals[--size] = null;
 		cachedHash = 0;
 		return v;
 	}
@@ -438,8 +503,7 @@ public class Assignment {
 	 * @param vars the variable labels to remove
 	 */
 	public void removePairs(Collection<String> vars) {
-		vars.stream().forEach(v -> map.remove(v));
-		cachedHash = 0;
+		removeAll(vars);
 	}
 
 	/**
@@ -449,19 +513,15 @@ public class Assignment {
 	 * @return the resulting assignment
 	 */
 	public Assignment removeValues(Value toRemove) {
-		Assignment a = new Assignment();
-		for (String var : map.keySet()) {
-			Value v = map.get(var);
-			if (!v.equals(toRemove)) {
-				a.addPair(var, v);
-			}
-		}
-		cachedHash = 0;
+		Assignment a = new Assignment(this);
+		a.retain((var, v) -> !v.equals(toRemove));
 		return a;
 	}
 
 	public void clear() {
-		map.clear();
+		vars = EMPTY_VARS;
+		vals = EMPTY_VALS;
+		size = 0;
 		cachedHash = 0;
 	}
 
@@ -472,8 +532,7 @@ public class Assignment {
 	 * @param variables the variables to consider
 	 */
 	public void trim(Collection<String> variables) {
-		map.keySet().retainAll(variables);
-		cachedHash = 0;
+		retain((var, v) -> variables.contains(var));
 	}
 
 	/**
@@ -483,8 +542,7 @@ public class Assignment {
 	 * @param variables the variables to consider
 	 */
 	public void removeAll(Collection<String> variables) {
-		map.keySet().removeAll(variables);
-		cachedHash = 0;
+		retain((var, v) -> !variables.contains(var));
 	}
 
 	// ===================================
@@ -498,13 +556,8 @@ public class Assignment {
 	 * @return the intersection
 	 */
 	public Assignment intersect(Assignment assign) {
-		Assignment intersect = new Assignment();
-		for (String var : map.keySet()) {
-			Value v = map.get(var);
-			if (assign.getValue(var).equals(v)) {
-				intersect.addPair(var, v);
-			}
-		}
+		Assignment intersect = new Assignment(this);
+		intersect.retain((var, v) -> assign.getValue(var).equals(v));
 		return intersect;
 	}
 
@@ -515,12 +568,10 @@ public class Assignment {
 	 */
 	public Assignment removePrimes() {
 		Assignment a = new Assignment();
-		for (String var : map.keySet()) {
-			if (!map.containsKey(var + "'")) {
-				boolean hasPrime = (var.charAt(var.length() - 1) == '\'');
-				String newVar =
-						(hasPrime) ? var.substring(0, var.length() - 1) : var;
-				a.addPair(newVar, map.get(var));
+		for (int i = 0; i < size; i++) {
+			VariableId id = VariableId.of(Symbols.getName(vars[i]));
+			if (!containsVar(id.getPending().toString())) {
+				a.addPair(id.getBase(), vals[i]);
 			}
 		}
 
@@ -545,8 +596,10 @@ public class Assignment {
 
 	public Assignment addPrimes() {
 		Assignment a = new Assignment();
-		map.entrySet().stream()
-				.forEach(e -> a.addPair(e.getKey() + "'", e.getValue()));
+		for (int i = 0; i < size; i++) {
+			VariableId id = VariableId.of(Symbols.getName(vars[i]));
+			a.addPair(id.getPending().toString(), vals[i]);
+		}
 		return a;
 	}
 
@@ -556,7 +609,7 @@ public class Assignment {
 	 * @return true if the assignment is empty, else false.
 	 */
 	public boolean isEmpty() {
-		return map.isEmpty();
+		return size == 0;
 	}
 
 	/**
@@ -565,7 +618,10 @@ public class Assignment {
 	 * @return all pairs
 	 */
 	public Map<String, Value> getPairs() {
-		return map;
+		if (pairsView == null) {
+			pairsView = new PairsView();
+		}
+		return pairsView;
 	}
 
 	/**
@@ -574,7 +630,7 @@ public class Assignment {
 	 * @return the number of pairs
 	 */
 	public int size() {
-		return map.size();
+		return size;
 	}
 
 	/**
@@ -585,7 +641,7 @@ public class Assignment {
 	 * @return true if the variable is included, false otherwise
 	 */
 	public boolean containsVar(String var) {
-		return map.containsKey(var);
+		return indexOf(var) >= 0;
 	}
 
 	/**
@@ -596,8 +652,8 @@ public class Assignment {
 	 * @return true if the assignment contains the pair, false otherwise
 	 */
 	public boolean containsPair(String variable, Value value) {
-		Value v = map.get(variable);
-		return v != null && v.equals(value);
+		int index = indexOf(variable);
+		return index >= 0 && vals[index] != null && vals[index].equals(value);
 	}
 
 	/**
@@ -608,7 +664,12 @@ public class Assignment {
 	 * @return true if all variables are included, false otherwise
 	 */
 	public boolean containsVars(Collection<String> vars) {
-		return map.keySet().containsAll(vars);
+		for (String var : vars) {
+			if (indexOf(var) < 0) {
+				return false;
+			}
+		}
+		return true;
 	}
 
 	/**
@@ -619,7 +680,20 @@ public class Assignment {
 	 * @return true if at least one variable are included, false otherwise
 	 */
 	public boolean containsOneVar(Set<String> vars) {
-		return !Collections.disjoint(map.keySet(), vars);
+		if (vars.size() < size) {
+			for (String var : vars) {
+				if (indexOf(var) >= 0) {
+					return true;
+				}
+			}
+			return false;
+		}
+		for (int i = 0; i < size; i++) {
+			if (vars.contains(Symbols.getName(this.vars[i]))) {
+				return true;
+			}
+		}
+		return false;
 	}
 
 	/**
@@ -630,18 +704,7 @@ public class Assignment {
 	 * @return a new, trimmed assignment
 	 */
 	public Assignment getTrimmed(Collection<String> variables) {
-		Assignment a = new Assignment();
-		int trimmedHash = 0;
-		for (Entry<String, Value> e : map.entrySet()) {
-			String var = e.getKey();
-			if (variables.contains(var)) {
-				Value val = e.getValue();
-				a.addPair(var, val);
-				trimmedHash += var.hashCode() ^ val.hashCode();
-			}
-		}
-		a.cachedHash = trimmedHash;
-		return a;
+		return getSubset(variables, true);
 	}
 
 	/**
@@ -652,18 +715,7 @@ public class Assignment {
 	 * @return a new, pruned assignment
 	 */
 	public Assignment getPruned(Collection<String> variables) {
-		Assignment a = new Assignment();
-		int trimmedHash = 0;
-		for (Entry<String, Value> e : map.entrySet()) {
-			String var = e.getKey();
-			if (!variables.contains(var)) {
-				Value val = e.getValue();
-				a.addPair(var, val);
-				trimmedHash += var.hashCode() ^ val.hashCode();
-			}
-		}
-		a.cachedHash = trimmedHash;
-		return a;
+		return getSubset(variables, false);
 	}
 
 	/**
@@ -683,9 +735,7 @@ public class Assignment {
 	 * @return the copy
 	 */
 	public Assignment copy() {
-		Assignment c = new Assignment(this);
-		c.cachedHash = cachedHash;
-		return c;
+		return new Assignment(this);
 	}
 
 	/**
@@ -694,7 +744,10 @@ public class Assignment {
 	 * @return variables list
 	 */
 	public Set<String> getVariables() {
-		return map.keySet();
+		if (varsView == null) {
+			varsView = new VariablesView();
+		}
+		return varsView;
 	}
 
 	/**
@@ -703,7 +756,7 @@ public class Assignment {
 	 * @return the entry set
 	 */
 	public Set<Entry<String, Value>> getEntrySet() {
-		return map.entrySet();
+		return getPairs().entrySet();
 	}
 
 	/**
@@ -714,7 +767,8 @@ public class Assignment {
 	 * @return the associated value
 	 */
 	public Value getValue(String var) {
-		return map.getOrDefault(var, ValueFactory.none());
+		int index = indexOf(var);
+		return (index >= 0) ? vals[index] : ValueFactory.none();
 	}
 
 	/**
@@ -723,7 +777,10 @@ public class Assignment {
 	 * @return the collection of values
 	 */
 	public Collection<Value> getValues() {
-		return map.values();
+		if (valsView == null) {
+			valsView = new ValuesView();
+		}
+		return valsView;
 	}
 
 	/**
@@ -736,8 +793,7 @@ public class Assignment {
 	public List<Value> getValues(List<String> subsetVars) {
 		List<Value> vals = new ArrayList<Value>();
 		for (String var : subsetVars) {
-			Value v = map.getOrDefault(var, ValueFactory.none());
-			vals.add(v);
+			vals.add(getValue(var));
 		}
 		return vals;
 	}
@@ -750,20 +806,25 @@ public class Assignment {
 	 * @return true if a is contained in assignment, false otherwise
 	 */
 	public boolean contains(Assignment a) {
-		for (String key : a.getVariables()) {
-			if (map.containsKey(key)) {
-				Value val = a.getValue(key);
-				Value val2 = map.get(key);
-				if (val2 == null) {
-					if (val != null) {
-						return false;
-					}
-				}
-				else if (!val2.equals(val)) {
+		if (a.size > size) {
+			return false;
+		}
+		int i = 0;
+		for (int j = 0; j < a.size; j++) {
+			while (i < size && vars[i] < a.vars[j]) {
+				i++;
+			}
+			if (i == size || vars[i] != a.vars[j]) {
+				return false;
+			}
+			Value val = a.vals[j];
+			Value val2 = vals[i];
+			if (val2 == null) {
+				if (val != null) {
 					return false;
 				}
 			}
-			else {
+			else if (!val2.equals(val)) {
 				return false;
 			}
 		}
@@ -778,18 +839,20 @@ public class Assignment {
 	 * @return true if assignments are consistent, false otherwise
 	 */
 	public boolean consistentWith(Assignment a) {
-
-		Map<String, Value> firstMap = (a.size() < map.size()) ? a.map : map;
-		Map<String, Value> secondMap = (a.size() < map.size()) ? map : a.map;
-
-		for (String evidenceVar : firstMap.keySet()) {
-			Value v2 = secondMap.get(evidenceVar);
-			if (v2 == null) {
-				continue;
+		int i = 0, j = 0;
+		while (i < size && j < a.size) {
+			if (vars[i] < a.vars[j]) {
+				i++;
 			}
-			Value v1 = firstMap.get(evidenceVar);
-			if (!v1.equals(v2)) {
-				return false;
+			else if (vars[i] > a.vars[j]) {
+				j++;
+			}
+			else {
+				Value v1 = vals[i++];
+				Value v2 = a.vals[j++];
+				if (v1 != v2 && v1 != null && v2 != null && !v1.equals(v2)) {
+					return false;
+				}
 			}
 		}
 		return true;
@@ -806,7 +869,8 @@ public class Assignment {
 	 */
 	public boolean consistentWith(Assignment a, Set<String> subvars) {
 		for (String subvar : subvars) {
-			Value v2 = map.get(subvar);
+			int index = indexOf(subvar);
+			Value v2 = (index >= 0) ? vals[index] : null;
 			Value v1 = a.getValue(subvar);
 			if (v1 == null || v2 == null || !v1.equals(v2)) {
 				return false;
@@ -822,8 +886,8 @@ public class Assignment {
 	 * @return true if all variables have none values, false otherwise
 	 */
 	public boolean isDefault() {
-		for (String var : map.keySet()) {
-			if (!map.get(var).equals(ValueFactory.none())) {
+		for (int i = 0; i < size; i++) {
+			if (!vals[i].equals(ValueFactory.none())) {
 				return false;
 			}
 		}
@@ -831,9 +895,8 @@ public class Assignment {
 	}
 
 	public boolean containContinuousValues() {
-		for (String var : map.keySet()) {
-			if (map.get(var) instanceof DoubleVal
-					|| map.get(var) instanceof ArrayVal) {
+		for (int i = 0; i < size; i++) {
+			if (vals[i] instanceof DoubleVal || vals[i] instanceof ArrayVal) {
 				return true;
 			}
 		}
@@ -846,14 +909,18 @@ public class Assignment {
 
 	/**
 	 * Returns the hashcode associated with the assignment. The hashcode is
-	 * calculated from the hashmap corresponding to the assignment.
+	 * calculated in the same way as for a map between variable labels and values.
 	 * 
 	 * @return the corresponding hashcode
 	 */
 	@Override
 	public int hashCode() {
 		if (cachedHash == 0) {
-			cachedHash = map.hashCode();
+			int hash = 0;
+			for (int i = 0; i < size; i++) {
+				hash += getHash(vars[i], vals[i]);
+			}
+			cachedHash = hash;
 		}
 		return cachedHash;
 	}
@@ -867,8 +934,28 @@ public class Assignment {
 	 */
 	@Override
 	public boolean equals(Object o) {
-		if (o instanceof Assignment) {
-			return map.equals(((Assignment) o).map);
+		if (o == this) {
+			return true;
+		}
+		else if (o instanceof Assignment) {
+			Assignment a = (Assignment) o;
+			if (a.size != size) {
+				return false;
+			}
+			for (int i = 0; i < size; i++) {
+				if (vars[i] != a.vars[i]) {
+					return false;
+				}
+				else if (vals[i] == null) {
+					if (a.vals[i] != null) {
+						return false;
+					}
+				}
+				else if (!vals[i].equals(a.vals[i])) {
+					return false;
+				}
+			}
+			return true;
 		}
 		return false;
 	}
@@ -877,13 +964,13 @@ public class Assignment {
 
 		Element root = doc.createElement("assignment");
 
-		for (String varId : map.keySet()) {
+		for (int i = 0; i < size; i++) {
 			Element var = doc.createElement("variable");
 			Attr id = doc.createAttribute("id");
-			id.setValue(varId);
+			id.setValue(Symbols.getName(vars[i]));
 			var.setAttributeNode(id);
 			Element value = doc.createElement("value");
-			value.setTextContent(map.get(varId).toString());
+			value.setTextContent(vals[i].toString());
 			var.appendChild(value);
 			root.appendChild(var);
 		}
@@ -895,30 +982,337 @@ public class Assignment {
 	 */
 	@Override
 	public String toString() {
-		String str = "";
-		if (map.keySet().isEmpty()) {
+		if (size == 0) {
 			return "~";
 		}
-		List<String> keyList = new ArrayList<String>(map.keySet());
-		for (String key : keyList) {
-			if (map.get(key) == null) {
-				str += key + "=null";
+		StringBuilder str = new StringBuilder();
+		for (int i = 0; i < size; i++) {
+			str.append(Symbols.getName(vars[i]));
+			str.append("=" + vals[i]);
+			if (i < size - 1) {
+				str.append(" ^ ");
 			}
-			else if (map.get(key).equals(Boolean.TRUE)) {
-				str += key;
+		}
+		return str.toString();
+
+	}
+
+	// ===================================
+	// PRIVATE METHODS
+	// ===================================
+
+	/**
+	 * Returns the index of the variable in the assignment, or a negative number if
+	 * the variable is not included.
+	 * 
+	 * @param var the variable label
+	 * @return the index of the variable
+	 */
+	private int indexOf(String var) {
+		int symbol = Symbols.lookup(var);
+		return (symbol >= 0) ? indexOf(symbol) : -1;
+	}
+
+	/**
+	 * Returns the index of the variable symbol in the assignment, or a negative
+	 * number if the symbol is not included.
+	 * 
+	 * @param symbol the variable symbol
+	 * @return the index of the symbol
+	 */
+	private int indexOf(int symbol) {
+		return (size == 0) ? -1 : Arrays.binarySearch(vars, 0, size, symbol);
+	}
+
+	/**
+	 * Sets the value for the variable symbol, keeping the variables sorted.
+	 * 
+	 * @param symbol the variable symbol
+	 * @param val the value
+	 */
+	private void put(int symbol, Value val) {
+		int index = indexOf(symbol);
+		if (index >= 0) {
+			vals[index] = val;
+		}
+		else {
+			index = -index - 1;
+			if (size == vars.length) {
+				int capacity = Math.max(4, size * 2);
+				vars = Arrays.copyOf(vars, capacity);
+				vals = Arrays.copyOf(vals, capacity);
 			}
-			else if (map.get(key).equals(Boolean.FALSE)) {
-				str += "!" + key;
+			System.arraycopy(vars, index, vars, index + 1, size - index);
+			System.arraycopy(vals, index, vals, index + 1, size - index);
+			vars[index] = symbol;
+			vals[index] = val;
+			size++;
+		}
+		cachedHash = 0;
+	}
+
+	/**
+	 * Only retains the pairs satisfying the given predicate.
+	 * 
+	 * @param predicate the predicate over the variable label and its value
+	 */
+	private void retain(BiPredicate<String, Value> predicate) {
+		int k = 0;
+		for (int i = 0; i < size; i++) {
+			if (predicate.test(Symbols.getName(vars[i]), vals[i])) {
+				vars[k] = vars[i];
+				vals[k++] = vals[i];
 			}
-			else {
-				str += key + "=" + map.get(key);
+		}
+		Arrays.fill(vals, k, size, null);
+		if (k < size) {
+			size = k;
+			cachedHash = 0;
+		}
+	}
+
+	/**
+	 * Returns the subset of the assignment with the pairs whose variable is (if
+	 * included is true) or is not (if included is false) in the collection.
+	 * 
+	 * @param variables the collection of variables
+	 * @param included whether to select the variables in the collection or the
+	 *            other ones
+	 * @return the resulting assignment
+	 */
+	private Assignment getSubset(Collection<String> variables, boolean included) {
+		Assignment a = new Assignment();
+		if (size == 0) {
+			return a;
+		}
+		a.vars = new int[size];
+		a.vals = new Value[size];
+		int subsetHash = 0;
+		for (int i = 0; i < size; i++) {
+			if (variables.contains(Symbols.getName(vars[i])) == included) {
+				a.vars[a.size] = vars[i];
+				a.vals[a.size++] = vals[i];
+				subsetHash += getHash(vars[i], vals[i]);
+			}
+		}
+		a.cachedHash = subsetHash;
+		return a;
+	}
+
+	/**
+	 * Returns the hashcode of a single (variable, value) pair.
+	 * 
+	 * @param symbol the variable symbol
+	 * @param val the value
+	 * @return the hashcode for the pair
+	 */
+	private static int getHash(int symbol, Value val) {
+		int valHash = (val == null) ? 0 : val.hashCode();
+		return Symbols.getName(symbol).hashCode() ^ valHash;
+	}
+
+	/**
+	 * Global table associating each variable label with a unique integer symbol.
+	 * Symbols are allocated in increasing order and are never released.
+	 */
+	static final class Symbols {
+
+		// the symbols for each variable label
+		static final Map<String, Integer> symbols =
+				new ConcurrentHashMap<String, Integer>();
+
+		// the variable labels for each symbol
+		static volatile String[] names = new String[256];
+
+		/**
+		 * Returns the symbol for the variable label, allocating a new one if
+		 * necessary.
+		 * 
+		 * @param name the variable label
+		 * @return the corresponding symbol
+		 */
+		static int intern(String name) {
+			Integer symbol = symbols.get(name);
+			return (symbol != null) ? symbol : allocate(name);
+		}
+
+		/**
+		 * Returns the symbol for the variable label, or -1 if the label has no
+		 * symbol.
+		 * 
+		 * @param name the variable label
+		 * @return the corresponding symbol, or -1
+		 */
+		static int lookup(String name) {
+			Integer symbol = symbols.get(name);
+			return (symbol != null) ? symbol : -1;
+		}
+
+		/**
+		 * Returns the variable label for the symbol
+		 * 
+		 * @param symbol the symbol
+		 * @return the corresponding variable label
+		 */
+		static String getName(int symbol) {
+			return names[symbol];
+		}
+
+		/**
+		 * Allocates a new symbol for the variable label.
+		 * 
+		 * @param name the variable label
+		 * @return the new symbol
+		 */
+		private static synchronized int allocate(String name) {
+			Integer symbol = symbols.get(name);
+			if (symbol != null) {
+				return symbol;
 			}
-			if (!key.equals(keyList.get(map.keySet().size() - 1))) {
-				str += " ^ ";
+			int newSymbol = symbols.size();
+			String[] curNames = names;
+			if (newSymbol == curNames.length) {
+				curNames = Arrays.copyOf(curNames, newSymbol * 2);
 			}
+			curNames[newSymbol] = name;
+			names = curNames;
+			symbols.put(name, newSymbol);
+			return newSymbol;
 		}
-		return str;
+	}
 
+	/**
+	 * Read-only view on the variable labels of the assignment.
+	 */
+	final class VariablesView extends AbstractSet<String> {
+
+		@Override
+		public Iterator<String> iterator() {
+			return new Iterator<String>() {
+				int i = 0;
+
+				@Override
+				public boolean hasNext() {
+					return i < size;
+				}
+
+				@Override
+				public String next() {
+					if (i >= size) {
+						throw new NoSuchElementException();
+					}
+					return Symbols.getName(vars[i++]);
+				}
+			};
+		}
+
+		@Override
+		public boolean contains(Object o) {
+			return o instanceof String && indexOf((String) o) >= 0;
+		}
+
+		@Override
+		public int size() {
+			return size;
+		}
+	}
+
+	/**
+	 * Read-only view on the values of the assignment.
+	 */
+	final class ValuesView extends AbstractCollection<Value> {
+
+		@Override
+		public Iterator<Value> iterator() {
+			return new Iterator<Value>() {
+				int i = 0;
+
+				@Override
+				public boolean hasNext() {
+					return i < size;
+				}
+
+				@Override
+				public Value next() {
+					if (i >= size) {
+						throw new NoSuchElementException();
+					}
+					return vals[i++];
+				}
+			};
+		}
+
+		@Override
+		public int size() {
+			return size;
+		}
+	}
+
+	/**
+	 * Read-only view on the (variable, value) pairs of the assignment.
+	 */
+	final class PairsView extends AbstractMap<String, Value> {
+
+		@Override
+		public Set<Entry<String, Value>> entrySet() {
+			return new AbstractSet<Entry<String, Value>>() {
+
+				@Override
+				public Iterator<Entry<String, Value>> iterator() {
+					return new Iterator<Entry<String, Value>>() {
+						int i = 0;
+
+						@Override
+						public boolean hasNext() {
+							return i < size;
+						}
+
+						@Override
+						public Entry<String, Value> next() {
+							if (i >= size) {
+								throw new NoSuchElementException();
+							}
+							Entry<String, Value> entry =
+									new SimpleImmutableEntry<String, Value>(
+											Symbols.getName(vars[i]), vals[i]);
+							i++;
+							return entry;
+						}
+					};
+				}
+
+				@Override
+				public int size() {
+					return size;
+				}
+			};
+		}
+
+		@Override
+		public Value get(Object key) {
+			int index = (key instanceof String) ? indexOf((String) key) : -1;
+			return (index >= 0) ? vals[index] : null;
+		}
+
+		@Override
+		public boolean containsKey(Object key) {
+			return key instanceof String && indexOf((String) key) >= 0;
+		}
+
+		@Override
+		public Set<String> keySet() {
+			return getVariables();
+		}
+
+		@Override
+		public Collection<Value> values() {
+			return getValues();
+		}
+
+		@Override
+		public int size() {
+			return size;
+		}
 	}
 
 }
@@ -0,0 +1,386 @@
+// =================================================================                                                                   
+// Copyright (C) 2011-2015 Pierre Lison (plison@ifi.uio.no)
+
+// Permission is hereby granted, free of charge, to any person 
+// obtaining a copy of this software and associated documentation 
+// files (the "Software"), to deal in the Software without restriction, 
+// including without limitation the rights to use, copy, modify, merge, 
+// publish, distribute, sublicense, and/or sell copies of the Software, 
+// and to permit persons to whom the Software is furnished to do so, 
+// subject to the following conditions:
+
+// The above copyright notice and this permission notice shall be 
+// included in all copies or substantial portions of the Software.
+
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, 
+// EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+// MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. 
+// IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY 
+// CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, 
+// TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE 
+// SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+// =================================================================                                                                   
+
+package opendial.datastructs;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+import opendial.bn.values.Value;
+
+/**
+ * Index of objects keyed by assignments over a fixed set of variables. The index can
+ * be queried with any assignment: the query is projected onto the indexed variables
+ * (by a linear merge over the sorted variables of the assignment) without creating
+ * any temporary assignment.
+ * 
+ * <p>
+ * The index also maintains, for each variable, the list of entries associated with
+ * each of its values, in order to efficiently retrieve the entries that are
+ * consistent with a partial assignment.
+ *
+ * @author Pierre Lison (plison@ifi.uio.no)
+ *
+ * @param <T> the type of the indexed objects
+ */
+public final class AssignmentIndex<T> {
+
+	// the symbols for the indexed variables, in increasing order
+	final int[] symbols;
+
+	// the hashcodes of the indexed variables
+	final int[] varHashes;
+
+	// the entries of the index, organised in buckets
+	Entry<T>[] buckets;
+
+	// the entries of the index, in insertion order
+	final List<Entry<T>> entries;
+
+	// for each variable, the entries associated with each value
+	final List<Map<Value, List<Entry<T>>>> postings;
+
+	// for each variable, the entries that do not specify any value
+	final List<List<Entry<T>>> unspecified;
+
+	/**
+	 * Creates a new, empty index over the given variables
+	 * 
+	 * @param variables the indexed variables
+	 */
+	public AssignmentIndex(Collection<String> variables) {
+		TreeSet<Integer> sorted = new TreeSet<Integer>();
+		for (String var : variables) {
+			sorted.add(Assignment.Symbols.intern(var));
+		}
+		symbols = sorted.stream().mapToInt(i -> i).toArray();
+		varHashes = new int[symbols.length];
+		postings = new ArrayList<Map<Value, List<Entry<T>>>>();
+		unspecified = new ArrayList<List<Entry<T>>>();
+		for (int j = 0; j < symbols.length; j++) {
+			varHashes[j] = Assignment.Symbols.getName(symbols[j]).hashCode();
+			postings.add(new HashMap<Value, List<Entry<T>>>());
+			unspecified.add(new ArrayList<Entry<T>>());
+		}
+		buckets = newBuckets(16);
+		entries = new ArrayList<Entry<T>>();
+	}
+
+	/**
+	 * Adds an object to the index, with the given key. The pairs of the key whose
+	 * variable is not indexed are ignored. If an entry already exists for the key,
+	 * its object is replaced.
+	 * 
+	 * @param key the key
+	 * @param object the object to index
+	 */
+	public void put(Assignment key, T object) {
+		Value[] slots = new Value[symbols.length];
+		int i = 0;
+		int hash = 0;
+		for (int j = 0; j < symbols.length; j++) {
+			while (i < key.size && key.vars[i] < symbols[j]) {
+				i++;
+			}
+			if (i < key.size && key.vars[i] == symbols[j] && key.vals[i] != null) {
+				slots[j] = key.vals[i];
+				hash += varHashes[j] ^ slots[j].hashCode();
+			}
+		}
+		for (Entry<T> e = buckets[hash & (buckets.length - 1)]; e != null; e =
+				e.next) {
+			if (e.hash == hash && Arrays.equals(e.slots, slots)) {
+				e.object = object;
+				return;
+			}
+		}
+		if (entries.size() >= buckets.length * 3 / 4) {
+			resize();
+		}
+		Entry<T> entry = new Entry<T>(key, slots, hash, object);
+		int bucket = hash & (buckets.length - 1);
+		entry.next = buckets[bucket];
+		buckets[bucket] = entry;
+		entries.add(entry);
+		for (int j = 0; j < symbols.length; j++) {
+			if (slots[j] != null) {
+				postings.get(j).computeIfAbsent(slots[j],
+						v -> new ArrayList<Entry<T>>()).add(entry);
+			}
+			else {
+				unspecified.get(j).add(entry);
+			}
+		}
+	}
+
+	/**
+	 * Returns the object whose key is equal to the projection of the query onto the
+	 * indexed variables, or null if no such object exists.
+	 * 
+	 * @param query the query assignment
+	 * @return the corresponding object, or null
+	 */
+	public T get(Assignment query) {
+		Entry<T> entry = find(query, false);
+		return (entry != null) ? entry.object : null;
+	}
+
+	/**
+	 * Returns the object whose key is equal to the query, or null if no such object
+	 * exists (including if the query contains variables that are not indexed).
+	 * 
+	 * @param query the query assignment
+	 * @return the corresponding object, or null
+	 */
+	public T getExact(Assignment query) {
+		Entry<T> entry = find(query, true);
+		return (entry != null) ? entry.object : null;
+	}
+
+	/**
+	 * Returns the keys of the entries that are consistent with the (partial)
+	 * assignment given as argument, i.e. whose values do not contradict those of the
+	 * assignment.
+	 * 
+	 * @param partial the partial assignment
+	 * @return the keys of the consistent entries
+	 */
+	public List<Assignment> getConsistentKeys(Assignment partial) {
+
+		// selecting the most selective variable of the partial assignment
+		int bestSlot = -1;
+		int bestSize = entries.size();
+		Value[] query = project(partial);
+		for (int j = 0; j < symbols.length; j++) {
+			if (query[j] != null) {
+				List<Entry<T>> posting = postings.get(j).get(query[j]);
+				int size = ((posting != null) ? posting.size() : 0)
+						+ unspecified.get(j).size();
+				if (size <= bestSize) {
+					bestSlot = j;
+					bestSize = size;
+				}
+			}
+		}
+
+		List<Assignment> keys = new ArrayList<Assignment>();
+		if (bestSlot < 0) {
+			entries.forEach(e -> keys.add(e.key));
+			return keys;
+		}
+		List<Entry<T>> posting = postings.get(bestSlot).get(query[bestSlot]);
+		if (posting != null) {
+			posting.stream().filter(e -> e.isConsistentWith(query))
+					.forEach(e -> keys.add(e.key));
+		}
+		unspecified.get(bestSlot).stream().filter(e -> e.isConsistentWith(query))
+				.forEach(e -> keys.add(e.key));
+		return keys;
+	}
+
+	/**
+	 * Returns the number of entries in the index
+	 * 
+	 * @return the number of entries
+	 */
+	public int size() {
+		return entries.size();
+	}
+
+	/**
+	 * Returns a string representation of the index
+	 */
+	@Override
+	public String toString() {
+		return "index over " + entries.size() + " entries";
+	}
+
+	// ===================================
+	// PRIVATE METHODS
+	// ===================================
+
+	/**
+	 * Finds the entry matching the projection of the query. If exact is true, the
+	 * query may not contain any variable that is not indexed.
+	 * 
+	 * @param query the query
+	 * @param exact whether the query must only contain indexed variables
+	 * @return the matching entry, or null
+	 */
+	private Entry<T> find(Assignment query, boolean exact) {
+		int i = 0;
+		int hash = 0;
+		int matched = 0;
+		for (int j = 0; j < symbols.length; j++) {
+			while (i < query.size && query.vars[i] < symbols[j]) {
+				i++;
+			}
+			if (i < query.size && query.vars[i] == symbols[j]) {
+				matched++;
+				if (query.vals[i] != null) {
+					hash += varHashes[j] ^ query.vals[i].hashCode();
+				}
+			}
+		}
+		if (exact && matched < query.size) {
+			return null;
+		}
+		for (Entry<T> e = buckets[hash & (buckets.length - 1)]; e != null; e =
+				e.next) {
+			if (e.hash == hash && e.matches(query, symbols)) {
+				return e;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Projects the assignment onto the indexed variables
+	 * 
+	 * @param a the assignment
+	 * @return the values for each indexed variable (null if unspecified)
+	 */
+	private Value[] project(Assignment a) {
+		Value[] slots = new Value[symbols.length];
+		int i = 0;
+		for (int j = 0; j < symbols.length; j++) {
+			while (i < a.size && a.vars[i] < symbols[j]) {
+				i++;
+			}
+			if (i < a.size && a.vars[i] == symbols[j]) {
+				slots[j] = a.vals[i];
+			}
+		}
+		return slots;
+	}
+
+	/**
+	 * Doubles the number of buckets in the index
+	 */
+	private void resize() {
+		buckets = newBuckets(buckets.length * 2);
+		for (Entry<T> e : entries) {
+			int bucket = e.hash & (buckets.length - 1);
+			e.next = buckets[bucket];
+			buckets[bucket] = e;
+		}
+	}
+
+	/**
+	 * Creates a new array of (empty) buckets
+	 * 
+	 * @param size the number of buckets
+	 * @return the array of buckets
+	 */
+	@SuppressWarnings("unchecked")
+	private static <E> Entry<E>[] newBuckets(int size) {
+		return (Entry<E>[]) new Entry<?>[size];
+	}
+
+	/**
+	 * Entry in the index.
+	 */
+	static final class Entry<E> {
+
+		// the key of the entry
+		final Assignment key;
+
+		// the values of the key for each indexed variable (null if unspecified)
+		final Value[] slots;
+
+		// the hashcode of the projected key
+		final int hash;
+
+		// the indexed object
+		E object;
+
+		// the next entry in the bucket
+		Entry<E> next;
+
+		/**
+		 * Creates a new entry
+		 * 
+		 * @param key the key
+		 * @param slots the projected values of the key
+		 * @param hash the hashcode of the projected key
+		 * @param object the indexed object
+		 */
+		Entry(Assignment key, Value[] slots, int hash, E object) {
+			this.key = key;
+			this.slots = slots;
+			this.hash = hash;
+			this.object = object;
+		}
+
+		/**
+		 * Returns true if the projection of the query is equal to the key of the
+		 * entry, and false otherwise
+		 * 
+		 * @param query the query
+		 * @param symbols the (sorted) symbols of the indexed variables
+		 * @return true if the query matches, false otherwise
+		 */
+		boolean matches(Assignment query, int[] symbols) {
+			int i = 0;
+			for (int j = 0; j < symbols.length; j++) {
+				while (i < query.size && query.vars[i] < symbols[j]) {
+					i++;
+				}
+				Value v = (i < query.size && query.vars[i] == symbols[j])
+						? query.vals[i] : null;
+				if (v == null) {
+					if (slots[j] != null) {
+						return false;
+					}
+				}
+				else if (slots[j] == null
+						|| (slots[j] != v && !slots[j].equals(v))) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		/**
+		 * Returns true if the entry is consistent with the projected values, and
+		 * false otherwise
+		 * 
+		 * @param values the projected values
+		 * @return true if the entry is consistent, false otherwise
+		 */
+		boolean isConsistentWith(Value[] values) {
+			for (int j = 0; j < slots.length; j++) {
+				if (values[j] != null && slots[j] != null
+						&& !values[j].equals(slots[j])) {
+					return false;
+				}
+			}
+			return true;
+		}
+	}
+}
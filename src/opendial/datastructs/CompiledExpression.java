@@ -0,0 +1,462 @@
+// =================================================================                                                                   
+// Copyright (C) 2011-2015 Pierre Lison (plison@ifi.uio.no)
+
+// Permission is hereby granted, free of charge, to any person 
+// obtaining a copy of this software and associated documentation 
+// files (the "Software"), to deal in the Software without restriction, 
+// including without limitation the rights to use, copy, modify, merge, 
+// publish, distribute, sublicense, and/or sell copies of the Software, 
+// and to permit persons to whom the Software is furnished to do so, 
+// subject to the following conditions:
+
+// The above copyright notice and this permission notice shall be 
+// included in all copies or substantial portions of the Software.
+
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, 
+// EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+// MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. 
+// IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY 
+// CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, 
+// TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE 
+// SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+// =================================================================                                                                   
+
+package opendial.datastructs;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.logging.Logger;
+
+import opendial.bn.values.ArrayVal;
+import opendial.bn.values.DoubleVal;
+import opendial.bn.values.Value;
+import net.objecthunter.exp4j.function.Function;
+import net.objecthunter.exp4j.operator.Operator;
+import net.objecthunter.exp4j.tokenizer.FunctionToken;
+import net.objecthunter.exp4j.tokenizer.NumberToken;
+import net.objecthunter.exp4j.tokenizer.OperatorToken;
+import net.objecthunter.exp4j.tokenizer.Token;
+import net.objecthunter.exp4j.tokenizer.VariableToken;
+
+/**
+ * Compiled form of a mathematical expression, represented as a postfix program in
+ * which each unknown variable is resolved to a fixed slot. The program can be
+ * evaluated against a primitive array of slot values without any memory
+ * allocation. The evaluation is thread-safe: each thread works on its own stack.
+ * 
+ * <p>
+ * The program is derived from the tokens produced by exp4j (in reverse Polish
+ * notation), and reproduces the behaviour of exp4j for the evaluation of these
+ * tokens. Built-in operators and functions are executed directly, while other
+ * operators and functions fall back on their exp4j implementation.
+ * 
+ * @author Pierre Lison (plison@ifi.uio.no)
+ *
+ */
+public final class CompiledExpression {
+
+	// logger
+	final static Logger log = Logger.getLogger("OpenDial");
+
+	// instruction codes
+	static final int CONSTANT = 0;
+	static final int SLOT = 1;
+	static final int ADD = 2;
+	static final int SUBTRACT = 3;
+	static final int MULTIPLY = 4;
+	static final int DIVIDE = 5;
+	static final int POWER = 6;
+	static final int MODULO = 7;
+	static final int NEGATE = 8;
+	static final int IDENTITY = 9;
+	static final int UNARY_FUNCTION = 10;
+	static final int BINARY_FUNCTION = 11;
+	static final int GENERIC_OPERATOR = 12;
+	static final int GENERIC_FUNCTION = 13;
+
+	// built-in unary functions of exp4j
+	static final String[] UNARY_FUNCTIONS = { "sin", "cos", "tan", "log", "log2",
+			"log10", "log1p", "abs", "acos", "asin", "atan", "cbrt", "floor", "sinh",
+			"sqrt", "tanh", "cosh", "ceil", "exp", "expm1" };
+
+	// the sequence of instruction codes
+	final int[] codes;
+
+	// the constant (for CONSTANT) and the slot index (for SLOT) or unary
+	// function index (for UNARY_FUNCTION)
+	final double[] constants;
+	final int[] slots;
+
+	// the (exp4j) operators or functions employed in the program
+	final Operator[] operators;
+	final Function[] functions;
+
+	// the labels for each slot
+	final String[] slotLabels;
+
+	// for each slot label, the possible (array variable, index) decompositions
+	final String[][] arrayVars;
+	final int[][] arrayIndices;
+
+	// maximum depth of the stack during the evaluation (-1 if invalid program)
+	final int maxDepth;
+
+	// stack and slot values used by each thread during the evaluation
+	final ThreadLocal<double[]> stacks;
+	final ThreadLocal<double[]> slotValues;
+
+	/**
+	 * Compiles the sequence of tokens (in reverse Polish notation) into a postfix
+	 * program.
+	 * 
+	 * @param tokens the exp4j tokens
+	 */
+	public CompiledExpression(Token[] tokens) {
+		codes = new int[tokens.length];
+		constants = new double[tokens.length];
+		slots = new int[tokens.length];
+		operators = new Operator[tokens.length];
+		functions = new Function[tokens.length];
+		List<String> labels = new ArrayList<String>();
+
+		int depth = 0;
+		int max = 0;
+		for (int i = 0; i < tokens.length; i++) {
+			Token t = tokens[i];
+			if (t instanceof NumberToken) {
+				codes[i] = CONSTANT;
+				constants[i] = ((NumberToken) t).getValue();
+				depth++;
+			}
+			else if (t instanceof VariableToken) {
+				String name = ((VariableToken) t).getName();
+				if (!labels.contains(name)) {
+					labels.add(name);
+				}
+				codes[i] = SLOT;
+				slots[i] = labels.indexOf(name);
+				depth++;
+			}
+			else if (t instanceof OperatorToken) {
+				Operator op = ((OperatorToken) t).getOperator();
+				operators[i] = op;
+				codes[i] = getCode(op);
+				depth = (depth >= op.getNumOperands()) ? depth
+						- op.getNumOperands() + 1 : Integer.MIN_VALUE;
+			}
+			else if (t instanceof FunctionToken) {
+				Function f = ((FunctionToken) t).getFunction();
+				functions[i] = f;
+				codes[i] = getCode(f);
+				slots[i] = Arrays.asList(UNARY_FUNCTIONS).indexOf(f.getName());
+				depth = (depth >= f.getNumArguments()) ? depth
+						- f.getNumArguments() + 1 : Integer.MIN_VALUE;
+			}
+			else {
+				depth = Integer.MIN_VALUE;
+			}
+			max = Math.max(max, depth);
+		}
+		maxDepth = (depth == 1) ? max : -1;
+
+		slotLabels = labels.toArray(new String[labels.size()]);
+		arrayVars = new String[slotLabels.length][];
+		arrayIndices = new int[slotLabels.length][];
+		for (int i = 0; i < slotLabels.length; i++) {
+			decomposeLabel(i);
+		}
+
+		final int stackSize = Math.max(maxDepth, 1);
+		stacks = ThreadLocal.withInitial(() -> new double[stackSize]);
+		slotValues = ThreadLocal.withInitial(() -> new double[slotLabels.length]);
+	}
+
+	/**
+	 * Returns the labels of the slots in the program. The position of each label
+	 * corresponds to the index of the slot in the array of values to provide for
+	 * the evaluation.
+	 * 
+	 * @return the slot labels
+	 */
+	public String[] getSlotLabels() {
+		return slotLabels;
+	}
+
+	/**
+	 * Returns the index of the slot for the given label, or -1 if the label is not
+	 * used in the program.
+	 * 
+	 * @param label the slot label
+	 * @return the slot index
+	 */
+	public int getSlotIndex(String label) {
+		for (int i = 0; i < slotLabels.length; i++) {
+			if (slotLabels[i].equals(label)) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Evaluates the program given the values for each slot.
+	 * 
+	 * @param values the slot values (ordered as in getSlotLabels())
+	 * @return the result of the evaluation
+	 */
+	public double evaluate(double[] values) {
+		if (maxDepth < 0) {
+			throw new IllegalArgumentException("Invalid number of items on the "
+					+ "output queue. Might be caused by an invalid number of "
+					+ "arguments for a function.");
+		}
+		if (values.length < slotLabels.length) {
+			throw new IllegalArgumentException("No value has been set for the "
+					+ "setVariable '" + slotLabels[values.length] + "'.");
+		}
+		double[] stack = stacks.get();
+		int top = -1;
+		for (int i = 0; i < codes.length; i++) {
+			switch (codes[i]) {
+			case CONSTANT:
+				stack[++top] = constants[i];
+				break;
+			case SLOT:
+				stack[++top] = values[slots[i]];
+				break;
+			case ADD:
+				stack[top - 1] = stack[top - 1] + stack[top];
+				top--;
+				break;
+			case SUBTRACT:
+				stack[top - 1] = stack[top - 1] - stack[top];
+				top--;
+				break;
+			case MULTIPLY:
+				stack[top - 1] = stack[top - 1] * stack[top];
+				top--;
+				break;
+			case DIVIDE:
+				if (stack[top] == 0d) {
+					throw new ArithmeticException("Division by zero!");
+				}
+				stack[top - 1] = stack[top - 1] / stack[top];
+				top--;
+				break;
+			case POWER:
+				stack[top - 1] = Math.pow(stack[top - 1], stack[top]);
+				top--;
+				break;
+			case MODULO:
+				if (stack[top] == 0d) {
+					throw new ArithmeticException("Division by zero!");
+				}
+				stack[top - 1] = stack[top - 1] % stack[top];
+				top--;
+				break;
+			case NEGATE:
+				stack[top] = -stack[top];
+				break;
+			case IDENTITY:
+				break;
+			case UNARY_FUNCTION:
+				stack[top] = applyFunction(slots[i], stack[top]);
+				break;
+			case BINARY_FUNCTION:
+				stack[top - 1] = Math.pow(stack[top - 1], stack[top]);
+				top--;
+				break;
+			case GENERIC_OPERATOR:
+				Operator op = operators[i];
+				if (op.getNumOperands() == 2) {
+					stack[top - 1] = op.apply(stack[top - 1], stack[top]);
+					top--;
+				}
+				else if (op.getNumOperands() == 1) {
+					stack[top] = op.apply(stack[top]);
+				}
+				break;
+			case GENERIC_FUNCTION:
+				Function f = functions[i];
+				double[] args = new double[f.getNumArguments()];
+				top -= args.length;
+				System.arraycopy(stack, top + 1, args, 0, args.length);
+				stack[++top] = f.apply(args);
+				break;
+			}
+		}
+		return stack[top];
+	}
+
+	/**
+	 * Evaluates the program given the assignment of values. Double values are
+	 * assigned to the slot of the same label, while array values are expanded into
+	 * one slot for each dimension (e.g. theta0, theta1, etc.).
+	 * 
+	 * @param input the assignment
+	 * @return the result of the evaluation
+	 */
+	public double evaluate(Assignment input) {
+		double[] values = slotValues.get();
+		for (int i = 0; i < slotLabels.length; i++) {
+			values[i] = getSlotValue(i, input);
+		}
+		return evaluate(values);
+	}
+
+	/**
+	 * Returns the value for the slot given the assignment.
+	 * 
+	 * @param slot the slot index
+	 * @param input the assignment
+	 * @return the double value for the slot
+	 */
+	private double getSlotValue(int slot, Assignment input) {
+		Value v = input.getValue(slotLabels[slot]);
+		if (v instanceof DoubleVal) {
+			return ((DoubleVal) v).getDouble();
+		}
+		for (int j = 0; j < arrayVars[slot].length; j++) {
+			Value v2 = input.getValue(arrayVars[slot][j]);
+			if (v2 instanceof ArrayVal
+					&& ((ArrayVal) v2).getArray().length > arrayIndices[slot][j]) {
+				return ((ArrayVal) v2).getArray()[arrayIndices[slot][j]];
+			}
+		}
+		throw new IllegalArgumentException("No value has been set for the "
+				+ "setVariable '" + slotLabels[slot] + "'.");
+	}
+
+	/**
+	 * Determines the possible decompositions of the slot label into an array
+	 * variable followed by an index (for instance, theta12 can refer to theta1[2]
+	 * or theta[12]).
+	 * 
+	 * @param slot the slot index
+	 */
+	private void decomposeLabel(int slot) {
+		String label = slotLabels[slot];
+		List<String> vars = new ArrayList<String>();
+		List<Integer> indices = new ArrayList<Integer>();
+		for (int k = label.length() - 1; k > 0
+				&& Character.isDigit(label.charAt(k)); k--) {
+			String suffix = label.substring(k);
+			if ((suffix.length() == 1 || suffix.charAt(0) != '0')
+					&& suffix.length() < 10) {
+				vars.add(label.substring(0, k));
+				indices.add(Integer.parseInt(suffix));
+			}
+		}
+		arrayVars[slot] = vars.toArray(new String[vars.size()]);
+		arrayIndices[slot] = indices.stream().mapToInt(Integer::intValue).toArray();
+	}
+
+	/**
+	 * Returns the instruction code for the exp4j operator
+	 * 
+	 * @param op the operator
+	 * @return the instruction code
+	 */
+	private static int getCode(Operator op) {
+		if (!op.getClass().getName().startsWith("net.objecthunter.exp4j")) {
+			return GENERIC_OPERATOR;
+		}
+		switch (op.getSymbol() + op.getNumOperands()) {
+		case "+2":
+			return ADD;
+		case "-2":
+			return SUBTRACT;
+		case "*2":
+			return MULTIPLY;
+		case "/2":
+			return DIVIDE;
+		case "^2":
+			return POWER;
+		case "%2":
+			return MODULO;
+		case "-1":
+			return NEGATE;
+		case "+1":
+			return IDENTITY;
+		default:
+			return GENERIC_OPERATOR;
+		}
+	}
+
+	/**
+	 * Returns the instruction code for the exp4j function
+	 * 
+	 * @param f the function
+	 * @return the instruction code
+	 */
+	private static int getCode(Function f) {
+		if (!f.getClass().getName().startsWith("net.objecthunter.exp4j")) {
+			return GENERIC_FUNCTION;
+		}
+		else if (f.getName().equals("pow") && f.getNumArguments() == 2) {
+			return BINARY_FUNCTION;
+		}
+		else if (f.getNumArguments() == 1
+				&& Arrays.asList(UNARY_FUNCTIONS).contains(f.getName())) {
+			return UNARY_FUNCTION;
+		}
+		return GENERIC_FUNCTION;
+	}
+
+	/**
+	 * Applies the built-in unary function of the given index (in UNARY_FUNCTIONS)
+	 * to the argument.
+	 * 
+	 * @param function the function index
+	 * @param arg the argument
+	 * @return the result
+	 */
+	private static double applyFunction(int function, double arg) {
+		switch (function) {
+		case 0:
+			return Math.sin(arg);
+		case 1:
+			return Math.cos(arg);
+		case 2:
+			return Math.tan(arg);
+		case 3:
+			return Math.log(arg);
+		case 4:
+			return Math.log(arg) / Math.log(2d);
+		case 5:
+			return Math.log10(arg);
+		case 6:
+			return Math.log1p(arg);
+		case 7:
+			return Math.abs(arg);
+		case 8:
+			return Math.acos(arg);
+		case 9:
+			return Math.asin(arg);
+		case 10:
+			return Math.atan(arg);
+		case 11:
+			return Math.cbrt(arg);
+		case 12:
+			return Math.floor(arg);
+		case 13:
+			return Math.sinh(arg);
+		case 14:
+			return Math.sqrt(arg);
+		case 15:
+			return Math.tanh(arg);
+		case 16:
+			return Math.cosh(arg);
+		case 17:
+			return Math.ceil(arg);
+		case 18:
+			return Math.exp(arg);
+		case 19:
+			return Math.expm1(arg);
+		default:
+			return Double.NaN;
+		}
+	}
+
+}
@@ -74,6 +74,9 @@ public final class MathExpression {
 	/** The unknown variable labels */
 	final Set<String> variables;
 
+	/** The compiled program for the expression */
+	final CompiledExpression compiled;
+
 	/**
 	 * Creates a new mathematical expression from the string
 	 * 
@@ -86,6 +89,7 @@ public final class MathExpression {
 		tokens =
 				ShuntingYard.convertToRPN(local, new HashMap<String, Function>(),
 						new HashMap<String, Operator>(), getVariableLabels(local));
+		compiled = new CompiledExpression(tokens);
 	}
 
 	/**
@@ -97,6 +101,7 @@ public final class MathExpression {
 		this.expression = existing.expression;
 		this.variables = existing.variables;
 		this.tokens = existing.tokens;
+		this.compiled = existing.compiled;
 	}
 
 	/**
@@ -108,6 +113,16 @@ public final class MathExpression {
 		return variables;
 	}
 
+	/**
+	 * Returns the compiled program for the expression, which can be evaluated
+	 * without memory allocation against an array of slot values.
+	 * 
+	 * @return the compiled expression
+	 */
+	public CompiledExpression getCompiled() {
+		return compiled;
+	}
+
 	/**
 	 * Evaluates the result of the expression
 	 * 
@@ -117,8 +132,7 @@ public final class MathExpression {
 		if (!variables.isEmpty()) {
 			throw new RuntimeException("variables " + variables + " are not set");
 		}
-		Expression exp = new Expression(tokens);
-		return exp.evaluate();
+		return compiled.evaluate(new double[0]);
 	}
 
 	/**
@@ -129,6 +143,18 @@ public final class MathExpression {
 	 * @return the result
 	 */
 	public double evaluate(Assignment input) {
+		return compiled.evaluate(input);
+	}
+
+	/**
+	 * Evaluates the result of the expression with the exp4j interpreter, given an
+	 * assignment of values to the unknown variables. This evaluation is slower than
+	 * evaluate(input) but is used as reference for the compiled program.
+	 * 
+	 * @param input the assignment
+	 * @return the result
+	 */
+	public double evaluateWithExp4j(Assignment input) {
 		Expression exp = new Expression(tokens);
 		exp.setVariables(getDoubles(input));
 		return exp.evaluate();
@@ -0,0 +1,160 @@
+// =================================================================                                                                   
+// Copyright (C) 2011-2015 Pierre Lison (plison@ifi.uio.no)
+
+// Permission is hereby granted, free of charge, to any person 
+// obtaining a copy of this software and associated documentation 
+// files (the "Software"), to deal in the Software without restriction, 
+// including without limitation the rights to use, copy, modify, merge, 
+// publish, distribute, sublicense, and/or sell copies of the Software, 
+// and to permit persons to whom the Software is furnished to do so, 
+// subject to the following conditions:
+
+// The above copyright notice and this permission notice shall be 
+// included in all copies or substantial portions of the Software.
+
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, 
+// EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+// MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. 
+// IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY 
+// CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, 
+// TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE 
+// SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+// =================================================================                                                                   
+
+package opendial.datastructs;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Identifier for a state variable, made of a base label and a marker indicating
+ * whether the variable is pending, that is, whether it corresponds to a new value
+ * for the variable that has not yet been committed to the dialogue state. Pending
+ * variables are denoted in node identifiers by a prime ' appended to the base
+ * label.
+ * 
+ * <p>
+ * Identifiers are interned, which means that the parsing of the label is only
+ * performed once, and that two identifiers with the same label are the same
+ * object.
+ *
+ * @author Pierre Lison (plison@ifi.uio.no)
+ *
+ */
+public final class VariableId {
+
+	// the interned identifiers, indexed by label
+	static final Map<String, VariableId> ids =
+			new ConcurrentHashMap<String, VariableId>();
+
+	// the full label (with the prime for pending variables)
+	final String label;
+
+	// the base label (without prime)
+	final String base;
+
+	// whether the variable is pending
+	final boolean pending;
+
+	// the identifier for the pending version of the variable (lazily created)
+	VariableId pendingId;
+
+	/**
+	 * Creates a new identifier
+	 * 
+	 * @param label the full label
+	 */
+	private VariableId(String label) {
+		this.label = label;
+		this.pending = label.length() > 0 && label.charAt(label.length() - 1) == '\'';
+		this.base = (pending) ? label.substring(0, label.length() - 1) : label;
+	}
+
+	/**
+	 * Returns the identifier for the given label
+	 * 
+	 * @param label the variable label (possibly ending with a prime)
+	 * @return the corresponding identifier
+	 */
+	public static VariableId of(String label) {
+		VariableId id = ids.get(label);
+		if (id == null) {
+			id = ids.computeIfAbsent(label, l -> new VariableId(l));
+		}
+		return id;
+	}
+
+	/**
+	 * Returns the base label of the variable (without prime)
+	 * 
+	 * @return the base label
+	 */
+	public String getBase() {
+		return base;
+	}
+
+	/**
+	 * Returns true if the identifier denotes a pending variable, and false
+	 * otherwise
+	 * 
+	 * @return true if the variable is pending, else false
+	 */
+	public boolean isPending() {
+		return pending;
+	}
+
+	/**
+	 * Returns the identifier for the pending version of the variable (that is,
+	 * with a prime appended to the label).
+	 * 
+	 * @return the pending identifier
+	 */
+	public VariableId getPending() {
+		if (pendingId == null) {
+			pendingId = of(label + "'");
+		}
+		return pendingId;
+	}
+
+	/**
+	 * Returns the identifier for the committed version of the variable (that is,
+	 * the base label).
+	 * 
+	 * @return the committed identifier
+	 */
+	public VariableId getCommitted() {
+		return (pending) ? of(base) : this;
+	}
+
+	/**
+	 * Returns the hashcode for the identifier
+	 * 
+	 * @return the hashcode
+	 */
+	@Override
+	public int hashCode() {
+		return label.hashCode();
+	}
+
+	/**
+	 * Returns true if o is an identifier with the same label, and false otherwise
+	 * 
+	 * @param o the object to compare
+	 * @return true if the identifiers are equal, false otherwise
+	 */
+	@Override
+	public boolean equals(Object o) {
+		return o == this
+				|| (o instanceof VariableId && ((VariableId) o).label.equals(label));
+	}
+
+	/**
+	 * Returns the full label of the variable
+	 * 
+	 * @return the label
+	 */
+	@Override
+	public String toString() {
+		return label;
+	}
+}
@@ -25,12 +25,23 @@ package opendial.domains.rules;
 
 import java.util.logging.*;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
+import opendial.bn.values.BooleanVal;
+import opendial.bn.values.NoneVal;
+import opendial.bn.values.StringVal;
+import opendial.bn.values.Value;
+
 import opendial.datastructs.Assignment;
 import opendial.datastructs.Template;
+import opendial.domains.rules.conditions.BasicCondition;
+import opendial.domains.rules.conditions.BasicCondition.Relation;
+import opendial.domains.rules.conditions.ComplexCondition;
+import opendial.domains.rules.conditions.ComplexCondition.BinaryOperator;
 import opendial.domains.rules.conditions.Condition;
 import opendial.domains.rules.conditions.VoidCondition;
 import opendial.domains.rules.effects.Effect;
@@ -60,6 +71,9 @@ public class Rule {
 
 	RuleType ruleType;
 
+	// hash-based dispatch over the cases (null if the cases are not indexed)
+	CaseIndex index;
+
 	// ===================================
 	// RULE CONSTRUCTION
 	// ===================================
@@ -107,6 +121,44 @@ public class Rule {
 			}
 		}
 		cases.add(new RuleCase(condition, output));
+		index = null;
+	}
+
+	/**
+	 * Compiles the list of cases into a hash-based dispatch, provided the rule
+	 * contains several cases whose conditions test the same variable against
+	 * distinct constant values (such as a long sequence of "if a_u=X then ...
+	 * else if a_u=Y then ..."). The selection of the matching case is then done by
+	 * looking up the value of the dispatch variable instead of checking each
+	 * condition in turn. Cases that cannot be indexed are still evaluated in order,
+	 * such that the first-match semantics of the rule is preserved.
+	 * 
+	 * <p>
+	 * If no variable is tested in at least two cases, the rule is left unchanged.
+	 * Adding a new case to the rule removes the index.
+	 */
+	public void indexCases() {
+		Map<String, Integer> counts = new HashMap<String, Integer>();
+		for (RuleCase c : cases) {
+			for (BasicCondition cond : getIndexableConditions(c.condition)) {
+				counts.merge(cond.getVariable().toString(), 1, Integer::sum);
+			}
+		}
+		String bestVar = counts.keySet().stream()
+				.max((v1, v2) -> Integer.compare(counts.get(v1), counts.get(v2)))
+				.orElse(null);
+		index = (bestVar != null && counts.get(bestVar) > 1) ? new CaseIndex(bestVar)
+				: null;
+	}
+
+	/**
+	 * Returns true if the rule cases are compiled into a hash-based dispatch, and
+	 * false otherwise.
+	 * 
+	 * @return true if the cases are indexed, false otherwise
+	 */
+	public boolean isIndexed() {
+		return index != null;
 	}
 
 	// ===================================
@@ -152,11 +204,12 @@ public class Rule {
 
 			Assignment full = !(g.isEmpty()) ? new Assignment(input, g) : input;
 
-			RuleOutput match =
-					cases.stream().filter(c -> c.condition.isSatisfiedBy(full))
-							.map(c -> c.output).findFirst()
-							.orElse(new RuleOutput(ruleType));
+			RuleCase matchCase = (index != null) ? index.select(full)
+					: cases.stream().filter(c -> c.condition.isSatisfiedBy(full))
+							.findFirst().orElse(null);
 
+			RuleOutput match = (matchCase != null) ? matchCase.output
+					: new RuleOutput(ruleType);
 			match = match.ground(full);
 			output.addOutput(match);
 
@@ -217,6 +270,37 @@ public class Rule {
 		return groundings;
 	}
 
+	/**
+	 * Returns the list of basic conditions that can be used as keys for a
+	 * hash-based dispatch, i.e. equality tests between a fully specified variable
+	 * and a fully specified (non-numeric) value. The method returns either the
+	 * condition itself or the conjuncts of an AND condition.
+	 * 
+	 * @param condition the condition to analyse
+	 * @return the list of indexable conditions
+	 */
+	private static List<BasicCondition> getIndexableConditions(Condition condition) {
+		List<BasicCondition> indexable = new ArrayList<BasicCondition>();
+		if (condition instanceof BasicCondition) {
+			BasicCondition basic = (BasicCondition) condition;
+			Value v = basic.getGroundValue();
+			if (basic.getRelation() == Relation.EQUAL
+					&& !basic.getVariable().isUnderspecified()
+					&& (v instanceof StringVal || v instanceof BooleanVal
+							|| v instanceof NoneVal)) {
+				indexable.add(basic);
+			}
+		}
+		else if (condition instanceof ComplexCondition
+				&& ((ComplexCondition) condition)
+						.getOperator() == BinaryOperator.AND) {
+			for (Condition sub : ((ComplexCondition) condition).getConditions()) {
+				indexable.addAll(getIndexableConditions(sub));
+			}
+		}
+		return indexable;
+	}
+
 	// ===================================
 	// UTILITY METHODS
 	// ===================================
@@ -361,4 +445,77 @@ public class Rule {
 
 	}
 
+	/**
+	 * Hash-based dispatch over the rule cases, indexed by the value of a given
+	 * variable. Each case requiring the variable to take a particular value is
+	 * stored in the bucket for this value, while the remaining cases are kept in a
+	 * separate list. To select the matching case, the bucket corresponding to the
+	 * actual value of the variable is merged with the list of remaining cases, in
+	 * the original order of the cases.
+	 *
+	 */
+	final class CaseIndex {
+
+		// the variable on which to dispatch
+		final String variable;
+
+		// indices of the cases requiring a particular value for the variable
+		final Map<Value, int[]> buckets;
+
+		// indices of the cases that cannot be indexed
+		final int[] others;
+
+		/**
+		 * Creates a new index for the rule cases, dispatching on the given variable
+		 * 
+		 * @param variable the variable on which to dispatch
+		 */
+		CaseIndex(String variable) {
+			this.variable = variable;
+			Map<Value, List<Integer>> tmpBuckets = new HashMap<Value, List<Integer>>();
+			List<Integer> tmpOthers = new ArrayList<Integer>();
+			for (int i = 0; i < cases.size(); i++) {
+				Value key = getIndexableConditions(cases.get(i).condition).stream()
+						.filter(c -> c.getVariable().toString().equals(variable))
+						.map(c -> c.getGroundValue()).findFirst().orElse(null);
+				if (key != null) {
+					tmpBuckets.computeIfAbsent(key, k -> new ArrayList<Integer>())
+							.add(i);
+				}
+				else {
+					tmpOthers.add(i);
+				}
+			}
+			buckets = new HashMap<Value, int[]>();
+			for (Value key : tmpBuckets.keySet()) {
+				buckets.put(key, tmpBuckets.get(key).stream()
+						.mapToInt(Integer::intValue).toArray());
+			}
+			others = tmpOthers.stream().mapToInt(Integer::intValue).toArray();
+		}
+
+		/**
+		 * Returns the first case whose condition is satisfied by the input
+		 * assignment, or null if no such case exists.
+		 * 
+		 * @param input the input assignment
+		 * @return the first matching case (or null)
+		 */
+		RuleCase select(Assignment input) {
+			int[] keyed = buckets.get(input.getValue(variable));
+			int nbKeyed = (keyed != null) ? keyed.length : 0;
+			int i = 0;
+			int j = 0;
+			while (i < nbKeyed || j < others.length) {
+				int next = (j >= others.length || (i < nbKeyed && keyed[i] < others[j]))
+						? keyed[i++] : others[j++];
+				RuleCase c = cases.get(next);
+				if (c.condition.isSatisfiedBy(input)) {
+					return c;
+				}
+			}
+			return null;
+		}
+	}
+
 }
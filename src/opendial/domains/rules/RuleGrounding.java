@@ -25,13 +25,21 @@ package opendial.domains.rules;
 
 import java.util.logging.*;
 
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.stream.Collectors;
 
 import opendial.bn.values.Value;
 import opendial.datastructs.Assignment;
+import opendial.datastructs.Template;
+import opendial.domains.rules.conditions.Condition;
 
 /**
  * Representation of a set of possible groundings for a rule
@@ -143,7 +151,12 @@ public class RuleGrounding {
 		if (assign.isEmpty()) {
 			return;
 		}
-		groundings.stream().forEach(g -> g.addAssignment(assign));
+		Set<Assignment> newGroundings = new HashSet<Assignment>();
+		for (Assignment g : groundings) {
+			g.addAssignment(assign);
+			newGroundings.add(g);
+		}
+		groundings = newGroundings;
 	}
 
 	/**
@@ -160,7 +173,11 @@ public class RuleGrounding {
 	}
 
 	/**
-	 * Extends the existing groundings with the alternative groundings
+	 * Extends the existing groundings with the alternative groundings. The
+	 * extension is a join between the two sets of groundings: each pair of
+	 * consistent assignments (i.e. with identical values on their shared
+	 * variables) is merged into a single grounding, while inconsistent pairs are
+	 * discarded.
 	 * 
 	 * @param alternatives the next groundings to extend the current ones
 	 */
@@ -171,13 +188,148 @@ public class RuleGrounding {
 		Set<Assignment> newGroundings = new HashSet<Assignment>();
 		for (Assignment o : alternatives) {
 			for (Assignment g : groundings) {
-				newGroundings.add(new Assignment(o, g));
-				newGroundings.add(new Assignment(g, o));
+				if (g.isEmpty() || o.consistentWith(g)) {
+					newGroundings.add(new Assignment(o, g));
+				}
 			}
 		}
 		groundings = newGroundings;
 	}
 
+	/**
+	 * Computes the groundings for the conjunction of conditions, given the input
+	 * assignment. The groundings of each condition are viewed as a relation over
+	 * its dependencies (its slots and the input variables that are not provided
+	 * by the input assignment), and the conditions are joined one by one. Since a
+	 * condition may only be grounded once its dependencies are bound, the order of
+	 * the conditions is preserved, with two exceptions:
+	 * <ol>
+	 * <li>conditions whose dependencies are already bound by all current groundings
+	 * are pure filters and are applied as early as possible;
+	 * <li>when several consecutive conditions are independent of the current
+	 * groundings and of one another, they are joined starting with the one with
+	 * the smallest number of groundings. The groundings of such conditions are
+	 * computed only once, and the conjunction fails as soon as one of them cannot
+	 * be satisfied.
+	 * </ol>
+	 * Each join removes duplicate groundings, and the process stops as soon as no
+	 * grounding remains.
+	 * 
+	 * @param conditions the conditions to join
+	 * @param input the input assignment
+	 * @return the groundings for the conjunction of conditions
+	 */
+	public static RuleGrounding join(Collection<Condition> conditions,
+			Assignment input) {
+
+		List<Condition> remaining = new ArrayList<Condition>(conditions);
+		Map<Condition, Set<String>> dependencies =
+				new HashMap<Condition, Set<String>>();
+		for (Condition cond : remaining) {
+			dependencies.put(cond, getDependencies(cond, input));
+		}
+
+		Set<Assignment> rows = new LinkedHashSet<Assignment>();
+		rows.add(new Assignment());
+		Set<String> allVars = new HashSet<String>();
+		Set<String> sharedVars = new HashSet<String>();
+		Map<Condition, RuleGrounding> independent =
+				new HashMap<Condition, RuleGrounding>();
+
+		while (!remaining.isEmpty()) {
+
+			// step 1: searching for a condition acting as a pure filter
+			Condition next = remaining.stream()
+					.filter(c -> dependencies.get(c) != null
+							&& sharedVars.containsAll(dependencies.get(c)))
+					.findFirst().orElse(null);
+			RuleGrounding single = null;
+
+			// step 2: selecting among the leading independent conditions
+			if (next == null) {
+				Set<String> used = new HashSet<String>(allVars);
+				for (Condition cond : remaining) {
+					Set<String> deps = dependencies.get(cond);
+					if (deps == null || !Collections.disjoint(deps, used)) {
+						break;
+					}
+					used.addAll(deps);
+					RuleGrounding g = independent.computeIfAbsent(cond,
+							c -> c.getGroundings(input));
+					if (g.isFailed()) {
+						return new RuleGrounding.Failed();
+					}
+					if (single == null
+							|| g.groundings.size() < single.groundings.size()) {
+						next = cond;
+						single = g;
+					}
+				}
+			}
+
+			// step 3: otherwise, grounding the first condition for each grounding
+			if (next == null) {
+				next = remaining.get(0);
+			}
+			remaining.remove(next);
+
+			Set<Assignment> newRows = new LinkedHashSet<Assignment>();
+			for (Assignment row : rows) {
+				RuleGrounding g = single;
+				if (g == null) {
+					Assignment input2 =
+							(row.isEmpty()) ? input : new Assignment(input, row);
+					g = next.getGroundings(input2);
+				}
+				for (Assignment alt : g.groundings) {
+					newRows.add(new Assignment(alt, row));
+				}
+			}
+			if (newRows.isEmpty()) {
+				return new RuleGrounding.Failed();
+			}
+			if (newRows.size() > 1) {
+				newRows.remove(new Assignment());
+			}
+			rows = newRows;
+
+			allVars.clear();
+			sharedVars.clear();
+			sharedVars.addAll(rows.iterator().next().getVariables());
+			for (Assignment row : rows) {
+				allVars.addAll(row.getVariables());
+				sharedVars.retainAll(row.getVariables());
+			}
+		}
+
+		RuleGrounding result = new RuleGrounding();
+		result.groundings = new HashSet<Assignment>(rows);
+		return result;
+	}
+
+	/**
+	 * Returns the dependencies of the condition, that is, its slots and input
+	 * variables that are not provided by the input assignment (and must therefore
+	 * be bound by the groundings of other conditions). If the condition contains
+	 * underspecified input variables, the dependencies cannot be determined and
+	 * the method returns null.
+	 * 
+	 * @param cond the condition
+	 * @param input the input assignment
+	 * @return the dependencies (or null if they cannot be determined)
+	 */
+	private static Set<String> getDependencies(Condition cond, Assignment input) {
+		Set<String> deps = new HashSet<String>(cond.getSlots());
+		for (Template t : cond.getInputVariables()) {
+			if (t.isUnderspecified()) {
+				return null;
+			}
+			deps.add(t.toString());
+		}
+		deps.removeAll(input.getVariables());
+		return deps;
+	}
+
 	/**
 	 * Returns the set of possible assignments
 	 * 
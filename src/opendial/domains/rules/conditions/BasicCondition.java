@@ -123,6 +123,16 @@ public final class BasicCondition implements Condition {
 		return variable;
 	}
 
+	/**
+	 * Returns the expected value for the condition if this value is fully
+	 * specified (i.e. does not contain any slot to fill), and null otherwise.
+	 * 
+	 * @return the ground value, or null if the value is underspecified
+	 */
+	public Value getGroundValue() {
+		return groundValue;
+	}
+
 	/**
 	 * Returns the input variables for the condition (the main variable itself, plus
 	 * optional slots in the value to fill)
@@ -159,23 +159,7 @@ public final class ComplexCondition implements Condition {
 		RuleGrounding groundings = new RuleGrounding();
 
 		if (operator == BinaryOperator.AND) {
-			for (Condition cond : subconditions) {
-
-				RuleGrounding newGrounding = new RuleGrounding();
-				boolean failed = true;
-				for (Assignment g : groundings.getAlternatives()) {
-					Assignment input2 =
-							(g.isEmpty()) ? input : new Assignment(input, g);
-					RuleGrounding ground = cond.getGroundings(input2);
-					ground.extend(g);
-					failed = failed && ground.isFailed();
-					newGrounding.add(ground);
-				}
-				if (failed) {
-					return new RuleGrounding.Failed();
-				}
-				groundings = newGrounding;
-			}
+			groundings = RuleGrounding.join(subconditions, input);
 		}
 		else if (operator == BinaryOperator.OR) {
 
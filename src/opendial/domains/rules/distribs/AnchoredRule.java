@@ -23,6 +23,7 @@
 
 package opendial.domains.rules.distribs;
 
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
@@ -38,6 +39,7 @@ import opendial.bn.distribs.ProbDistribution;
 import opendial.bn.distribs.UtilityFunction;
 import opendial.bn.nodes.ChanceNode;
 import opendial.bn.values.Value;
+import opendial.bn.values.ValueFactory;
 import opendial.datastructs.Assignment;
 import opendial.datastructs.ValueRange;
 import opendial.domains.rules.Rule;
@@ -46,6 +48,7 @@ import opendial.domains.rules.RuleOutput;
 import opendial.domains.rules.conditions.Condition;
 import opendial.domains.rules.effects.Effect;
 import opendial.domains.rules.parameters.Parameter;
+import opendial.domains.rules.parameters.SingleParameter;
 
 /**
  * Representation of a probabilistic rule anchored in a particular dialogue state.
@@ -235,6 +238,87 @@ public final class AnchoredRule implements ProbDistribution, UtilityFunction {
 		return parameters;
 	}
 
+	/**
+	 * Returns the dimension of the parameter associated with each effect, if the
+	 * rule is a probability rule where each output draws one effect with a
+	 * probability given by a distinct dimension of the parameter. All dimensions
+	 * must be covered, except possibly one, whose probability is either given to an
+	 * effect with a parameter such as (1-theta[0]), or left to the none value. In
+	 * other words, the rule node is then a categorical draw from the parameter (or
+	 * no draw at all, for void outputs). If the rule does not have this structure,
+	 * returns an empty map.
+	 * 
+	 * @param paramId the parameter identifier
+	 * @param nbDimensions the number of dimensions of the parameter
+	 * @return the dimension associated with each effect, or an empty map
+	 */
+	public Map<Value, Integer> getCategoricalDimensions(String paramId,
+			int nbDimensions) {
+		Map<Value, Integer> dimensions = new HashMap<Value, Integer>();
+		if (rule.getRuleType() != RuleType.PROB) {
+			return dimensions;
+		}
+		boolean hasVoidOutputs = false;
+		for (Assignment input : inputs.linearise()) {
+			RuleOutput output = getOutput(input);
+			if (output.isVoid()) {
+				hasVoidOutputs = true;
+				continue;
+			}
+			Set<Integer> uncovered = new HashSet<Integer>();
+			for (int i = 0; i < nbDimensions; i++) {
+				uncovered.add(i);
+			}
+			Value remainder = ValueFactory.none();
+			Parameter remainderParam = null;
+			for (Map.Entry<Effect, Parameter> o : output.getPairs()) {
+				Parameter param = o.getValue();
+				if (param.getVariables().size() != 1
+						|| !param.getVariables().contains(paramId)) {
+					return new HashMap<Value, Integer>();
+				}
+				else if (!(param instanceof SingleParameter)) {
+					if (remainderParam != null) {
+						return new HashMap<Value, Integer>();
+					}
+					remainder = o.getKey();
+					remainderParam = param;
+					continue;
+				}
+				int dim = ((SingleParameter) param).getDimension();
+				Integer previous = dimensions.put(o.getKey(), dim);
+				if (!uncovered.remove(dim) || (previous != null && previous != dim)) {
+					return new HashMap<Value, Integer>();
+				}
+			}
+			if (uncovered.size() > 1 || (remainderParam != null && uncovered.isEmpty())) {
+				return new HashMap<Value, Integer>();
+			}
+			for (Integer dim : uncovered) {
+				// the remainder parameter must be equal to the uncovered dimension
+				for (int i = 0; remainderParam != null && i < nbDimensions; i++) {
+					double[] unit = new double[nbDimensions];
+					unit[i] = 1.0;
+					double value = remainderParam.getValue(new Assignment(paramId,
+							unit));
+					if (Math.abs(value - ((i == dim) ? 1.0 : 0.0)) > 0.0001) {
+						return new HashMap<Value, Integer>();
+					}
+				}
+				Integer previous = dimensions.put(remainder, dim);
+				if (previous != null && !previous.equals(dim)) {
+					return new HashMap<Value, Integer>();
+				}
+			}
+		}
+
+		// the none value would be ambiguous if the rule has void outputs
+		if (hasVoidOutputs && dimensions.containsKey(ValueFactory.none())) {
+			return new HashMap<Value, Integer>();
+		}
+		return dimensions;
+	}
+
 	/**
 	 * Returns the probability for P(head|condition), where head is an assignment of
 	 * an output value for the rule node.
@@ -25,11 +25,12 @@ package opendial.domains.rules.distribs;
 
 import java.util.logging.*;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Arrays;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
 
 import opendial.bn.distribs.CategoricalTable;
@@ -42,7 +43,6 @@ import opendial.bn.values.ValueFactory;
 import opendial.datastructs.Assignment;
 import opendial.domains.rules.effects.BasicEffect;
 import opendial.domains.rules.effects.Effect;
-import opendial.utils.InferenceUtils;
 
 /**
  * Representation of an output distribution (see Pierre Lison's PhD thesis, page 70
@@ -66,6 +66,26 @@ public class OutputDistribution implements ProbDistribution {
 	// possible effects from incoming rule nodes
 	List<Set<Effect>> inputEffects;
 
+	// cache with the output table for a given combination of input effects
+	Map<EffectCombination, IndependentDistribution> cache;
+
+	// possible output values obtained by merging the value sets of each effect
+	Set<Value> mergedValues;
+
+	// distinct partial outputs (sub-effects on the output variable) reachable
+	// from the input effects, only maintained in the presence of add effects
+	Set<Set<BasicEffect>> partialOutputs;
+
+	// whether one of the input effects adds values to the output variable
+	boolean hasAddEffects;
+
+	// cached set of possible output values (null if it must be recomputed)
+	Set<Value> cachedValues;
+
+	// combination of input effects used (per thread) to look up the cache
+	static final ThreadLocal<EffectCombination> probes = ThreadLocal
+			.withInitial(() -> new EffectCombination());
+
 	/**
 	 * Creates the output distribution for the output variable label
 	 * 
@@ -75,6 +95,8 @@ public class OutputDistribution implements ProbDistribution {
 		this.baseVar = var.replace("'", "");
 		this.primes = var.replace(baseVar, "");
 		inputEffects = new ArrayList<Set<Effect>>();
+		cache = new ConcurrentHashMap<EffectCombination, IndependentDistribution>();
+		mergedValues = new HashSet<Value>();
 	}
 
 	/**
@@ -85,6 +107,19 @@ public class OutputDistribution implements ProbDistribution {
 	 */
 	public void addEffects(Set<Effect> effects) {
 		inputEffects.add(effects);
+		cache.clear();
+		cachedValues = null;
+		for (Effect e : effects) {
+			hasAddEffects = hasAddEffects || e.isAdd(baseVar);
+			Set<Value> setValues = e.getValues(baseVar);
+			mergedValues.addAll(setValues);
+			if (setValues.isEmpty()) {
+				mergedValues.add(ValueFactory.none());
+			}
+		}
+		if (partialOutputs != null) {
+			partialOutputs = extendPartialOutputs(partialOutputs, effects);
+		}
 	}
 
 	/**
@@ -98,6 +133,13 @@ public class OutputDistribution implements ProbDistribution {
 		if ((baseVar + primes).equals(oldId)) {
 			this.baseVar = newId.replace("'", "");
 			this.primes = newId.replace(baseVar, "");
+			cache.clear();
+			List<Set<Effect>> effects = new ArrayList<Set<Effect>>(inputEffects);
+			inputEffects.clear();
+			mergedValues = new HashSet<Value>();
+			partialOutputs = null;
+			hasAddEffects = false;
+			effects.forEach(e -> addEffects(e));
 		}
 	}
 
@@ -136,12 +178,38 @@ public class OutputDistribution implements ProbDistribution {
 	}
 
 	/**
-	 * Fills the cache with the resulting table for the given condition
+	 * Returns the output table for the given condition. The table (including its
+	 * sampling intervals, once created) is cached for each combination of input
+	 * effects, and should therefore not be modified by the caller.
 	 * 
-	 * @param condition the condition for which to fill the cache
+	 * @param condition the values of the parent (rule) nodes
+	 * @return the resulting output table
 	 */
 	@Override
 	public IndependentDistribution getProbDistrib(Assignment condition) {
+		EffectCombination probe = probes.get();
+		probe.clear();
+		for (Value inputVal : condition.getValues()) {
+			if (inputVal instanceof Effect && isRelevant((Effect) inputVal)) {
+				probe.add((Effect) inputVal);
+			}
+		}
+		IndependentDistribution result = cache.get(probe);
+		if (result == null) {
+			EffectCombination combination = probe.copy();
+			result = computeProbDistrib(combination);
+			cache.put(combination, result);
+		}
+		return result;
+	}
+
+	/**
+	 * Computes the output table for the given combination of input effects.
+	 * 
+	 * @param combination the effects of the parent (rule) nodes
+	 * @return the resulting output table
+	 */
+	private IndependentDistribution computeProbDistrib(EffectCombination combination) {
 
 		// creating the table
 
@@ -150,10 +218,8 @@ public class OutputDistribution implements ProbDistribution {
 
 		// combining all effects
 		List<BasicEffect> fullEffects = new ArrayList<BasicEffect>();
-		for (Value inputVal : condition.getValues()) {
-			if (inputVal instanceof Effect) {
-				fullEffects.addAll(((Effect) inputVal).getSubEffects());
-			}
+		for (int i = 0; i < combination.size; i++) {
+			fullEffects.addAll(combination.effects[i].getSubEffects());
 		}
 		Effect fullEffect = new Effect(fullEffects);
 
@@ -192,29 +258,22 @@ public class OutputDistribution implements ProbDistribution {
 
 	/**
 	 * Returns the possible outputs values given the input range in the parent nodes
-	 * (probability rule nodes)
+	 * (probability rule nodes). The values are computed incrementally as new
+	 * effects are added, and cached until the next modification. The returned set
+	 * should not be modified by the caller.
 	 * 
 	 * @return the possible values for the output
 	 */
 	@Override
 	public Set<Value> getValues() {
-		Set<Value> values = new HashSet<Value>();
-
-		for (Set<Effect> set : inputEffects) {
-			for (Effect e : set) {
-				if (e.isAdd(baseVar)) {
-					return getValues_linearise();
-				}
-				Set<Value> setValues = e.getValues(baseVar);
-				values.addAll(setValues);
-				if (setValues.isEmpty()) {
-					values.add(ValueFactory.none());
-				}
+		Set<Value> values = cachedValues;
+		if (values == null) {
+			values = (hasAddEffects) ? getValues_linearise()
+					: new HashSet<Value>(mergedValues);
+			if (values.isEmpty()) {
+				values.add(ValueFactory.none());
 			}
-		}
-
-		if (values.isEmpty()) {
-			values.add(ValueFactory.none());
+			cachedValues = values;
 		}
 		return values;
 	}
@@ -238,6 +297,7 @@ public class OutputDistribution implements ProbDistribution {
 		for (Set<Effect> input : inputEffects) {
 			copy.addEffects(input);
 		}
+		copy.cache.putAll(cache);
 		return copy;
 	}
 
@@ -250,26 +310,170 @@ public class OutputDistribution implements ProbDistribution {
 	}
 
 	/**
-	 * Calculates the possible values for the output distribution via linearisation
-	 * (more costly operation, but necessary in case of add effects).
+	 * Returns true if the effect contains at least one sub-effect on the output
+	 * variable, and false otherwise (in which case the effect has no influence on
+	 * the output table).
+	 * 
+	 * @param effect the effect
+	 * @return true if the effect is relevant for the output variable
+	 */
+	private boolean isRelevant(Effect effect) {
+		for (BasicEffect e : effect.getSubEffects()) {
+			if (e.getVariable().equals(baseVar)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Calculates the possible values for the output distribution in the presence
+	 * of add effects. Instead of enumerating every combination of input effects,
+	 * the method relies on the (much smaller) set of distinct partial outputs, that
+	 * is, the distinct sets of sub-effects on the output variable that can result
+	 * from combining the input effects.
 	 * 
 	 * @return the set of possible output values
 	 */
 	private Set<Value> getValues_linearise() {
-
-		Map<String, Set<Value>> range = new HashMap<String, Set<Value>>();
-		for (int i = 0; i < inputEffects.size(); i++) {
-			range.put("" + i, new HashSet<Value>(inputEffects.get(i)));
+		if (partialOutputs == null) {
+			Set<Set<BasicEffect>> outputs = new HashSet<Set<BasicEffect>>();
+			outputs.add(new HashSet<BasicEffect>());
+			for (Set<Effect> effects : inputEffects) {
+				outputs = extendPartialOutputs(outputs, effects);
+			}
+			partialOutputs = outputs;
 		}
-		Set<Assignment> combinations = InferenceUtils.getAllCombinations(range);
-		Set<Value> values =
-				combinations.stream()
-						.flatMap(cond -> getProbDistrib(cond).getValues().stream())
-						.collect(Collectors.toSet());
-		if (values.isEmpty()) {
-			values.add(ValueFactory.none());
+		Set<Value> values = new HashSet<Value>();
+		for (Set<BasicEffect> output : partialOutputs) {
+			Effect fullEffect = new Effect(output);
+			Set<Value> outputValues = fullEffect.getValues(baseVar);
+			if (fullEffect.isAdd(baseVar)) {
+				values.add(ValueFactory.create(outputValues));
+			}
+			else if (!outputValues.isEmpty()) {
+				values.addAll(outputValues);
+			}
+			else {
+				values.add(ValueFactory.none());
+			}
 		}
 		return values;
 	}
 
+	/**
+	 * Extends the partial outputs with the sub-effects (on the output variable) of
+	 * each possible effect from a new parent node.
+	 * 
+	 * @param outputs the current partial outputs
+	 * @param effects the possible effects of the new parent node
+	 * @return the extended partial outputs
+	 */
+	private Set<Set<BasicEffect>> extendPartialOutputs(
+			Set<Set<BasicEffect>> outputs, Set<Effect> effects) {
+		Set<Set<BasicEffect>> extended = new HashSet<Set<BasicEffect>>();
+		for (Effect e : effects) {
+			List<BasicEffect> subeffects = e.getSubEffects().stream()
+					.filter(s -> s.getVariable().equals(baseVar))
+					.collect(Collectors.toList());
+			for (Set<BasicEffect> output : outputs) {
+				Set<BasicEffect> newOutput = new HashSet<BasicEffect>(output);
+				newOutput.addAll(subeffects);
+				extended.add(newOutput);
+			}
+		}
+		return extended;
+	}
+
+	/**
+	 * Combination of effects from the parent (rule) nodes, used as key for the
+	 * cache of output tables. The combination is unordered (two combinations with
+	 * the same effects in a different order are equal), and can be filled and
+	 * cleared without any memory allocation.
+	 */
+	static final class EffectCombination {
+
+		// the effects in the combination
+		Effect[] effects = new Effect[4];
+
+		// the number of effects in the combination
+		int size = 0;
+
+		// the hashcode for the combination
+		int hash = 0;
+
+		/**
+		 * Adds an effect to the combination
+		 * 
+		 * @param e the effect to add
+		 */
+		void add(Effect e) {
+			if (size == effects.length) {
+				effects = Arrays.copyOf(effects, size * 2);
+			}
+			effects[size++] = e;
+			hash += e.hashCode();
+		}
+
+		/**
+		 * Removes all effects from the combination
+		 */
+		void clear() {
+			Arrays.fill(effects, 0, size, null);
+			size = 0;
+			hash = 0;
+		}
+
+		/**
+		 * Returns a copy of the combination
+		 * 
+		 * @return the copy
+		 */
+		EffectCombination copy() {
+			EffectCombination copy = new EffectCombination();
+			copy.effects = Arrays.copyOf(effects, Math.max(size, 1));
+			copy.size = size;
+			copy.hash = hash;
+			return copy;
+		}
+
+		/**
+		 * Returns the hashcode for the combination
+		 * 
+		 * @return the hashcode
+		 */
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+
+		/**
+		 * Returns true if o is a combination with the same effects, and false
+		 * otherwise
+		 * 
+		 * @param o the object to compare
+		 * @return true if the combinations are equal, false otherwise
+		 */
+		@Override
+		public boolean equals(Object o) {
+			if (!(o instanceof EffectCombination)) {
+				return false;
+			}
+			EffectCombination other = (EffectCombination) o;
+			if (other.size != size || other.hash != hash) {
+				return false;
+			}
+			for (int i = 0; i < size; i++) {
+				boolean found = false;
+				for (int j = 0; j < size && !found; j++) {
+					found = effects[i].equals(other.effects[j]);
+				}
+				if (!found) {
+					return false;
+				}
+			}
+			return true;
+		}
+	}
+
 }
@@ -84,6 +84,16 @@ public class SingleParameter implements Parameter {
 		return Arrays.asList(paramId);
 	}
 
+	/**
+	 * Returns the selected dimension for the parameter (-1 if the parameter is
+	 * univariate)
+	 *
+	 * @return the dimension
+	 */
+	public int getDimension() {
+		return dimension;
+	}
+
 	/**
 	 * Returns the actual value for the parameter, as given in the input assignment
 	 * (as a DoubleVal or ArrayVal). If the value is not given, throws an exception.
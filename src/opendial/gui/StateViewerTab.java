@@ -176,8 +176,8 @@ public class StateViewerTab extends JComponent {
 	public void showParameters(boolean showParameters) {
 		this.showParameters = showParameters;
 		if (states.containsKey(CURRENT_NAME)) {
-			refresh(mainFrame.getSystem().getState(), mainFrame.getSystem()
-					.getState().getParameterIds());
+			DialogueState snapshot = mainFrame.getSystem().getSnapshot();
+			refresh(snapshot, snapshot.getParameterIds());
 		}
 	}
 
@@ -200,6 +200,9 @@ public class StateViewerTab extends JComponent {
 	 */
 	public void refresh(DialogueState state, Collection<String> updatedVars) {
 
+		// the viewer works on its own copy, which can be displayed and queried
+		// without locking the state
+		state = state.copy();
 		recordState(state, CURRENT_NAME);
 		listBox.setSelectedIndex(0);
 		Settings settings = mainFrame.getSystem().getSettings();
@@ -220,12 +223,7 @@ public class StateViewerTab extends JComponent {
 		if (settings.recording != Recording.NONE && !varsInProcessing.isEmpty()) {
 			String title = "Updating " + StringUtils.join(varsInProcessing, ",");
 			title += "[" + System.currentTimeMillis() + "]";
-			try {
-				recordState(state.copy(), title);
-			}
-			catch (RuntimeException e) {
-				log.warning("cannot copy state : " + e);
-			}
+			recordState(state, title);
 		}
 
 		visualisation.showBayesianNetwork(state);
@@ -240,14 +240,7 @@ public class StateViewer extends VisualizationViewer<String, Integer> {
 		if (!isUpdating) {
 			new Thread(() -> {
 				isUpdating = true;
-				if (tab.getMainFrame().getSystem().isPaused()) {
-					update();
-				}
-				else {
-					synchronized (currentState) {
-						update();
-					}
-				}
+				update();
 				isUpdating = false;
 			}).start();
 		}
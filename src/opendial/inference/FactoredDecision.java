@@ -0,0 +1,344 @@
+// =================================================================                                                                   
+// Copyright (C) 2011-2015 Pierre Lison (plison@ifi.uio.no)
+
+// Permission is hereby granted, free of charge, to any person 
+// obtaining a copy of this software and associated documentation 
+// files (the "Software"), to deal in the Software without restriction, 
+// including without limitation the rights to use, copy, modify, merge, 
+// publish, distribute, sublicense, and/or sell copies of the Software, 
+// and to permit persons to whom the Software is furnished to do so, 
+// subject to the following conditions:
+
+// The above copyright notice and this permission notice shall be 
+// included in all copies or substantial portions of the Software.
+
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, 
+// EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+// MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. 
+// IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY 
+// CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, 
+// TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE 
+// SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+// =================================================================                                                                   
+
+package opendial.inference;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.logging.Logger;
+
+import opendial.bn.BNetwork;
+import opendial.bn.distribs.MultivariateDistribution;
+import opendial.bn.distribs.UtilityTable;
+import opendial.bn.nodes.BNode;
+import opendial.bn.nodes.UtilityNode;
+import opendial.bn.values.Value;
+import opendial.datastructs.Assignment;
+import opendial.utils.InferenceUtils;
+
+/**
+ * Factored decision query that searches for the best joint actions over several
+ * action variables without enumerating their full cartesian product.
+ * 
+ * <p>
+ * The algorithm exploits the additive structure of the utility nodes. The expected
+ * utility of each utility node is first computed as a local factor over the action
+ * variables it depends on. The local factors are then combined by max-sum variable
+ * elimination over the action variables, which yields for each partial assignment
+ * the exact utility of its best completion. Finally, a best-first search over
+ * partial assignments uses these completions to extract the top-k joint actions
+ * in decreasing order of utility.
+ * 
+ * <p>
+ * The cost of the query is therefore exponential in the size of the largest local
+ * factor (i.e. the largest set of action variables a utility node or an
+ * elimination message depends on) instead of the total number of action
+ * variables.
+ * 
+ * @author Pierre Lison (plison@ifi.uio.no)
+ */
+public class FactoredDecision {
+
+	final static Logger log = Logger.getLogger("OpenDial");
+
+	// algorithm used to compute the local utility factors
+	InferenceAlgorithm algorithm;
+
+	/**
+	 * Creates a new factored decision query, using the switching algorithm for the
+	 * local utility factors.
+	 */
+	public FactoredDecision() {
+		this(new SwitchingAlgorithm());
+	}
+
+	/**
+	 * Creates a new factored decision query, using the provided inference algorithm
+	 * for the local utility factors.
+	 * 
+	 * @param algorithm the inference algorithm
+	 */
+	public FactoredDecision(InferenceAlgorithm algorithm) {
+		this.algorithm = algorithm;
+	}
+
+	/**
+	 * Returns the N-best joint assignments of the action variables together with
+	 * their expected utility, given the evidence.
+	 * 
+	 * @param network the Bayesian network
+	 * @param actionVars the action variables to maximise
+	 * @param evidence the evidence
+	 * @param nbest the number of joint actions to return
+	 * @return the utility table with (at most) the N-best joint actions
+	 */
+	public UtilityTable queryBestActions(BNetwork network,
+			Collection<String> actionVars, Assignment evidence, int nbest) {
+
+		// ordering of the action variables used for the elimination
+		List<String> order = new ArrayList<String>();
+		for (String var : new HashSet<String>(actionVars)) {
+			if (network.hasActionNode(var)) {
+				order.add(var);
+			}
+		}
+		Collections.sort(order);
+		Map<String, Set<Value>> domains = new HashMap<String, Set<Value>>();
+		for (String var : order) {
+			domains.put(var, network.getActionNode(var).getValues());
+		}
+
+		// computing the local factors, each placed in the bucket of its last
+		// variable in the elimination order
+		List<List<Factor>> buckets = new ArrayList<List<Factor>>();
+		for (int i = 0; i <= order.size(); i++) {
+			buckets.add(new ArrayList<Factor>());
+		}
+		List<Factor> factors = new ArrayList<Factor>();
+		for (UtilityNode node : network.getUtilityNodes()) {
+			Factor factor = getLocalFactor(network, node, order, evidence);
+			factors.add(factor);
+			buckets.get(factor.bucket).add(factor);
+		}
+
+		// max-sum elimination, from the last variable to the first
+		List<Factor> messages = new ArrayList<Factor>();
+		for (int i = order.size(); i > 0; i--) {
+			if (buckets.get(i).isEmpty()) {
+				continue;
+			}
+			Factor message = eliminate(buckets.get(i), order, domains, i);
+			messages.add(message);
+			buckets.get(message.bucket).add(message);
+		}
+
+		// best-first search over the partial assignments
+		UtilityTable result = new UtilityTable();
+		PriorityQueue<PartialAction> queue = new PriorityQueue<PartialAction>();
+		queue.add(new PartialAction(new Assignment(), 0, factors, messages));
+		while (!queue.isEmpty() && result.getRows().size() < nbest) {
+			PartialAction partial = queue.poll();
+			if (partial.depth == order.size()) {
+				result.setUtil(partial.action, partial.score);
+				continue;
+			}
+			String var = order.get(partial.depth);
+			for (Value v : domains.get(var)) {
+				Assignment extended = new Assignment(partial.action, var, v);
+				queue.add(new PartialAction(extended, partial.depth + 1, factors,
+						messages));
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Computes the local factor for the utility node, expressing its expected
+	 * utility as a function of the action variables it depends on.
+	 * 
+	 * @param network the Bayesian network
+	 * @param node the utility node
+	 * @param order the elimination order for the action variables
+	 * @param evidence the evidence
+	 * @return the local factor
+	 */
+	private Factor getLocalFactor(BNetwork network, UtilityNode node,
+			List<String> order, Assignment evidence) {
+
+		List<String> scope = new ArrayList<String>(order);
+		scope.retainAll(node.getAncestorIds());
+
+		// the sub-network includes the ancestors of the utility node and of the
+		// evidence variables, but no other utility node
+		Set<String> nodeIds = new HashSet<String>(node.getAncestorIds());
+		nodeIds.add(node.getId());
+		for (String evidenceVar : evidence.getVariables()) {
+			if (network.hasNode(evidenceVar)) {
+				nodeIds.add(evidenceVar);
+				nodeIds.addAll(network.getNode(evidenceVar).getAncestorIds());
+			}
+		}
+		BNetwork subnetwork = new BNetwork();
+		List<BNode> sortedNodes = network.getSortedNodes();
+		Collections.reverse(sortedNodes);
+		for (BNode n : sortedNodes) {
+			if (nodeIds.contains(n.getId())) {
+				BNode copy = n.copy();
+				for (BNode inputNode : n.getInputNodes()) {
+					copy.addInputNode(subnetwork.getNode(inputNode.getId()));
+				}
+				subnetwork.addNode(copy);
+			}
+		}
+
+		Assignment subEvidence = evidence.getTrimmed(nodeIds);
+		if (scope.isEmpty()) {
+			double util = getExpectedUtility(subnetwork, node, subEvidence);
+			Map<Assignment, Double> values = new HashMap<Assignment, Double>();
+			values.put(new Assignment(), util);
+			return new Factor(scope, values, 0, 0);
+		}
+		UtilityTable table = algorithm.queryUtil(subnetwork, scope, subEvidence);
+		int bucket = order.indexOf(scope.get(scope.size() - 1)) + 1;
+		return new Factor(scope, table.getTable(), bucket, 0);
+	}
+
+	/**
+	 * Returns the expected utility of a utility node that does not depend on any
+	 * of the action variables, by marginalising over its input variables.
+	 * 
+	 * @param network the (sub-)network containing the node
+	 * @param node the utility node
+	 * @param evidence the evidence
+	 * @return the expected utility
+	 */
+	private double getExpectedUtility(BNetwork network, UtilityNode node,
+			Assignment evidence) {
+		Set<String> inputs = node.getInputNodeIds();
+		if (inputs.isEmpty()) {
+			return node.getUtility(new Assignment());
+		}
+		MultivariateDistribution distrib =
+				algorithm.queryProb(network, inputs, evidence);
+		double util = 0.0;
+		for (Assignment a : distrib.getValues()) {
+			util += distrib.getProb(a) * node.getUtility(a);
+		}
+		return util;
+	}
+
+	/**
+	 * Eliminates the variable at position i in the elimination order by maximising
+	 * the sum of the factors in its bucket, and returns the resulting message.
+	 * 
+	 * @param bucket the factors in the bucket
+	 * @param order the elimination order
+	 * @param domains the values for each action variable
+	 * @param i the position of the variable to eliminate (starting at 1)
+	 * @return the resulting message
+	 */
+	private Factor eliminate(List<Factor> bucket, List<String> order,
+			Map<String, Set<Value>> domains, int i) {
+		String var = order.get(i - 1);
+		Set<String> scopeSet = new HashSet<String>();
+		for (Factor f : bucket) {
+			scopeSet.addAll(f.scope);
+		}
+		List<String> scope = new ArrayList<String>(order.subList(0, i - 1));
+		scope.retainAll(scopeSet);
+
+		Map<String, Set<Value>> matrix = new HashMap<String, Set<Value>>();
+		for (String v : scope) {
+			matrix.put(v, domains.get(v));
+		}
+		Map<Assignment, Double> values = new HashMap<Assignment, Double>();
+		for (Assignment a : InferenceUtils.getAllCombinations(matrix)) {
+			double max = Double.NEGATIVE_INFINITY;
+			for (Value v : domains.get(var)) {
+				Assignment full = new Assignment(a, var, v);
+				double total = 0.0;
+				for (Factor f : bucket) {
+					total += f.getValue(full);
+				}
+				max = Math.max(max, total);
+			}
+			values.put(a, max);
+		}
+		int newBucket = (scope.isEmpty()) ? 0 : order.indexOf(
+				scope.get(scope.size() - 1)) + 1;
+		return new Factor(scope, values, newBucket, i);
+	}
+
+	/**
+	 * Utility factor over a subset of action variables, placed in a given bucket
+	 * of the elimination. Messages also record the bucket that produced them.
+	 */
+	private static final class Factor {
+
+		final List<String> scope;
+		final Map<Assignment, Double> values;
+		final int bucket;
+		final int origin;
+
+		Factor(List<String> scope, Map<Assignment, Double> values, int bucket,
+				int origin) {
+			this.scope = scope;
+			this.values = values;
+			this.bucket = bucket;
+			this.origin = origin;
+		}
+
+		double getValue(Assignment action) {
+			Double value = values.get(action.getTrimmed(scope));
+			return (value != null) ? value : 0.0;
+		}
+	}
+
+	/**
+	 * Partial assignment of the action variables, scored by the utility of its best
+	 * completion. The partial actions are ordered by decreasing score.
+	 */
+	private static final class PartialAction implements Comparable<PartialAction> {
+
+		final Assignment action;
+		final int depth;
+		final double score;
+
+		/**
+		 * Creates the partial action and computes its score, defined as the sum of
+		 * the local factors fully assigned by the action plus the elimination
+		 * messages summarising the remaining variables.
+		 * 
+		 * @param action the partial assignment
+		 * @param depth the number of assigned variables
+		 * @param factors the local factors
+		 * @param messages the elimination messages
+		 */
+		PartialAction(Assignment action, int depth, List<Factor> factors,
+				List<Factor> messages) {
+			this.action = action;
+			this.depth = depth;
+			double total = 0.0;
+			for (Factor f : factors) {
+				total += (f.bucket <= depth) ? f.getValue(action) : 0.0;
+			}
+			for (Factor m : messages) {
+				total += (m.origin > depth && m.bucket <= depth) ? m
+						.getValue(action) : 0.0;
+			}
+			this.score = total;
+		}
+
+		@Override
+		public int compareTo(PartialAction other) {
+			return Double.compare(other.score, score);
+		}
+	}
+}
@@ -38,7 +38,6 @@ import opendial.bn.distribs.ProbDistribution;
 import opendial.bn.distribs.UtilityTable;
 import opendial.bn.nodes.ChanceNode;
 import opendial.datastructs.Assignment;
-import opendial.datastructs.Intervals;
 import opendial.inference.InferenceAlgorithm;
 import opendial.inference.Query;
 
@@ -258,14 +257,15 @@ public class SamplingAlgorithm implements InferenceAlgorithm {
 				new LikelihoodWeighting(query, nbSamples, maxSamplingTime);
 		List<Sample> samples = isquery.getSamples();
 		weightScheme.accept(samples);
-		Intervals<Sample> intervals =
-				new Intervals<Sample>(samples, s -> s.getWeight());
 
 		EmpiricalDistribution distrib = new EmpiricalDistribution();
-
-		int sampleSize = samples.size();
-		for (int j = 0; j < sampleSize; j++) {
-			distrib.addSample(intervals.sample());
+		double totalWeight = 0.0;
+		for (Sample sample : samples) {
+			distrib.addSample(sample, sample.getWeight());
+			totalWeight += sample.getWeight();
+		}
+		if (!(totalWeight > 0.0)) {
+			throw new RuntimeException("total weight is null: " + totalWeight);
 		}
 		return distrib;
 	}
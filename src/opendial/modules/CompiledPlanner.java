@@ -0,0 +1,167 @@
+// =================================================================                                                                   
+// Copyright (C) 2011-2015 Pierre Lison (plison@ifi.uio.no)
+
+// Permission is hereby granted, free of charge, to any person 
+// obtaining a copy of this software and associated documentation 
+// files (the "Software"), to deal in the Software without restriction, 
+// including without limitation the rights to use, copy, modify, merge, 
+// publish, distribute, sublicense, and/or sell copies of the Software, 
+// and to permit persons to whom the Software is furnished to do so, 
+// subject to the following conditions:
+
+// The above copyright notice and this permission notice shall be 
+// included in all copies or substantial portions of the Software.
+
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, 
+// EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+// MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. 
+// IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY 
+// CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, 
+// TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE 
+// SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+// =================================================================                                                                   
+
+package opendial.modules;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.logging.Logger;
+
+import opendial.DialogueState;
+import opendial.DialogueSystem;
+import opendial.datastructs.Assignment;
+
+/**
+ * Module selecting the system actions from a policy compiled offline (see
+ * {@link PolicyCompiler}). The action is looked up in the policy table from the
+ * discretised features of the dialogue state. If the policy has no confident
+ * entry for the state, the module does nothing and the action selection falls
+ * back to the online planner.
+ * 
+ * <p>
+ * The policy is either provided to the constructor, or loaded from the file
+ * specified by the parameter "policy" in the system settings.
+ *
+ * @author Pierre Lison (plison@ifi.uio.no)
+ */
+public class CompiledPlanner implements Module {
+
+	// logger
+	final static Logger log = Logger.getLogger("OpenDial");
+
+	/** Minimum number of examples for a policy entry to be used */
+	public static int MIN_OCCURRENCES = 1;
+
+	/** Minimum difference between the Q-values of the two best actions */
+	public static double MIN_MARGIN = 0.1;
+
+	DialogueSystem system;
+
+	// the compiled policy
+	CompiledPolicy policy;
+
+	boolean paused = true;
+
+	// number of action selections answered by the policy, and number of
+	// fallbacks to online planning
+	int nbLookups = 0;
+	int nbFallbacks = 0;
+
+	/**
+	 * Creates a new planner for the dialogue system. The policy is loaded from the
+	 * system settings when the module is started.
+	 * 
+	 * @param system the dialogue system
+	 */
+	public CompiledPlanner(DialogueSystem system) {
+		this.system = system;
+	}
+
+	/**
+	 * Creates a new planner for the dialogue system, with the given policy.
+	 * 
+	 * @param system the dialogue system
+	 * @param policy the compiled policy
+	 */
+	public CompiledPlanner(DialogueSystem system, CompiledPolicy policy) {
+		this(system);
+		this.policy = policy;
+	}
+
+	/**
+	 * Starts the module, and loads the policy from the system settings if
+	 * necessary.
+	 */
+	@Override
+	public void start() {
+		if (policy == null) {
+			String policyFile = system.getSettings().params.getProperty("policy");
+			if (policyFile == null) {
+				throw new RuntimeException("no policy file specified");
+			}
+			policy = CompiledPolicy.load(policyFile);
+		}
+		paused = false;
+	}
+
+	/**
+	 * Pauses the module
+	 */
+	@Override
+	public void pause(boolean toPause) {
+		paused = toPause;
+	}
+
+	/**
+	 * Returns true if the module is running, else false.
+	 */
+	@Override
+	public boolean isRunning() {
+		return !paused;
+	}
+
+	/**
+	 * Selects the action from the compiled policy, if the policy is confident
+	 * about the best action for the dialogue state.
+	 */
+	@Override
+	public void trigger(DialogueState state, Collection<String> updatedVars) {
+		if (paused || state.getActionNodeIds().isEmpty()
+				|| system.getFloor().equals("user")) {
+			return;
+		}
+		Assignment bestAction =
+				policy.getBestAction(state, MIN_OCCURRENCES, MIN_MARGIN);
+		if (bestAction == null) {
+			nbFallbacks++;
+			return;
+		}
+		nbLookups++;
+		if (policy.getActionValues(state).getUtil(bestAction) < 0.001) {
+			bestAction = Assignment.createDefault(bestAction.getVariables());
+		}
+		state.removeNodes(state.getUtilityNodeIds());
+		state.removeNodes(new HashSet<String>(state.getActionNodeIds()));
+		state.addToState(bestAction.removePrimes());
+	}
+
+	/**
+	 * Returns the compiled policy
+	 * 
+	 * @return the policy
+	 */
+	public CompiledPolicy getPolicy() {
+		return policy;
+	}
+
+	/**
+	 * Returns the proportion of action selections answered by the policy (the
+	 * other ones falling back to online planning).
+	 * 
+	 * @return the proportion of lookups
+	 */
+	public double getCoverage() {
+		int total = nbLookups + nbFallbacks;
+		return (total > 0) ? ((double) nbLookups) / total : 0.0;
+	}
+}
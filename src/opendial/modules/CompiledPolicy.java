@@ -0,0 +1,338 @@
+// =================================================================                                                                   
+// Copyright (C) 2011-2015 Pierre Lison (plison@ifi.uio.no)
+
+// Permission is hereby granted, free of charge, to any person 
+// obtaining a copy of this software and associated documentation 
+// files (the "Software"), to deal in the Software without restriction, 
+// including without limitation the rights to use, copy, modify, merge, 
+// publish, distribute, sublicense, and/or sell copies of the Software, 
+// and to permit persons to whom the Software is furnished to do so, 
+// subject to the following conditions:
+
+// The above copyright notice and this permission notice shall be 
+// included in all copies or substantial portions of the Software.
+
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, 
+// EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+// MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. 
+// IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY 
+// CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, 
+// TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE 
+// SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+// =================================================================                                                                   
+
+package opendial.modules;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.logging.Logger;
+
+import opendial.DialogueState;
+import opendial.bn.distribs.CategoricalTable;
+import opendial.bn.distribs.ContinuousDistribution;
+import opendial.bn.distribs.IndependentDistribution;
+import opendial.bn.distribs.ProbDistribution;
+import opendial.bn.distribs.UtilityTable;
+import opendial.bn.values.Value;
+import opendial.bn.values.ValueFactory;
+import opendial.datastructs.Assignment;
+import opendial.utils.XMLUtils;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+
+/**
+ * Policy compiled offline from the action values estimated by the planner. The
+ * policy is a table indexed by discretised features of the dialogue state, where
+ * each entry contains the average Q-values of the actions and the number of
+ * dialogue states from which these values were estimated.
+ * 
+ * <p>
+ * The features of a dialogue state are extracted from its (discrete) chance nodes
+ * without input nodes: for each such node, the values with a probability above the
+ * resolution of the policy are listed with their quantised probability. Parameter
+ * nodes and predictions are ignored.
+ * 
+ * <p>
+ * The policy can be saved to (and loaded from) an XML file.
+ *
+ * @author Pierre Lison (plison@ifi.uio.no)
+ */
+public class CompiledPolicy {
+
+	// logger
+	final static Logger log = Logger.getLogger("OpenDial");
+
+	// the resolution used to quantise the probabilities
+	final double resolution;
+
+	// the entries of the policy, indexed by the state features
+	final Map<String, PolicyEntry> entries;
+
+	/**
+	 * Creates a new, empty policy with the given resolution for the quantisation of
+	 * the probabilities
+	 * 
+	 * @param resolution the resolution (between 0 and 1)
+	 */
+	public CompiledPolicy(double resolution) {
+		if (resolution <= 0.0 || resolution > 1.0) {
+			throw new RuntimeException("invalid resolution: " + resolution);
+		}
+		this.resolution = resolution;
+		entries = new HashMap<String, PolicyEntry>();
+	}
+
+	/**
+	 * Adds the Q-values estimated for the dialogue state to the policy. If the
+	 * policy already contains an entry for the features of the state, the Q-values
+	 * are averaged.
+	 * 
+	 * @param state the dialogue state
+	 * @param qValues the Q-values for the actions in the state
+	 */
+	public void addExample(DialogueState state, UtilityTable qValues) {
+		if (qValues.getRows().isEmpty()) {
+			return;
+		}
+		String features = getFeatures(state);
+		PolicyEntry entry = entries.get(features);
+		if (entry == null) {
+			entry = new PolicyEntry();
+			entries.put(features, entry);
+		}
+		entry.update(qValues.getTable());
+	}
+
+	/**
+	 * Returns the best action for the dialogue state, provided the policy is
+	 * sufficiently confident about it: the entry for the state must have been
+	 * estimated from at least minOccurrences examples, and the Q-value of the best
+	 * action must exceed the one of the second best by at least minMargin.
+	 * Otherwise, returns null.
+	 * 
+	 * @param state the dialogue state
+	 * @param minOccurrences the minimum number of examples
+	 * @param minMargin the minimum margin between the two best actions
+	 * @return the best action, or null if the policy is not confident
+	 */
+	public Assignment getBestAction(DialogueState state, int minOccurrences,
+			double minMargin) {
+		PolicyEntry entry = entries.get(getFeatures(state));
+		if (entry == null || entry.count < minOccurrences) {
+			return null;
+		}
+		Assignment best = null;
+		double bestValue = Double.NEGATIVE_INFINITY;
+		double secondValue = Double.NEGATIVE_INFINITY;
+		for (Assignment action : entry.values.keySet()) {
+			double value = entry.values.get(action);
+			if (value > bestValue) {
+				secondValue = bestValue;
+				bestValue = value;
+				best = action;
+			}
+			else if (value > secondValue) {
+				secondValue = value;
+			}
+		}
+		return (bestValue - secondValue >= minMargin) ? best : null;
+	}
+
+	/**
+	 * Returns the Q-values stored in the policy for the dialogue state (or an empty
+	 * table if the policy has no entry for the state).
+	 * 
+	 * @param state the dialogue state
+	 * @return the Q-values for the state
+	 */
+	public UtilityTable getActionValues(DialogueState state) {
+		PolicyEntry entry = entries.get(getFeatures(state));
+		return (entry != null) ? new UtilityTable(entry.values) : new UtilityTable();
+	}
+
+	/**
+	 * Returns the number of examples from which the entry for the dialogue state
+	 * was estimated (0 if the policy has no entry for the state).
+	 * 
+	 * @param state the dialogue state
+	 * @return the number of examples
+	 */
+	public int getCount(DialogueState state) {
+		PolicyEntry entry = entries.get(getFeatures(state));
+		return (entry != null) ? entry.count : 0;
+	}
+
+	/**
+	 * Returns the number of entries in the policy
+	 * 
+	 * @return the number of entries
+	 */
+	public int size() {
+		return entries.size();
+	}
+
+	/**
+	 * Returns the discretised features of the dialogue state.
+	 * 
+	 * @param state the dialogue state
+	 * @return the features (as a string)
+	 */
+	public String getFeatures(DialogueState state) {
+		StringBuilder features = new StringBuilder();
+		for (String nodeId : new TreeSet<String>(state.getChanceNodeIds())) {
+			if (nodeId.contains("^p")
+					|| !state.getChanceNode(nodeId).getInputNodeIds().isEmpty()) {
+				continue;
+			}
+			ProbDistribution distrib = state.getChanceNode(nodeId).getDistrib();
+			if (!(distrib instanceof IndependentDistribution)
+					|| distrib instanceof ContinuousDistribution) {
+				continue;
+			}
+			CategoricalTable table =
+					((IndependentDistribution) distrib).toDiscrete();
+			List<String> values = new ArrayList<String>();
+			for (Value v : table.getValues()) {
+				long prob = Math.round(table.getProb(v) / resolution);
+				if (prob > 0) {
+					values.add(v + "=" + prob);
+				}
+			}
+			Collections.sort(values);
+			features.append(nodeId).append(values);
+		}
+		return features.toString();
+	}
+
+	/**
+	 * Saves the policy in an XML file
+	 * 
+	 * @param filename the file name
+	 */
+	public void save(String filename) {
+		Document doc = XMLUtils.newXMLDocument();
+		Element root = doc.createElement("policy");
+		root.setAttribute("resolution", "" + resolution);
+		doc.appendChild(root);
+		for (String features : entries.keySet()) {
+			PolicyEntry entry = entries.get(features);
+			Element entryNode = doc.createElement("entry");
+			entryNode.setAttribute("features", features);
+			entryNode.setAttribute("count", "" + entry.count);
+			for (Assignment action : entry.values.keySet()) {
+				Element actionNode = doc.createElement("action");
+				actionNode.setAttribute("util", "" + entry.values.get(action));
+				actionNode.setAttribute("count", "" + entry.counts.get(action));
+				for (String var : action.getVariables()) {
+					Element varNode = doc.createElement("variable");
+					varNode.setAttribute("id", var);
+					varNode.setAttribute("value", action.getValue(var).toString());
+					actionNode.appendChild(varNode);
+				}
+				entryNode.appendChild(actionNode);
+			}
+			root.appendChild(entryNode);
+		}
+		XMLUtils.writeXMLDocument(doc, filename);
+	}
+
+	/**
+	 * Loads the policy from an XML file
+	 * 
+	 * @param filename the file name
+	 * @return the corresponding policy
+	 */
+	public static CompiledPolicy load(String filename) {
+		Node root = XMLUtils.getMainNode(XMLUtils.getXMLDocument(filename));
+		if (!root.getNodeName().equals("policy")
+				|| root.getAttributes().getNamedItem("resolution") == null) {
+			throw new RuntimeException(filename + " does not contain a valid policy");
+		}
+		double resolution =
+				Double.parseDouble(root.getAttributes().getNamedItem("resolution")
+						.getNodeValue());
+		CompiledPolicy policy = new CompiledPolicy(resolution);
+		for (Element entryNode : getChildren(root, "entry")) {
+			PolicyEntry entry = new PolicyEntry();
+			entry.count = Integer.parseInt(entryNode.getAttribute("count"));
+			for (Element actionNode : getChildren(entryNode, "action")) {
+				Assignment action = new Assignment();
+				for (Element varNode : getChildren(actionNode, "variable")) {
+					action.addPair(varNode.getAttribute("id"),
+							ValueFactory.create(varNode.getAttribute("value")));
+				}
+				entry.values.put(action,
+						Double.parseDouble(actionNode.getAttribute("util")));
+				String actionCount = actionNode.getAttribute("count");
+				entry.counts.put(action, actionCount.isEmpty() ? entry.count
+						: Integer.parseInt(actionCount));
+			}
+			policy.entries.put(entryNode.getAttribute("features"), entry);
+		}
+		return policy;
+	}
+
+	/**
+	 * Returns a string representation of the policy
+	 */
+	@Override
+	public String toString() {
+		return "compiled policy with " + entries.size() + " entries";
+	}
+
+	/**
+	 * Returns the child elements of the XML node with the given name
+	 * 
+	 * @param node the XML node
+	 * @param name the name of the child elements
+	 * @return the child elements
+	 */
+	private static List<Element> getChildren(Node node, String name) {
+		List<Element> children = new ArrayList<Element>();
+		for (int i = 0; i < node.getChildNodes().getLength(); i++) {
+			Node child = node.getChildNodes().item(i);
+			if (child instanceof Element && child.getNodeName().equals(name)) {
+				children.add((Element) child);
+			}
+		}
+		return children;
+	}
+
+	/**
+	 * Entry of the policy, with the average Q-values of the actions and the number
+	 * of examples.
+	 */
+	static final class PolicyEntry {
+
+		// the average Q-values of the actions
+		final Map<Assignment, Double> values = new HashMap<Assignment, Double>();
+
+		// the number of examples in which each action was evaluated
+		final Map<Assignment, Integer> counts = new HashMap<Assignment, Integer>();
+
+		// the number of examples
+		int count;
+
+		/**
+		 * Updates the average Q-values with a new example. Each average is
+		 * computed over the examples in which the action was evaluated.
+		 * 
+		 * @param qValues the Q-values in the example
+		 */
+		void update(Map<Assignment, Double> qValues) {
+			count++;
+			for (Assignment action : qValues.keySet()) {
+				int actionCount = counts.merge(action, 1, Integer::sum);
+				double previous = values.getOrDefault(action, qValues.get(action));
+				double value = qValues.get(action);
+				values.put(action, previous + (value - previous) / actionCount);
+			}
+		}
+	}
+}
@@ -24,21 +24,40 @@
 package opendial.modules;
 
 import java.util.logging.*;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.TreeSet;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import opendial.DialogueState;
 import opendial.DialogueSystem;
 import opendial.Settings;
+import opendial.bn.distribs.CategoricalTable;
+import opendial.bn.distribs.ConditionalTable;
+import opendial.bn.distribs.ContinuousDistribution;
+import opendial.bn.distribs.IndependentDistribution;
 import opendial.bn.distribs.MultivariateDistribution;
 import opendial.bn.distribs.MultivariateTable;
+import opendial.bn.distribs.ProbDistribution;
 import opendial.bn.distribs.UtilityTable;
+import opendial.bn.nodes.BNode;
+import opendial.bn.nodes.ChanceNode;
+import opendial.bn.values.Value;
 import opendial.datastructs.Assignment;
+import opendial.domains.Domain;
 import opendial.domains.Model;
+import opendial.domains.rules.distribs.AnchoredRule;
+import opendial.utils.InferenceUtils;
 
 /**
  * Online forward planner for OpenDial. The planner constructs a lookahead tree (with
@@ -52,6 +71,13 @@ import opendial.domains.Model;
  * result. The quality of the utility estimates is of course improving over time.
  * 
  * <p>
+ * The lookahead for each candidate action (and for each alternative observation
+ * at deeper horizons) is independent of the others, and is by default evaluated
+ * in parallel (see PARALLEL_EVALUATION). For multi-step planning, the Q-values
+ * of the dialogue states that have already been evaluated (in another branch or
+ * at a previous turn) are retrieved from a bounded transposition cache.
+ * 
+ * <p>
  * The planning algorithm is described in pages 121-123 of Pierre Lison's PhD thesis
  * [http://folk.uio.no/plison/pdfs/thesis/thesis-plison2013.pdf]
  * 
@@ -73,12 +99,60 @@ public class ForwardPlanner implements Module {
 	/** Minimum probability for the generated observations */
 	public static double MIN_OBSERVATION_PROB = 0.1;
 
+	/**
+	 * Whether to evaluate the candidate actions and observations in parallel (over
+	 * the common fork-join pool)
+	 */
+	public static boolean PARALLEL_EVALUATION = true;
+
+	/**
+	 * Whether to plan by iterative deepening (i.e. successively for horizons 1, 2,
+	 * ..., keeping the Q-values of the deepest search that could be completed
+	 * before the timeout)
+	 */
+	public static boolean ITERATIVE_DEEPENING = true;
+
+	/**
+	 * Whether to search for the best joint actions by factored maximisation when
+	 * the decision involves several action variables (instead of enumerating all
+	 * combinations of action values)
+	 */
+	public static boolean FACTORED_DECISION = true;
+
+	/** Maximum number of Q-value tables in the transposition cache */
+	public static int TRANSPOSITION_CACHE_SIZE = 500;
+
+	/** Resolution of the probabilities in the fingerprints of dialogue states */
+	public static double FINGERPRINT_RESOLUTION = 0.01;
+
+	/**
+	 * Maximum number of rows enumerated to describe a conditional distribution in
+	 * the fingerprint of a dialogue state
+	 */
+	public static int MAX_FINGERPRINT_ROWS = 500;
+
 	DialogueSystem system;
 
 	/** Current planning process (if active) */
 	PlannerProcess currentProcess;
 
-	boolean paused = false;
+	volatile boolean paused = false;
+
+	// transposition cache with the Q-values computed for previous dialogue
+	// states, indexed by their fingerprint (and horizon)
+	final Map<String, UtilityTable> transpositions =
+			new LinkedHashMap<String, UtilityTable>(64, 0.75f, true) {
+				private static final long serialVersionUID = 1L;
+
+				@Override
+				protected boolean removeEldestEntry(
+						Map.Entry<String, UtilityTable> eldest) {
+					return size() > TRANSPOSITION_CACHE_SIZE;
+				}
+			};
+
+	// the domain for which the transpositions were computed
+	Domain transpositionDomain;
 
 	// scheduled thread pool to terminate planning once the time limit is
 	// reached
@@ -133,10 +207,31 @@ public class ForwardPlanner implements Module {
 		}
 
 		if (!paused && !state.getActionNodeIds().isEmpty()) {
+			synchronized (transpositions) {
+				if (transpositionDomain != system.getDomain()) {
+					transpositions.clear();
+					transpositionDomain = system.getDomain();
+				}
+			}
 			currentProcess = new PlannerProcess(state);
 		}
 	}
 
+	/**
+	 * Returns the default timeout for the planning, set to twice the maximum
+	 * sampling time.
+	 * 
+	 * @param initState initial dialogue state
+	 * @return the timeout (in milliseconds)
+	 */
+	private long getTimeout(DialogueState initState) {
+		long timeout = Settings.maxSamplingTime * 2;
+		// if the speech stream is not finished, only allow fast, reactive
+		// responses
+		return (initState.hasChanceNode(system.getSettings().userSpeech))
+				? timeout / 5 : timeout;
+	}
+
 	/**
 	 * Planner process, which can be terminated before the end of the horizon
 	 * 
@@ -146,7 +241,16 @@ public class ForwardPlanner implements Module {
 
 		DialogueState initState;
 
-		boolean isTerminated = false;
+		volatile boolean isTerminated = false;
+
+		// whether some actions were left unexpanded due to the timeout
+		volatile boolean isInterrupted = false;
+
+		// planning horizon reached by the (complete) search
+		int depthReached = 0;
+
+		// the Q-values of the actions (once the search is finished)
+		UtilityTable actionValues;
 
 		/**
 		 * Creates the planning process. Timeout is set to twice the maximum sampling
@@ -156,22 +260,43 @@ public class ForwardPlanner implements Module {
 		 * @param initState initial dialogue state.
 		 */
 		public PlannerProcess(DialogueState initState) {
+			this(initState, getTimeout(initState));
+		}
+
+		/**
+		 * Creates the planning process with a given timeout, and runs the planner
+		 * until the horizon has been reached or the planner has run out of time. A
+		 * timeout of 0 terminates the search after the first horizon, and a
+		 * negative timeout lets the search run until the full horizon.
+		 * 
+		 * @param initState initial dialogue state.
+		 * @param timeout the timeout (in milliseconds)
+		 */
+		PlannerProcess(DialogueState initState, long timeout) {
 			this.initState = initState;
 			Settings settings = system.getSettings();
 
 			// setting the timeout for the planning
-			long timeout = Settings.maxSamplingTime * 2;
-			// if the speech stream is not finished, only allow fast, reactive
-			// responses
-			timeout =
-					(initState.hasChanceNode(settings.userSpeech)) ? timeout / 5
-							: timeout;
-			service.schedule(() -> isTerminated = true, timeout,
-					TimeUnit.MILLISECONDS);
+			if (timeout == 0) {
+				isTerminated = true;
+			}
+			else if (timeout > 0) {
+				service.schedule(() -> isTerminated = true, timeout,
+						TimeUnit.MILLISECONDS);
+			}
 
 			try {
 				// step 1: extract the Q-values
-				UtilityTable evalActions = getQValues(initState, settings.horizon);
+				UtilityTable evalActions;
+				if (ITERATIVE_DEEPENING) {
+					evalActions = getIterativeQValues(initState, settings.horizon);
+				}
+				else {
+					evalActions = getQValues(initState, settings.horizon);
+					depthReached = (isInterrupted) ? 1 : settings.horizon;
+				}
+				log.fine("planning depth reached: " + depthReached);
+				actionValues = evalActions;
 
 				// step 2: find the action with highest utility
 				Assignment bestAction = evalActions.getBest().getKey();
@@ -197,84 +322,160 @@ public class ForwardPlanner implements Module {
 			}
 		}
 
+		/**
+		 * Returns the planning horizon reached by the search. With iterative
+		 * deepening, this is the horizon of the deepest search that was completed
+		 * before the timeout.
+		 * 
+		 * @return the planning depth reached
+		 */
+		public int getDepthReached() {
+			return depthReached;
+		}
+
+		/**
+		 * Returns the Q-values estimated for the actions at the end of the search
+		 * (or null if the search has not finished).
+		 * 
+		 * @return the Q-values for the actions
+		 */
+		public UtilityTable getActionValues() {
+			return actionValues;
+		}
+
+		/**
+		 * Returns the Q-values for the dialogue state by iterative deepening: the
+		 * Q-values are computed for the horizons 1, 2, ... up to the maximum
+		 * horizon, and the Q-values of the deepest search that could be completed
+		 * before the timeout are returned. Each horizon is searched anew: as the
+		 * transposition cache is indexed by the remaining horizon, its entries
+		 * are only shared between identical states within a search (or across
+		 * turns), not between the successive horizons.
+		 * 
+		 * @param state the dialogue state
+		 * @param horizon the maximum planning horizon
+		 * @return the Q-values for the deepest complete search
+		 */
+		private UtilityTable getIterativeQValues(DialogueState state, int horizon) {
+			UtilityTable bestQValues = getQValues(state, 1);
+			depthReached = 1;
+			for (int d = 2; d <= horizon && !isTerminated && !paused; d++) {
+				isInterrupted = false;
+				UtilityTable qValues = getQValues(state, d);
+				if (isInterrupted) {
+					break;
+				}
+				bestQValues = qValues;
+				depthReached = d;
+			}
+			return bestQValues;
+		}
+
 		/**
 		 * Returns the Q-values for the dialogue state, assuming a particular
-		 * horizon.
+		 * horizon. For multi-step planning, the Q-values are retrieved from the
+		 * transposition cache if the same dialogue state (up to the resolution of
+		 * its fingerprint) has already been evaluated with the same horizon.
 		 * 
 		 * @param state the dialogue state
 		 * @param horizon the planning horizon
 		 * @return the estimated utility table for the Q-values @
 		 */
 		private UtilityTable getQValues(DialogueState state, int horizon) {
-			Set<String> actionNodes = state.getActionNodeIds();
-
-			if (actionNodes.isEmpty()) {
+			if (state.getActionNodeIds().isEmpty()) {
 				return new UtilityTable();
 			}
-			UtilityTable rewards = state.queryUtil(actionNodes);
-			if (horizon == 1) {
-				return rewards;
+			if (system.getSettings().horizon == 1) {
+				return computeQValues(state, horizon);
 			}
 
-			UtilityTable qValues = new UtilityTable();
-			double discount = system.getSettings().discountFactor;
-
-			for (Assignment action : rewards.getRows()) {
-				double reward = rewards.getUtil(action);
-				qValues.setUtil(action, reward);
-
-				if (horizon > 1 && !isTerminated && !paused && hasTransition(action)) {
-
-					DialogueState copy = state.copy();
-					copy.addToState(action.removePrimes());
-					updateState(copy);
+			String stateFingerprint = getFingerprint(state);
+			if (stateFingerprint == null) {
+				return computeQValues(state, horizon);
+			}
+			String fingerprint = horizon + "#" + stateFingerprint;
+			UtilityTable qValues;
+			synchronized (transpositions) {
+				qValues = transpositions.get(fingerprint);
+			}
+			if (qValues == null) {
+				qValues = computeQValues(state, horizon);
 
-					if (!action.isDefault()) {
-						double expected =
-								discount * getExpectedValue(copy, horizon - 1);
-						qValues.setUtil(action, qValues.getUtil(action) + expected);
+				// Q-values from interrupted searches are not stored
+				if (!isInterrupted && !isTerminated && !paused) {
+					synchronized (transpositions) {
+						transpositions.put(fingerprint, qValues);
 					}
 				}
 			}
-			return qValues;
+			return qValues.copy();
 		}
 
 		/**
-		 * Adds a particular content to the dialogue state
+		 * Computes the Q-values for the dialogue state, assuming a particular
+		 * horizon.
 		 * 
 		 * @param state the dialogue state
-		 * @param newContent the content to add be performed
+		 * @param horizon the planning horizon
+		 * @return the estimated utility table for the Q-values @
 		 */
-		private void updateState(DialogueState state) {
-
-			while (!state.getNewVariables().isEmpty()) {
-				Set<String> toProcess = state.getNewVariables();
-				state.reduce();
-				for (Model model : system.getDomain().getModels()) {
-					if (model.isTriggered(state, toProcess)) {
-						model.trigger(state);
-						if (model.isBlocking() && !state.getNewVariables().isEmpty()) {
-							break;
-						}
-					}
-				}
+		private UtilityTable computeQValues(DialogueState state, int horizon) {
+			Set<String> actionNodes = state.getActionNodeIds();
+			UtilityTable rewards = (FACTORED_DECISION && actionNodes.size() > 1)
+					? state.queryUtil(actionNodes, NB_BEST_ACTIONS)
+					: state.queryUtil(actionNodes);
+			if (horizon == 1) {
+				return rewards;
+			}
+
+			UtilityTable qValues = new UtilityTable();
+			double discount = system.getSettings().discountFactor;
+
+			// only the N-best actions are expanded further (the other actions are
+			// left out of the Q-values, as their rewards are not comparable to the
+			// expanded values)
+			UtilityTable nbestActions =
+					(rewards.getRows().size() > NB_BEST_ACTIONS) ? rewards
+							.getNBest(NB_BEST_ACTIONS) : rewards;
+			for (Assignment action : nbestActions.getRows()) {
+				qValues.setUtil(action, rewards.getUtil(action));
 			}
+
+			// the lookahead for each action is independent of the others
+			Domain domain = system.getDomain();
+			Map<Assignment, Double> expectedValues =
+					getStream(nbestActions.getRows()).filter(
+							a -> !a.isDefault() && hasTransition(a, domain)).collect(
+							Collectors.toMap(a -> a,
+									a -> getExpectedValue(state, a, horizon - 1)));
+
+			for (Assignment action : expectedValues.keySet()) {
+				double expected = discount * expectedValues.get(action);
+				qValues.setUtil(action, qValues.getUtil(action) + expected);
+			}
+			return qValues;
 		}
 
 		/**
-		 * Returns true if the dialogue domain specifies a transition model for the
-		 * particular action assignment.
+		 * Estimates the expected value (V) of the dialogue state resulting from the
+		 * execution of the action, in the current planning horizon. If the planner
+		 * has been terminated, the value is 0.0.
 		 * 
-		 * @param action the assignment of action values
-		 * @return true if a transition is defined, false otherwise.
+		 * @param state the dialogue state
+		 * @param action the action to execute
+		 * @param horizon the planning horizon
+		 * @return the expected value after the action
 		 */
-		private boolean hasTransition(Assignment action) {
-			for (Model m : system.getDomain().getModels()) {
-				if (m.isTriggered(action.removePrimes().getVariables())) {
-					return true;
-				}
+		private double getExpectedValue(DialogueState state, Assignment action,
+				int horizon) {
+			if (isTerminated || paused) {
+				isInterrupted = true;
+				return 0.0;
 			}
-			return false;
+			DialogueState copy = state.copy();
+			copy.addToState(action.removePrimes());
+			updateState(copy, system.getDomain());
+			return getExpectedValue(copy, horizon);
 		}
 
 		/**
@@ -289,64 +490,230 @@ public class ForwardPlanner implements Module {
 
 			MultivariateTable observations = getObservations(state);
 			MultivariateTable nbestObs = observations.getNBest(NB_BEST_OBSERVATIONS);
-			double expectedValue = 0.0;
-			for (Assignment obs : nbestObs.getValues()) {
-				double obsProb = nbestObs.getProb(obs);
-				if (obsProb > MIN_OBSERVATION_PROB) {
-					DialogueState copy = state.copy();
-					copy.addToState(obs);
-					updateState(copy);
-
-					UtilityTable qValues = getQValues(copy, horizon);
-					if (!qValues.getRows().isEmpty()) {
-						Assignment bestAction = qValues.getBest().getKey();
-						double afterObs = qValues.getUtil(bestAction);
-						expectedValue += obsProb * afterObs;
-					}
-				}
-			}
+			return getStream(nbestObs.getValues()).filter(
+					o -> nbestObs.getProb(o) > MIN_OBSERVATION_PROB).mapToDouble(
+					o -> nbestObs.getProb(o) * getValueAfterObs(state, o, horizon))
+					.sum();
+		}
 
-			return expectedValue;
+		/**
+		 * Returns the utility of the best action in the dialogue state updated with
+		 * the observation (or 0.0 if no action is available).
+		 * 
+		 * @param state the dialogue state
+		 * @param obs the observation
+		 * @param horizon the planning horizon
+		 * @return the value after the observation
+		 */
+		private double getValueAfterObs(DialogueState state, Assignment obs,
+				int horizon) {
+			DialogueState copy = state.copy();
+			copy.addToState(obs);
+			updateState(copy, system.getDomain());
+
+			UtilityTable qValues = getQValues(copy, horizon);
+			if (qValues.getRows().isEmpty()) {
+				return 0.0;
+			}
+			Assignment bestAction = qValues.getBest().getKey();
+			return qValues.getUtil(bestAction);
 		}
 
 		/**
-		 * Returns the possible observations that are expected to be perceived from
-		 * the dialogue state
+		 * Returns a stream over the elements, which is parallel if
+		 * PARALLEL_EVALUATION is set to true.
 		 * 
-		 * @param state the dialogue state from which to extract observations
-		 * @return the inferred observations @
+		 * @param elements the elements to evaluate
+		 * @return the corresponding stream
 		 */
-		private MultivariateTable getObservations(DialogueState state) {
-			Set<String> predictionNodes = new HashSet<String>();
-			for (String nodeId : state.getChanceNodeIds()) {
-				if (nodeId.contains("^p")) {
-					predictionNodes.add(nodeId);
+		private <T> Stream<T> getStream(Collection<T> elements) {
+			return (PARALLEL_EVALUATION) ? elements.parallelStream() : elements
+					.stream();
+		}
+
+	}
+
+	/**
+	 * Updates the dialogue state by triggering the models of the domain until no
+	 * new variables remain to be processed.
+	 * 
+	 * @param state the dialogue state
+	 * @param domain the dialogue domain
+	 */
+	static void updateState(DialogueState state, Domain domain) {
+
+		while (!state.getNewVariables().isEmpty()) {
+			Set<String> toProcess = state.getNewVariables();
+			state.reduce();
+			for (Model model : domain.getModels()) {
+				if (model.isTriggered(state, toProcess)) {
+					model.trigger(state);
+					if (model.isBlocking() && !state.getNewVariables().isEmpty()) {
+						break;
+					}
 				}
 			}
-			// intermediary observations
-			for (String nodeId : new HashSet<String>(predictionNodes)) {
-				if (state.getChanceNode(nodeId).hasDescendant(predictionNodes)) {
-					predictionNodes.remove(nodeId);
-				}
+		}
+	}
+
+	/**
+	 * Returns true if the dialogue domain specifies a transition model for the
+	 * particular action assignment.
+	 * 
+	 * @param action the assignment of action values
+	 * @param domain the dialogue domain
+	 * @return true if a transition is defined, false otherwise.
+	 */
+	static boolean hasTransition(Assignment action, Domain domain) {
+		for (Model m : domain.getModels()) {
+			if (m.isTriggered(action.removePrimes().getVariables())) {
+				return true;
 			}
+		}
+		return false;
+	}
 
-			MultivariateTable.Builder builder = new MultivariateTable.Builder();
+	/**
+	 * Returns the possible observations that are expected to be perceived from
+	 * the dialogue state
+	 * 
+	 * @param state the dialogue state from which to extract observations
+	 * @return the inferred observations @
+	 */
+	static MultivariateTable getObservations(DialogueState state) {
+		Set<String> predictionNodes = new HashSet<String>();
+		for (String nodeId : state.getChanceNodeIds()) {
+			if (nodeId.contains("^p")) {
+				predictionNodes.add(nodeId);
+			}
+		}
+		// intermediary observations
+		for (String nodeId : new HashSet<String>(predictionNodes)) {
+			if (state.getChanceNode(nodeId).hasDescendant(predictionNodes)) {
+				predictionNodes.remove(nodeId);
+			}
+		}
 
-			if (!predictionNodes.isEmpty()) {
-				MultivariateDistribution observations =
-						state.queryProb(predictionNodes);
+		MultivariateTable.Builder builder = new MultivariateTable.Builder();
 
-				for (Assignment a : observations.getValues()) {
-					Assignment newA = new Assignment();
-					for (String var : a.getVariables()) {
-						newA.addPair(var.replace("^p", ""), a.getValue(var));
-					}
-					builder.addRow(newA, observations.getProb(a));
+		if (!predictionNodes.isEmpty()) {
+			MultivariateDistribution observations =
+					state.queryProb(predictionNodes);
+
+			for (Assignment a : observations.getValues()) {
+				Assignment newA = new Assignment();
+				for (String var : a.getVariables()) {
+					newA.addPair(var.replace("^p", ""), a.getValue(var));
+				}
+				builder.addRow(newA, observations.getProb(a));
+			}
+		}
+		return builder.build();
+	}
+
+	/**
+	 * Returns a canonical fingerprint for the dialogue state, made of the evidence
+	 * and the content of the distributions of its chance nodes. The probabilities
+	 * are quantised with a resolution of FINGERPRINT_RESOLUTION. Dialogue states
+	 * with identical fingerprints are assumed to yield identical Q-values. If the
+	 * content of a distribution is too large to be enumerated, the method returns
+	 * null (and the Q-values for the state are not cached).
+	 * 
+	 * @param state the dialogue state
+	 * @return the fingerprint for the state (or null)
+	 */
+	static String getFingerprint(DialogueState state) {
+		StringBuilder fingerprint = new StringBuilder();
+		fingerprint.append(state.getEvidence());
+		for (String nodeId : new TreeSet<String>(state.getChanceNodeIds())) {
+			ChanceNode node = state.getChanceNode(nodeId);
+			fingerprint.append('|').append(nodeId).append(':');
+			if (!appendDistrib(fingerprint, node)) {
+				return null;
+			}
+		}
+		return fingerprint.toString();
+	}
+
+	/**
+	 * Appends the content of the distribution of the chance node to the
+	 * fingerprint. Conditional distributions are enumerated row by row, for each
+	 * condition of the table (or each combination of values for the input nodes).
+	 * Anchored rules are described by their rule and input nodes, since the rules
+	 * of the domain are fixed and their parameters are themselves chance nodes of
+	 * the state.
+	 * 
+	 * @param fingerprint the fingerprint to extend
+	 * @param node the chance node
+	 * @return true if the distribution could be described, false otherwise
+	 */
+	private static boolean appendDistrib(StringBuilder fingerprint, ChanceNode node) {
+		ProbDistribution distrib = node.getDistrib();
+		if (distrib instanceof IndependentDistribution) {
+			appendTable(fingerprint, (IndependentDistribution) distrib);
+			return true;
+		}
+		fingerprint.append(new TreeSet<String>(node.getInputNodeIds()));
+		if (distrib instanceof AnchoredRule) {
+			fingerprint.append(((AnchoredRule) distrib).getRule().getRuleId());
+			return true;
+		}
+		Collection<Assignment> conditions;
+		if (distrib instanceof ConditionalTable) {
+			conditions = ((ConditionalTable) distrib).getConditions();
+		}
+		else {
+			Map<String, Set<Value>> inputValues =
+					new LinkedHashMap<String, Set<Value>>();
+			long nbCombinations = 1;
+			for (BNode inputNode : node.getInputNodes()) {
+				Set<Value> values = inputNode.getValues();
+				nbCombinations *= values.size();
+				if (nbCombinations > MAX_FINGERPRINT_ROWS) {
+					return false;
 				}
+				inputValues.put(inputNode.getId(), values);
 			}
-			return builder.build();
+			conditions = InferenceUtils.getAllCombinations(inputValues);
 		}
+		if (conditions.size() > MAX_FINGERPRINT_ROWS) {
+			return false;
+		}
+		List<String> rows = new ArrayList<String>(conditions.size());
+		for (Assignment condition : conditions) {
+			StringBuilder row = new StringBuilder();
+			row.append(condition).append("->");
+			appendTable(row, distrib.getProbDistrib(condition));
+			rows.add(row.toString());
+		}
+		Collections.sort(rows);
+		fingerprint.append(rows);
+		return true;
+	}
 
+	/**
+	 * Appends the quantised rows of the (discretised) distribution to the
+	 * fingerprint. For continuous distributions, the content-based hashcode of the
+	 * density function is also appended, to distinguish functions that happen to
+	 * share the same discretisation.
+	 * 
+	 * @param fingerprint the fingerprint to extend
+	 * @param distrib the distribution
+	 */
+	private static void appendTable(StringBuilder fingerprint,
+			IndependentDistribution distrib) {
+		if (distrib instanceof ContinuousDistribution) {
+			fingerprint.append('#').append(
+					((ContinuousDistribution) distrib).getFunction().hashCode());
+		}
+		CategoricalTable table = distrib.toDiscrete();
+		List<String> rows = new ArrayList<String>();
+		for (Value v : table.getValues()) {
+			double prob = table.getProb(v);
+			rows.add(v + "=" + Math.round(prob / FINGERPRINT_RESOLUTION));
+		}
+		Collections.sort(rows);
+		fingerprint.append(rows);
 	}
 
 }
@@ -0,0 +1,460 @@
+// =================================================================                                                                   
+// Copyright (C) 2011-2015 Pierre Lison (plison@ifi.uio.no)
+
+// Permission is hereby granted, free of charge, to any person 
+// obtaining a copy of this software and associated documentation 
+// files (the "Software"), to deal in the Software without restriction, 
+// including without limitation the rights to use, copy, modify, merge, 
+// publish, distribute, sublicense, and/or sell copies of the Software, 
+// and to permit persons to whom the Software is furnished to do so, 
+// subject to the following conditions:
+
+// The above copyright notice and this permission notice shall be 
+// included in all copies or substantial portions of the Software.
+
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, 
+// EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+// MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. 
+// IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY 
+// CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, 
+// TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE 
+// SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+// =================================================================                                                                   
+
+package opendial.modules;
+
+import java.util.logging.*;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import opendial.DialogueState;
+import opendial.DialogueSystem;
+import opendial.Settings;
+import opendial.bn.distribs.MultivariateTable;
+import opendial.bn.distribs.UtilityTable;
+import opendial.bn.values.Value;
+import opendial.datastructs.Assignment;
+import opendial.domains.Domain;
+
+/**
+ * Anytime planner based on Monte Carlo tree search (UCT). The planner incrementally
+ * builds a search tree over the dialogue state, where each decision node contains
+ * the (belief) dialogue state and the immediate utility of each possible action,
+ * and each action node contains the dialogue state after the action together with
+ * the distribution over the observations predicted for the action. At each
+ * simulation, the actions are selected with the UCB1 criterion, the observations
+ * are sampled from the prediction nodes, and the discounted returns are
+ * propagated back to the root.
+ * 
+ * <p>
+ * The planner runs simulations until its time budget (twice the maximum sampling
+ * time) runs out, and then selects the action with the highest estimated value.
+ * Contrary to the forward planner, the depth of the search is therefore not
+ * limited by the number of actions and observations. When the observation
+ * following the selected action materialises in the next dialogue state, the
+ * statistics of the corresponding branch of the tree are reused in the next
+ * planning step.
+ * 
+ * <p>
+ * The planner can be used instead of the forward planner by attaching it to the
+ * dialogue system (e.g. through the "modules" parameter of the system settings).
+ * Since attached modules are inserted before the forward planner, the action is
+ * then selected by this planner.
+ *
+ * @author Pierre Lison (plison@ifi.uio.no)
+ */
+public class MCTSPlanner implements Module {
+
+	// logger
+	final static Logger log = Logger.getLogger("OpenDial");
+
+	/**
+	 * Exploration constant for the selection of actions (UCB1), relative to the
+	 * range of the returns observed during the search
+	 */
+	public static double EXPLORATION_CONSTANT = 1.0;
+
+	/** Maximum number of simulations at each planning step */
+	public static int MAX_SIMULATIONS = 1000;
+
+	DialogueSystem system;
+
+	volatile boolean paused = false;
+
+	// search tree constructed at the last planning step
+	DecisionNode lastTree;
+
+	// action selected at the last planning step
+	Assignment lastAction;
+
+	// minimum and maximum returns observed in the current search
+	double minReturn;
+	double maxReturn;
+
+	/**
+	 * Constructs a Monte Carlo tree search planner for the dialogue system.
+	 * 
+	 * @param system the dialogue system associated with the planner.
+	 */
+	public MCTSPlanner(DialogueSystem system) {
+		this.system = system;
+	}
+
+	/**
+	 * Does nothing.
+	 */
+	@Override
+	public void start() {
+	}
+
+	/**
+	 * Pauses the planner
+	 */
+	@Override
+	public void pause(boolean shouldBePaused) {
+		paused = shouldBePaused;
+	}
+
+	/**
+	 * Returns true if the planner is not paused.
+	 */
+	@Override
+	public boolean isRunning() {
+		return !paused;
+	}
+
+	/**
+	 * Triggers the planning process, and adds the best action to the dialogue
+	 * state.
+	 */
+	@Override
+	public void trigger(DialogueState state, Collection<String> updatedVars) {
+
+		// disallows action selection while the user is still talking
+		if (system.getFloor().equals("user")) {
+			state.removeNodes(state.getActionNodeIds());
+			state.removeNodes(state.getUtilityNodeIds());
+		}
+
+		if (paused || state.getActionNodeIds().isEmpty()) {
+			return;
+		}
+		try {
+			Assignment bestAction = plan(state);
+			state.removeNodes(state.getUtilityNodeIds());
+			state.removeNodes(new HashSet<String>(state.getActionNodeIds()));
+			state.addToState(bestAction.removePrimes());
+		}
+		catch (RuntimeException e) {
+			log.warning("could not perform planning, aborting action selection: "
+					+ e);
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * Runs the simulations from the dialogue state until the time budget or the
+	 * maximum number of simulations is reached, and returns the action with the
+	 * highest estimated value.
+	 * 
+	 * @param state the dialogue state
+	 * @return the best action
+	 */
+	public Assignment plan(DialogueState state) {
+		Settings settings = system.getSettings();
+
+		// if the speech stream is not finished, only allow fast, reactive
+		// responses
+		long timeout = Settings.maxSamplingTime * 2;
+		timeout = (state.hasChanceNode(settings.userSpeech)) ? timeout / 5 : timeout;
+		long deadline = System.currentTimeMillis() + timeout;
+
+		DecisionNode root = getRoot(state);
+		minReturn = 0.0;
+		maxReturn = 0.0;
+		if (settings.horizon > 1) {
+			for (int i = 0; i < MAX_SIMULATIONS && !paused
+					&& System.currentTimeMillis() < deadline; i++) {
+				simulate(root, settings.horizon);
+			}
+		}
+
+		Assignment bestAction = root.getBestAction();
+		lastTree = root;
+		lastAction = bestAction;
+		if (root.getValue(bestAction) < 0.001) {
+			bestAction = Assignment.createDefault(bestAction.getVariables());
+		}
+		return bestAction;
+	}
+
+	/**
+	 * Runs one simulation from the decision node, and returns the discounted
+	 * return of the simulation.
+	 * 
+	 * @param node the decision node
+	 * @param horizon the remaining planning horizon
+	 * @return the return of the simulation
+	 */
+	private double simulate(DecisionNode node, int horizon) {
+		if (node.actions.isEmpty()) {
+			return 0.0;
+		}
+		Domain domain = system.getDomain();
+		ActionNode actionNode =
+				node.select(EXPLORATION_CONSTANT * (maxReturn - minReturn));
+		Assignment action = actionNode.action;
+		double result = node.rewards.getUtil(action);
+
+		if (horizon > 1 && !action.isDefault()
+				&& ForwardPlanner.hasTransition(action, domain)) {
+			if (actionNode.state == null) {
+				DialogueState copy = node.state.copy();
+				copy.addToState(action.removePrimes());
+				ForwardPlanner.updateState(copy, domain);
+				actionNode.observations = ForwardPlanner.getObservations(copy);
+				actionNode.state = copy;
+			}
+			Assignment obs = (actionNode.observations.getValues().isEmpty())
+					? new Assignment() : actionNode.observations.sample();
+			DecisionNode child = actionNode.children.get(obs);
+			if (child == null) {
+				DialogueState copy = actionNode.state.copy();
+				if (!obs.isEmpty()) {
+					copy.addToState(obs);
+					ForwardPlanner.updateState(copy, domain);
+				}
+				child = new DecisionNode(copy);
+				actionNode.children.put(obs, child);
+			}
+			double discount = system.getSettings().discountFactor;
+			result += discount * simulate(child, horizon - 1);
+		}
+		node.visits++;
+		actionNode.update(result);
+		minReturn = Math.min(minReturn, result);
+		maxReturn = Math.max(maxReturn, result);
+		return result;
+	}
+
+	/**
+	 * Returns the root node for the search. If the dialogue state matches one of
+	 * the observations expected after the last selected action, the visit counts
+	 * and values of the corresponding branch are reused. The states, observations
+	 * and children of the reused actions are not, as they were derived from the
+	 * simulated belief rather than from the actual dialogue state.
+	 * 
+	 * @param state the dialogue state
+	 * @return the root node
+	 */
+	private DecisionNode getRoot(DialogueState state) {
+		DecisionNode root = new DecisionNode(state);
+		if (lastTree == null || !lastTree.actions.containsKey(lastAction)) {
+			return root;
+		}
+		Map<Assignment, DecisionNode> children =
+				lastTree.actions.get(lastAction).children;
+		for (Assignment obs : children.keySet()) {
+			if (!obs.isEmpty() && isObserved(state, obs)) {
+				DecisionNode branch = children.get(obs);
+				for (Assignment action : branch.actions.keySet()) {
+					ActionNode actionNode = root.actions.get(action);
+					if (actionNode != null) {
+						ActionNode previous = branch.actions.get(action);
+						actionNode.visits = previous.visits;
+						actionNode.value = previous.value;
+						root.visits += previous.visits;
+					}
+				}
+				break;
+			}
+		}
+		return root;
+	}
+
+	/**
+	 * Returns true if the observation corresponds to the most likely value of its
+	 * variables in the dialogue state.
+	 * 
+	 * @param state the dialogue state
+	 * @param obs the observation
+	 * @return true if the observation has materialised, else false
+	 */
+	private static boolean isObserved(DialogueState state, Assignment obs) {
+		for (String var : obs.getVariables()) {
+			if (!state.hasChanceNode(var)) {
+				return false;
+			}
+			Value best = state.queryProb(var).getBest();
+			if (!best.equals(obs.getValue(var))) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Decision node in the search tree, containing a dialogue state and the
+	 * statistics for each possible action.
+	 */
+	static final class DecisionNode {
+
+		// the dialogue state
+		final DialogueState state;
+
+		// the immediate utility of each action
+		final UtilityTable rewards;
+
+		// the action nodes
+		final Map<Assignment, ActionNode> actions;
+
+		// the number of visits
+		int visits;
+
+		/**
+		 * Creates a new decision node for the dialogue state, and computes the
+		 * utility of each possible action.
+		 * 
+		 * @param state the dialogue state
+		 */
+		DecisionNode(DialogueState state) {
+			this.state = state;
+			Set<String> actionNodes = state.getActionNodeIds();
+			if (actionNodes.isEmpty()) {
+				rewards = new UtilityTable();
+			}
+			else if (ForwardPlanner.FACTORED_DECISION && actionNodes.size() > 1) {
+				rewards = state.queryUtil(actionNodes, ForwardPlanner.NB_BEST_ACTIONS);
+			}
+			else {
+				rewards = state.queryUtil(actionNodes);
+			}
+			actions = new HashMap<Assignment, ActionNode>();
+			for (Assignment action : rewards.getRows()) {
+				actions.put(action, new ActionNode(action));
+			}
+		}
+
+		/**
+		 * Selects the action to explore, using the UCB1 criterion. Actions that
+		 * have never been tried are selected first (by decreasing utility).
+		 * 
+		 * @param exploration the weight of the exploration term
+		 * @return the selected action node
+		 */
+		ActionNode select(double exploration) {
+
+			// selecting the untried action with highest utility, if any
+			ActionNode untried = null;
+			double untriedUtil = Double.NEGATIVE_INFINITY;
+			for (ActionNode actionNode : actions.values()) {
+				if (actionNode.visits == 0) {
+					double util = rewards.getUtil(actionNode.action);
+					if (untried == null || util > untriedUtil) {
+						untried = actionNode;
+						untriedUtil = util;
+					}
+				}
+			}
+			if (untried != null) {
+				return untried;
+			}
+
+			// else, selecting the action with highest UCB1 score
+			ActionNode best = null;
+			double bestScore = Double.NEGATIVE_INFINITY;
+			for (ActionNode actionNode : actions.values()) {
+				double score = actionNode.value + exploration
+						* Math.sqrt(Math.log(visits) / actionNode.visits);
+				if (best == null || score > bestScore) {
+					best = actionNode;
+					bestScore = score;
+				}
+			}
+			return best;
+		}
+
+		/**
+		 * Returns the action with highest estimated value. Actions that have never
+		 * been simulated are estimated by their immediate utility.
+		 * 
+		 * @return the best action
+		 */
+		Assignment getBestAction() {
+			if (actions.isEmpty()) {
+				return new Assignment();
+			}
+			Assignment best = null;
+			for (Assignment action : actions.keySet()) {
+				if (best == null || getValue(action) > getValue(best)) {
+					best = action;
+				}
+			}
+			return best;
+		}
+
+		/**
+		 * Returns the estimated value of the action
+		 * 
+		 * @param action the action
+		 * @return the estimated value
+		 */
+		double getValue(Assignment action) {
+			ActionNode actionNode = actions.get(action);
+			if (actionNode == null) {
+				return 0.0;
+			}
+			return (actionNode.visits > 0) ? actionNode.value : rewards
+					.getUtil(action);
+		}
+	}
+
+	/**
+	 * Action node in the search tree, containing the statistics for the action,
+	 * the dialogue state after the action and the decision nodes for each sampled
+	 * observation.
+	 */
+	static final class ActionNode {
+
+		// the action
+		final Assignment action;
+
+		// the dialogue state after the action (lazily created)
+		DialogueState state;
+
+		// the observations expected after the action (lazily created)
+		MultivariateTable observations;
+
+		// the decision nodes for each sampled observation
+		final Map<Assignment, DecisionNode> children;
+
+		// the number of visits
+		int visits;
+
+		// the average return
+		double value;
+
+		/**
+		 * Creates a new action node
+		 * 
+		 * @param action the action
+		 */
+		ActionNode(Assignment action) {
+			this.action = action;
+			children = new HashMap<Assignment, DecisionNode>();
+		}
+
+		/**
+		 * Updates the statistics of the action with a new return
+		 * 
+		 * @param result the return
+		 */
+		void update(double result) {
+			visits++;
+			value += (result - value) / visits;
+		}
+	}
+}
@@ -0,0 +1,184 @@
+// =================================================================                                                                   
+// Copyright (C) 2011-2015 Pierre Lison (plison@ifi.uio.no)
+
+// Permission is hereby granted, free of charge, to any person 
+// obtaining a copy of this software and associated documentation 
+// files (the "Software"), to deal in the Software without restriction, 
+// including without limitation the rights to use, copy, modify, merge, 
+// publish, distribute, sublicense, and/or sell copies of the Software, 
+// and to permit persons to whom the Software is furnished to do so, 
+// subject to the following conditions:
+
+// The above copyright notice and this permission notice shall be 
+// included in all copies or substantial portions of the Software.
+
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, 
+// EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+// MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. 
+// IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY 
+// CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, 
+// TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE 
+// SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+// =================================================================                                                                   
+
+package opendial.modules;
+
+import java.util.Collection;
+import java.util.logging.Logger;
+
+import opendial.DialogueState;
+import opendial.DialogueSystem;
+import opendial.readers.XMLDomainReader;
+import opendial.utils.XMLUtils;
+
+/**
+ * Module compiling a policy from the action values estimated by the forward
+ * planner. Each time the dialogue state contains action nodes, the module runs the
+ * planner on a copy of the state and adds the resulting Q-values to the policy.
+ * The module is meant to be used offline, while importing a dialogue corpus or
+ * while interacting with a user simulator.
+ * 
+ * <p>
+ * The class can also be run from the command line to compile a policy from a
+ * dialogue corpus:
+ * 
+ * <pre>
+ * java opendial.modules.PolicyCompiler domain.xml dialogue.xml policy.xml
+ * </pre>
+ * 
+ * The resulting policy can then be used at runtime through the module
+ * {@link CompiledPlanner}.
+ *
+ * @author Pierre Lison (plison@ifi.uio.no)
+ */
+public class PolicyCompiler implements Module {
+
+	// logger
+	final static Logger log = Logger.getLogger("OpenDial");
+
+	/** Resolution for the quantisation of the state features */
+	public static double RESOLUTION = 0.1;
+
+	DialogueSystem system;
+
+	// the planner employed to estimate the action values
+	ForwardPlanner planner;
+
+	// the compiled policy
+	CompiledPolicy policy;
+
+	boolean paused = true;
+
+	/**
+	 * Creates a new policy compiler for the dialogue system
+	 * 
+	 * @param system the dialogue system
+	 */
+	public PolicyCompiler(DialogueSystem system) {
+		this.system = system;
+		planner = new ForwardPlanner(system);
+		policy = new CompiledPolicy(RESOLUTION);
+	}
+
+	/**
+	 * Starts the compiler.
+	 */
+	@Override
+	public void start() {
+		paused = false;
+	}
+
+	/**
+	 * Pauses the compiler
+	 */
+	@Override
+	public void pause(boolean toPause) {
+		paused = toPause;
+	}
+
+	/**
+	 * Returns true if the compiler is running, else false.
+	 */
+	@Override
+	public boolean isRunning() {
+		return !paused;
+	}
+
+	/**
+	 * If the dialogue state contains action nodes, runs the planner on a copy of
+	 * the state and adds the estimated action values to the policy.
+	 */
+	@Override
+	public void trigger(DialogueState state, Collection<String> updatedVars) {
+		if (paused || state.getActionNodeIds().isEmpty()) {
+			return;
+		}
+		planner.currentProcess = null;
+		planner.trigger(state.copy(), updatedVars);
+		if (planner.currentProcess != null
+				&& planner.currentProcess.getActionValues() != null) {
+			policy.addExample(state, planner.currentProcess.getActionValues());
+		}
+	}
+
+	/**
+	 * Returns the compiled policy
+	 * 
+	 * @return the policy
+	 */
+	public CompiledPolicy getPolicy() {
+		return policy;
+	}
+
+	/**
+	 * Compiles a policy from a dialogue corpus, and saves it in a file. The content
+	 * of the args array is ignored. Command-line parameters are specified through
+	 * system properties via the -D flag.
+	 * 
+	 * <p>
+	 * Possible properties are:
+	 * <ul>
+	 * <li>-Ddomain=path/to/domain/file: dialogue domain file (required)
+	 * <li>-Ddialogue=path/to/recorded/dialogue: dialogue file to import (required)
+	 * <li>-Dpolicy=path/to/policy/file: file in which to write the policy
+	 * (required)
+	 * <li>-Dsettings=path/to/settings/file: settings file
+	 * </ul>
+	 * 
+	 * @param args is ignored.
+	 * @throws InterruptedException if the import is interrupted
+	 */
+	public static void main(String[] args) throws InterruptedException {
+		String domainFile = System.getProperty("domain");
+		String settingsFile = System.getProperty("settings");
+		String dialogueFile = System.getProperty("dialogue");
+		String policyFile = System.getProperty("policy");
+		if (domainFile == null || dialogueFile == null || policyFile == null) {
+			log.severe("the domain, dialogue and policy files must be specified "
+					+ "(with -Ddomain, -Ddialogue and -Dpolicy), aborting");
+			return;
+		}
+		try {
+			DialogueSystem system =
+					new DialogueSystem(XMLDomainReader.extractDomain(domainFile));
+			log.info("Domain from " + domainFile + " successfully extracted");
+			system.getSettings().fillSettings(System.getProperties());
+			if (settingsFile != null) {
+				system.getSettings().fillSettings(
+						XMLUtils.extractMapping(settingsFile));
+				log.info("Settings from " + settingsFile + " successfully extracted");
+			}
+			system.getSettings().showGUI = false;
+			system.attachModule(PolicyCompiler.class);
+			system.startSystem();
+			system.importDialogue(dialogueFile).join();
+			PolicyCompiler compiler = system.getModule(PolicyCompiler.class);
+			compiler.getPolicy().save(policyFile);
+			log.info(compiler.getPolicy() + " written to " + policyFile);
+			System.exit(0);
+		}
+		catch (RuntimeException e) {
+			log.severe("could not compile the policy, aborting: " + e);
+		}
+	}
+}
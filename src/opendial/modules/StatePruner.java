@@ -26,23 +26,33 @@ package opendial.modules;
 import java.util.logging.*;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.stream.Collectors;
 
 import opendial.DialogueState;
 import opendial.bn.BNetwork;
 import opendial.bn.distribs.CategoricalTable;
+import opendial.bn.distribs.ContinuousDistribution;
+import opendial.bn.distribs.IndependentDistribution;
 import opendial.bn.distribs.MarginalDistribution;
 import opendial.bn.distribs.ProbDistribution;
 import opendial.bn.nodes.ActionNode;
+import opendial.bn.nodes.BNode;
 import opendial.bn.nodes.ChanceNode;
 import opendial.bn.nodes.UtilityNode;
+import opendial.bn.values.Value;
 import opendial.bn.values.ValueFactory;
 import opendial.datastructs.Assignment;
 import opendial.domains.rules.distribs.AnchoredRule;
 import opendial.domains.rules.distribs.EquivalenceDistribution;
 import opendial.inference.SwitchingAlgorithm;
+import opendial.utils.InferenceUtils;
 
 /**
  * Prunes the dialogue state by removing all intermediary nodes (that is, rule nodes,
@@ -60,46 +70,261 @@ public class StatePruner {
 
 	public static boolean ENABLE_REDUCTION = true;
 
+	/**
+	 * Whether to restrict the pruning to the cliques of the state affected by the
+	 * current update (and leave the other cliques untouched)
+	 */
+	public static boolean INCREMENTAL_PRUNING = true;
+
+	/** Maximum number of values for each (unconditional) state variable */
+	public static int MAX_VALUES = 50;
+
+	/**
+	 * Maximum size of the joint table of a clique of state variables (above which
+	 * the clique is factorised into independent marginals)
+	 */
+	public static int MAX_CLIQUE_SIZE = 100000;
+
+	/** Maximum number of state variables in the dialogue state */
+	public static int MAX_NODES = 500;
+
 	/**
 	 * Prunes the state of all the non-necessary nodes. the operation selects a
 	 * subset of relevant nodes to keep, prunes the irrelevant ones, remove the
-	 * primes from the variable labels, and delete all empty nodes.
+	 * primes from the variable labels, and delete all empty nodes. Finally, the
+	 * resource bounds on the state are enforced.
 	 * 
 	 * 
 	 * @param state the state to prune
+	 * @return the probability mass dropped to enforce the resource bounds
 	 */
-	public static void prune(DialogueState state) {
+	public static double prune(DialogueState state) {
 
 		try {
+			// if possible, only prunes the affected cliques of the state, and
+			// reinserts the other nodes as they are
+			Set<String> region = getAffectedRegion(state);
+			if (INCREMENTAL_PRUNING && !region.isEmpty()
+					&& region.size() < state.getNodeIds().size()) {
+				Collection<BNode> otherNodes = state.getNodes().stream()
+						.filter(n -> !region.contains(n.getId()))
+						.collect(Collectors.toList());
+				BNetwork reduced = getPrunedState(state.getSubState(region));
+				reduced.addNodes(otherNodes);
+				state.reset(reduced);
+			}
+			else {
+				state.reset(getPrunedState(state));
+			}
+			return enforceBounds(state);
+		}
+		catch (RuntimeException e) {
+			log.warning("cannot prune state: " + e);
+			return 0.0;
+		}
+
+	}
 
-			// step 1 : selection of nodes to keep
-			Set<String> nodesToKeep = getNodesToKeep(state);
-			if (!nodesToKeep.isEmpty()) {
+	/**
+	 * Enforces the resource bounds on the dialogue state:
+	 * <ul>
+	 * <li>the unconditional variables are limited to their MAX_VALUES most likely
+	 * values (and their distribution is renormalised);
+	 * <li>the cliques whose joint table exceeds MAX_CLIQUE_SIZE are approximated
+	 * by the product of their marginals;
+	 * <li>if the state contains more than MAX_NODES variables, the least
+	 * informative ones (i.e. with the highest probability for None) are removed.
+	 * </ul>
+	 * The returned mass sums the probability of the values dropped from the
+	 * variables and the non-None probability of the removed variables. The
+	 * correlations lost by factorising cliques are not counted in this mass.
+	 * 
+	 * @param state the dialogue state
+	 * @return the probability mass dropped from the variable distributions
+	 */
+	private static double enforceBounds(DialogueState state) {
 
-				// step 2: reduction
-				DialogueState reduced = reduce(state, nodesToKeep);
+		// limiting the number of values per variable
+		double droppedMass = 0.0;
+		for (ChanceNode node : new ArrayList<ChanceNode>(state.getChanceNodes())) {
+			if (node.getInputNodeIds().isEmpty()
+					&& node.getDistrib() instanceof CategoricalTable
+					&& node.getNbValues() > MAX_VALUES) {
+				Map<Value, Double> beam = InferenceUtils.getNBest(
+						((CategoricalTable) node.getDistrib()).getTable(), MAX_VALUES);
+				double mass = beam.values().stream().mapToDouble(d -> d).sum();
+				droppedMass += Math.max(0.0, 1.0 - mass);
+				CategoricalTable.Builder builder =
+						new CategoricalTable.Builder(node.getId());
+				builder.addRows(beam);
+				builder.normalise();
+				node.setDistrib(builder.build());
+			}
+		}
 
-				// step 3: reinsert action and utility nodes (if necessary)
-				reinsertActionAndUtilityNodes(reduced, state);
+		// factorising the cliques with too large joint tables
+		int factorised = 0;
+		for (Set<String> clique : state.getCliques()) {
+			if (getJointSize(state, clique) > MAX_CLIQUE_SIZE) {
+				factorise(state, clique);
+				factorised++;
+			}
+		}
 
-				// step 4: remove the primes from the identifiers
-				removePrimes(reduced);
+		// removing the least informative variables
+		int excess = state.getChanceNodeIds().size() - MAX_NODES;
+		List<String> removed = new ArrayList<String>();
+		if (excess > 0) {
+			Map<String, Double> noneProbs = new LinkedHashMap<String, Double>();
+			state.getChanceNodes().stream()
+					.filter(n -> n.getOutputNodes().isEmpty())
+					.filter(n -> !state.getParameterIds().contains(n.getId()))
+					.filter(n -> !state.isIncremental(n.getId()))
+					.filter(n -> !state.getEvidence().containsVar(n.getId()))
+					.map(n -> n.getId())
+					.forEach(id -> noneProbs.put(id, state.queryProb(id)
+							.getProb(ValueFactory.none())));
+			noneProbs.keySet().stream()
+					.sorted(Comparator.comparingDouble(id -> -noneProbs.get(id)))
+					.limit(excess).forEach(id -> removed.add(id));
+			for (String id : removed) {
+				droppedMass += Math.max(0.0, 1.0 - noneProbs.get(id));
+				state.removeNode(id);
+			}
+		}
 
-				// step 5: filter the distribution and remove and empty nodes
-				removeSpuriousNodes(reduced);
+		if (droppedMass > 0.0 || factorised > 0 || !removed.isEmpty()) {
+			log.fine("resource bounds: dropped mass=" + droppedMass
+					+ ", factorised cliques=" + factorised + ", removed variables="
+					+ removed);
+		}
+		return droppedMass;
+	}
 
-				// step 6: and final reset the state to the reduced form
-				state.reset(reduced);
+	/**
+	 * Returns the size of the joint table for the chance nodes of the clique, or 0
+	 * if the clique contains parameters, incremental variables or continuous
+	 * distributions (which are never factorised).
+	 * 
+	 * @param state the dialogue state
+	 * @param clique the clique
+	 * @return the size of the joint table
+	 */
+	private static double getJointSize(DialogueState state, Set<String> clique) {
+		double size = 1.0;
+		for (String id : clique) {
+			if (!state.hasChanceNode(id)) {
+				continue;
 			}
-			else {
-				state.reset(new BNetwork());
+			ChanceNode node = state.getChanceNode(id);
+			if (state.getParameterIds().contains(id) || state.isIncremental(id)
+					|| node.getDistrib() instanceof ContinuousDistribution) {
+				return 0.0;
 			}
+			size *= node.getNbValues();
+		}
+		return size;
+	}
 
+	/**
+	 * Approximates the joint distribution of the chance nodes in the clique by the
+	 * product of their marginal distributions.
+	 * 
+	 * @param state the dialogue state
+	 * @param clique the clique to factorise
+	 */
+	private static void factorise(DialogueState state, Set<String> clique) {
+		Map<String, IndependentDistribution> marginals =
+				new HashMap<String, IndependentDistribution>();
+		for (String id : clique) {
+			if (state.hasChanceNode(id)) {
+				marginals.put(id, state.queryProb(id).toDiscrete());
+			}
 		}
-		catch (RuntimeException e) {
-			log.warning("cannot prune state: " + e);
+		for (String id : marginals.keySet()) {
+			ChanceNode node = state.getChanceNode(id);
+			for (String inputId : new ArrayList<String>(node.getInputNodeIds())) {
+				node.removeInputNode(inputId);
+			}
+			node.setDistrib(marginals.get(id));
 		}
+	}
+
+	/**
+	 * Returns the pruned version of the dialogue state.
+	 * 
+	 * @param state the state to prune
+	 * @return the pruned network
+	 */
+	private static BNetwork getPrunedState(DialogueState state) {
+
+		// step 1 : selection of nodes to keep
+		Set<String> nodesToKeep = getNodesToKeep(state);
+		if (nodesToKeep.isEmpty()) {
+			return new BNetwork();
+		}
+
+		// step 2: reduction
+		DialogueState reduced = reduce(state, nodesToKeep);
+
+		// step 3: reinsert action and utility nodes (if necessary)
+		reinsertActionAndUtilityNodes(reduced, state);
 
+		// step 4: remove the primes from the identifiers
+		removePrimes(reduced);
+
+		// step 5: filter the distribution and remove and empty nodes
+		removeSpuriousNodes(reduced);
+
+		return reduced;
+	}
+
+	/**
+	 * Returns the nodes of the cliques that are affected by the current update of
+	 * the dialogue state, and must therefore be pruned. The remaining cliques are
+	 * already in reduced form. A clique is affected if it contains a node that is
+	 * pending, outdated, part of the evidence, incremental, or not a regular state
+	 * variable (rule, action, utility and other intermediary nodes).
+	 * 
+	 * @param state the dialogue state
+	 * @return the identifiers of the nodes in the affected cliques
+	 */
+	public static Set<String> getAffectedRegion(DialogueState state) {
+		Set<String> region = new HashSet<String>();
+		for (Set<String> clique : state.getCliques()) {
+			if (clique.stream().anyMatch(id -> isAffected(state, id))) {
+				region.addAll(clique);
+			}
+		}
+		return region;
+	}
+
+	/**
+	 * Returns true if the node must be pruned, and false if it is a regular state
+	 * variable that can be kept as it is.
+	 * 
+	 * @param state the dialogue state
+	 * @param nodeId the node identifier
+	 * @return true if the node must be pruned, false otherwise
+	 */
+	private static boolean isAffected(DialogueState state, String nodeId) {
+		if (!state.hasChanceNode(nodeId)) {
+			return true;
+		}
+		else if (nodeId.endsWith("'") || state.hasChanceNode(nodeId + "'")
+				|| state.getEvidence().containsVar(nodeId)
+				|| state.isIncremental(nodeId)) {
+			return true;
+		}
+		else if (nodeId.startsWith("=_") || nodeId.endsWith("^t")
+				|| nodeId.endsWith("^o") || nodeId.endsWith("^p")) {
+			return true;
+		}
+		ChanceNode node = state.getChanceNode(nodeId);
+		return node.getDistrib() instanceof AnchoredRule
+				|| node.getDistrib() instanceof EquivalenceDistribution
+				|| (node.getNbValues() == 1 && node.getValues().iterator().next()
+						.equals(ValueFactory.none()));
 	}
 
 	/**
@@ -259,15 +484,17 @@ public class StatePruner {
 	 */
 	private static void removePrimes(DialogueState reduced) {
 
-		for (ChanceNode cn : new HashSet<ChanceNode>(reduced.getChanceNodes())) {
-			if (reduced.hasChanceNode(cn.getId() + "'")) {
-				log.warning("Reduction problem: two variables for " + cn.getId());
-				reduced.removeNode(cn.getId());
+		Set<String> newVars = reduced.getNewVariables();
+		for (String var : newVars) {
+			if (reduced.hasChanceNode(var)) {
+				log.warning("Reduction problem: two variables for " + var);
+				reduced.removeNode(var);
 			}
 		}
 
-		for (String nodeId : new HashSet<String>(reduced.getChanceNodeIds())) {
-			if (nodeId.contains("'")) {
+		for (String var : newVars) {
+			String nodeId = var + "'";
+			if (reduced.hasChanceNode(nodeId)) {
 				String newId = nodeId.replace("'", "");
 				if (!reduced.hasChanceNode(newId)) {
 					reduced.getChanceNode(nodeId).setId(newId);
@@ -314,7 +541,8 @@ public class StatePruner {
 					ProbDistribution curDistrib = outputNode.getDistrib();
 					outputNode.removeInputNode(node.getId());
 					if (outputNode.getInputNodeIds().isEmpty()) {
-						outputNode.setDistrib(curDistrib.getProbDistrib(onlyAssign));
+						outputNode.setDistrib(curDistrib.getProbDistrib(onlyAssign)
+								.copy());
 					}
 					else {
 						outputNode.setDistrib(curDistrib.getPosterior(onlyAssign));
@@ -27,6 +27,7 @@ import java.util.logging.*;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.stream.Collectors;
 
@@ -123,6 +124,11 @@ public class WizardLearner implements Module {
 				List<String> queryVars = new ArrayList<String>(relevantParams);
 				queryVars.addAll(wizardAction.getVariables());
 
+				// parameters whose posterior can be computed in closed form
+				Map<String, String> conjugates =
+						state.getConjugateParameters(relevantParams);
+				queryVars.addAll(conjugates.values());
+
 				Query query =
 						new Query.UtilQuery(state, queryVars, new Assignment());
 				EmpiricalDistribution empiricalDistrib =
@@ -133,8 +139,10 @@ public class WizardLearner implements Module {
 					ChanceNode paramNode = state.getChanceNode(param);
 
 					ProbDistribution newDistrib =
-							empiricalDistrib.getMarginal(param,
-									paramNode.getInputNodeIds());
+							(conjugates.containsKey(param)) ? state
+									.getConjugatePosterior(param, empiricalDistrib)
+									: empiricalDistrib.getMarginal(param,
+											paramNode.getInputNodeIds());
 					paramNode.setDistrib(newDistrib);
 				}
 			}
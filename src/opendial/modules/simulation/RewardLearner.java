@@ -163,8 +163,13 @@ public class RewardLearner implements Module {
 
 			if (!relevantParams.isEmpty()) {
 
-				Query query =
-						new Query.UtilQuery(state, relevantParams, actualAction);
+				// parameters whose posterior can be computed in closed form
+				Set<String> queryVars = new HashSet<String>(relevantParams);
+				Map<String, String> conjugates =
+						state.getConjugateParameters(relevantParams);
+				queryVars.addAll(conjugates.values());
+
+				Query query = new Query.UtilQuery(state, queryVars, actualAction);
 				EmpiricalDistribution empiricalDistrib =
 						sampler.getWeightedSamples(query,
 								cs -> reweightSamples(cs, actualUtility));
@@ -172,8 +177,10 @@ public class RewardLearner implements Module {
 				for (String param : relevantParams) {
 					ChanceNode paramNode = system.getState().getChanceNode(param);
 					ProbDistribution newDistrib =
-							empiricalDistrib.getMarginal(param,
-									paramNode.getInputNodeIds());
+							(conjugates.containsKey(param)) ? state
+									.getConjugatePosterior(param, empiricalDistrib)
+									: empiricalDistrib.getMarginal(param,
+											paramNode.getInputNodeIds());
 					paramNode.setDistrib(newDistrib);
 				}
 			}
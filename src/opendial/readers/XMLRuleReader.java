@@ -120,6 +120,9 @@ public class XMLRuleReader {
 			}
 		}
 
+		// compiling equality-based cases into a hash dispatch
+		rule.indexCases();
+
 		return rule;
 	}
 
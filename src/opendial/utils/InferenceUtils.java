@@ -25,12 +25,11 @@ package opendial.utils;
 
 import java.util.logging.*;
 import java.util.ArrayList;
-import java.util.Collections;
-import java.util.Comparator;
 import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.PriorityQueue;
 import java.util.Set;
 import java.util.stream.Collectors;
 
@@ -151,7 +150,11 @@ public class InferenceUtils {
 
 	/**
 	 * Returns a smaller version of the initial table that only retains the N
-	 * elements with a highest value
+	 * elements with a highest value. The selection relies on a bounded min-heap of
+	 * size N, and therefore runs in O(n log N) instead of sorting the full table.
+	 * The elements are returned in descending order of value (elements with
+	 * identical values being ordered from the last to the first in the initial
+	 * table).
 	 * 
 	 * @param initTable the full initial table
 	 * @param nbest the number of elements to retain
@@ -164,32 +167,42 @@ public class InferenceUtils {
 			log.warning("nbest should be >= 1, but is " + nbest);
 			nbest = 1;
 		}
-
-		List<Map.Entry<T, Double>> entries =
-				new ArrayList<Map.Entry<T, Double>>(initTable.entrySet());
-
-		Collections.sort(entries, (a, b) -> {
-			double result = a.getValue() - b.getValue();
-			return (Math.abs(result) < 0.0001) ? 0 : (int) (result * 10000000);
-		});
-
-		Collections.reverse(entries);
-
-		LinkedHashMap<T, Double> newTable = new LinkedHashMap<T, Double>();
-		int nb = 0;
-		for (Map.Entry<T, Double> entry : entries) {
-			if (nb < nbest) {
-				newTable.put(entry.getKey(), entry.getValue());
-				nb++;
+		int size = Math.min(nbest, initTable.size());
+
+		// min-heap over the retained entries, the worst one being at the top
+		PriorityQueue<RankedEntry<T>> heap =
+				new PriorityQueue<RankedEntry<T>>(Math.max(size, 1));
+		int index = 0;
+		for (Map.Entry<T, Double> entry : initTable.entrySet()) {
+			RankedEntry<T> ranked =
+					new RankedEntry<T>(entry.getKey(), entry.getValue(), index++);
+			if (heap.size() < size) {
+				heap.add(ranked);
+			}
+			else if (ranked.compareTo(heap.peek()) > 0) {
+				heap.poll();
+				heap.add(ranked);
 			}
 		}
 
+		// extracting the entries from worst to best
+		List<RankedEntry<T>> entries = new ArrayList<RankedEntry<T>>(heap.size());
+		while (!heap.isEmpty()) {
+			entries.add(heap.poll());
+		}
+		LinkedHashMap<T, Double> newTable = new LinkedHashMap<T, Double>();
+		for (int i = entries.size() - 1; i >= 0; i--) {
+			newTable.put(entries.get(i).key, entries.get(i).value);
+		}
 		return newTable;
 	}
 
 	/**
 	 * Returns the ranking of the given assignment in the table, assuming an ordering
-	 * of the table in descending order.
+	 * of the table in descending order. Elements whose values differ by less than
+	 * minDifference share the same rank. The rank is computed in a single pass
+	 * over the table, by counting the elements whose value is (significantly)
+	 * higher than the one of the assignment.
 	 * 
 	 * @param initTable the table
 	 * @param assign the assignment to find
@@ -200,37 +213,42 @@ public class InferenceUtils {
 	 */
 	public static <T> int getRanking(Map<T, Double> initTable, T assign,
 			double minDifference) {
+		Double value = initTable.get(assign);
+		if (value == null) {
+			return -1;
+		}
+		int rank = 0;
+		for (Double other : initTable.values()) {
+			if (other - value >= minDifference) {
+				rank++;
+			}
+		}
+		return rank;
+	}
 
-		List<Map.Entry<T, Double>> entries =
-				new ArrayList<Map.Entry<T, Double>>(initTable.entrySet());
+	/**
+	 * Entry of a table together with its position in the table, used for the
+	 * selection of the N-best elements. Entries are ordered by value, and then by
+	 * position.
+	 */
+	private static final class RankedEntry<T> implements
+			Comparable<RankedEntry<T>> {
 
-		Comparator<Map.Entry<T, Double>> comp =
-				(a, b) -> {
-					double result = a.getValue() - b.getValue();
-					return (Math.abs(result) < minDifference) ? 0
-							: (int) (result * 10000000);
-				};
+		final T key;
+		final double value;
+		final int index;
 
-		Collections.sort(entries, comp);
-		Collections.reverse(entries);
+		RankedEntry(T key, double value, int index) {
+			this.key = key;
+			this.value = value;
+			this.index = index;
+		}
 
-		// find the minimum rank
-		for (int i = 0; i < entries.size(); i++) {
-			Map.Entry<T, Double> entry = entries.get(i);
-			if (entry.getKey().equals(assign)) {
-				return i;
-			}
-			for (int j = i + 1; j < entries.size(); j++) {
-				Map.Entry<T, Double> nextEntry = entries.get(j);
-				if (comp.compare(entry, nextEntry) != 0) {
-					break;
-				}
-				if (nextEntry.getKey().equals(assign)) {
-					return i;
-				}
-			}
+		@Override
+		public int compareTo(RankedEntry<T> other) {
+			int result = Double.compare(value, other.value);
+			return (result != 0) ? result : Integer.compare(index, other.index);
 		}
-		return -1;
 	}
 
 }
@@ -23,10 +23,17 @@
 
 package opendial.bn;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
 
 import java.util.logging.Logger;
 
+import opendial.bn.values.Value;
 import opendial.bn.values.ValueFactory;
 import opendial.datastructs.Assignment;
 
@@ -66,4 +73,33 @@ public class AssignmentTest {
 		assertFalse(a1bis.equals(a2));
 		assertFalse(a1bis.hashCode() == a2.hashCode());
 	}
+
+	@Test
+	public void testAssignMerge() {
+		Assignment a1 = Assignment.createFromString("C=3 ^ A=blue ^ E=true");
+		Assignment a2 = Assignment.createFromString("D=2 ^ A=blue ^ B=none");
+		Assignment a3 = Assignment.createFromString("A=red ^ F=1");
+		Assignment merge = new Assignment(a1, a2);
+		assertEquals(5, merge.size());
+		assertEquals(Assignment.createFromString("A=blue ^ B=none ^ C=3 ^ D=2 ^ E"),
+				merge);
+		assertTrue(merge.contains(a1) && merge.contains(a2));
+		assertFalse(a1.contains(merge));
+		assertTrue(a1.consistentWith(a2));
+		assertFalse(a1.consistentWith(a3));
+		assertTrue(merge.getTrimmed("C", "D", "G").consistentWith(a3));
+		assertEquals(a1, merge.getPruned(Arrays.asList("B", "D")));
+		assertEquals(ValueFactory.create("red"),
+				new Assignment(merge, a3).getValue("A"));
+
+		Map<String, Value> map = new HashMap<String, Value>(merge.getPairs());
+		assertEquals(map, merge.getPairs());
+		assertEquals(map.hashCode(), merge.hashCode());
+		assertEquals(map.keySet(), merge.getVariables());
+		merge.removePair("C");
+		merge.trim(Arrays.asList("A", "C", "E"));
+		assertEquals(Assignment.createFromString("A=blue ^ E"), merge);
+		assertEquals(2, merge.getValues().size());
+		assertFalse(merge.getPairs().containsKey("C"));
+	}
 }
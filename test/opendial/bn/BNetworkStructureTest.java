@@ -25,6 +25,8 @@ package opendial.bn;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 
 import java.util.Arrays;
@@ -146,6 +148,37 @@ public class BNetworkStructureTest {
 								ValueFactory.create("DoNothing"))), 0.0001f);
 	}
 
+	@Test
+	public void testCopyOnWrite() {
+		BNetwork bn = NetworkExamples.constructBasicNetwork();
+		BNetwork bn2 = bn.copy();
+		assertSame(bn.getChanceNode("Alarm").getDistrib(), bn2
+				.getChanceNode("Alarm").getDistrib());
+		assertSame(bn.getUtilityNode("Util1").getFunction(), bn2
+				.getUtilityNode("Util1").getFunction());
+
+		bn2.getNode("Alarm").setId("Alarm2");
+		bn2.getUtilityNode("Util1").addUtility(
+				new Assignment(new Assignment("Burglary", true), "Action",
+						ValueFactory.create("DoNothing")), -20.0f);
+		assertNotSame(bn.getChanceNode("Alarm").getDistrib(), bn2
+				.getChanceNode("Alarm2").getDistrib());
+		assertNotSame(bn.getChanceNode("MaryCalls").getDistrib(), bn2
+				.getChanceNode("MaryCalls").getDistrib());
+		assertSame(bn.getChanceNode("Burglary").getDistrib(), bn2
+				.getChanceNode("Burglary").getDistrib());
+		assertEquals(0.7f, bn.getChanceNode("MaryCalls").getProb(
+				new Assignment("Alarm"), ValueFactory.create(true)), 0.0001f);
+		assertEquals(0.7f, bn2.getChanceNode("MaryCalls").getProb(
+				new Assignment("Alarm2"), ValueFactory.create(true)), 0.0001f);
+		assertEquals(0.0f, bn.getUtilityNode("Util1").getUtility(
+				new Assignment(new Assignment("Burglary"), "Action",
+						ValueFactory.create("DoNothing"))), 0.0001f);
+		assertEquals(-20.0f, bn2.getUtilityNode("Util1").getUtility(
+				new Assignment(new Assignment("Burglary"), "Action",
+						ValueFactory.create("DoNothing"))), 0.0001f);
+	}
+
 	@Test
 	public void testStructure() {
 
@@ -25,16 +25,23 @@ package opendial.bn;
 
 import static org.junit.Assert.*;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
 import java.util.logging.Logger;
 
 import opendial.Settings;
 import opendial.bn.distribs.CategoricalTable;
 import opendial.bn.distribs.ConditionalTable;
 import opendial.bn.distribs.ContinuousDistribution;
+import opendial.bn.distribs.EmpiricalDistribution;
 import opendial.bn.distribs.IndependentDistribution;
 import opendial.bn.distribs.MultivariateTable;
+import opendial.bn.distribs.UtilityTable;
 import opendial.bn.distribs.densityfunctions.DirichletDensityFunction;
+import opendial.bn.distribs.densityfunctions.DiscretisationCache;
 import opendial.bn.distribs.densityfunctions.GaussianDensityFunction;
 import opendial.bn.distribs.densityfunctions.KernelDensityFunction;
 import opendial.bn.distribs.densityfunctions.UniformDensityFunction;
@@ -45,8 +52,11 @@ import opendial.bn.values.Value;
 import opendial.bn.values.ValueFactory;
 import opendial.common.InferenceChecks;
 import opendial.datastructs.Assignment;
+import opendial.domains.rules.distribs.OutputDistribution;
+import opendial.domains.rules.effects.Effect;
 import opendial.inference.approximate.SamplingAlgorithm;
 import opendial.inference.exact.VariableElimination;
+import opendial.utils.InferenceUtils;
 import opendial.utils.MathUtils;
 
 import org.junit.Test;
@@ -488,4 +498,235 @@ public class DistributionsTest {
 		}
 	}
 
+
+	@Test
+	public void testOutputDistribCache() {
+		Effect e1 = Effect.parseEffect("a_u:=Greet");
+		Effect e2 = Effect.parseEffect("a_u:=Ask");
+		Effect e3 = Effect.parseEffect("a_m:=Hello");
+		OutputDistribution output = new OutputDistribution("a_u'");
+		output.addEffects(new HashSet<Effect>(Arrays.asList(e1, e2)));
+		Assignment cond1 = new Assignment("rule1", e1);
+		Assignment cond2 = new Assignment(new Assignment("rule1", e1),
+				new Assignment("rule2", e3));
+		IndependentDistribution d1 = output.getProbDistrib(cond1);
+		assertEquals(1.0, d1.getProb("Greet"), 0.001);
+		assertSame(d1, output.getProbDistrib(cond1));
+		assertSame(d1, output.getProbDistrib(cond2));
+		assertEquals(0.5, output.getProbDistrib(new Assignment(new Assignment(
+				"rule1", e1), new Assignment("rule2", e2))).getProb("Ask"), 0.001);
+		output.addEffects(new HashSet<Effect>(Arrays.asList(e3)));
+		assertNotSame(d1, output.getProbDistrib(cond1));
+		assertEquals(d1, output.getProbDistrib(cond1));
+	}
+
+	@Test
+	public void testOutputDistribValues() {
+		Effect e1 = Effect.parseEffect("a_u+=Greet");
+		Effect e2 = Effect.parseEffect("a_u+=Ask");
+		Effect e3 = Effect.parseEffect("a_u+=Ask ^ a_m:=Hello");
+		Effect e4 = Effect.parseEffect("a_m:=Hello");
+		OutputDistribution output = new OutputDistribution("a_u'");
+		output.addEffects(new HashSet<Effect>(Arrays.asList(e1, e2)));
+		assertEquals(2, output.getValues().size());
+		assertSame(output.getValues(), output.getValues());
+		output.addEffects(new HashSet<Effect>(Arrays.asList(e3, e4)));
+		Set<Value> values = output.getValues();
+		assertEquals(3, values.size());
+		assertTrue(values.contains(ValueFactory.create("[Greet,Ask]")));
+		assertTrue(values.contains(ValueFactory.create("[Greet]")));
+		assertTrue(values.contains(ValueFactory.create("[Ask]")));
+		OutputDistribution output2 = new OutputDistribution("a_m'");
+		output2.addEffects(new HashSet<Effect>(Arrays.asList(e1, e3)));
+		assertEquals(new HashSet<Value>(Arrays.asList(ValueFactory.none(),
+				ValueFactory.create("Hello"))), output2.getValues());
+	}
+
+	@Test
+	public void testCategoricalLookup() {
+		CategoricalTable.Builder builder = new CategoricalTable.Builder("x");
+		for (int i = 0; i < 20; i++) {
+			builder.addRow(i * 0.5, (i + 1) / 210.0);
+		}
+		CategoricalTable table = builder.build().toDiscrete();
+		assertEquals(20, table.size());
+		assertEquals(3 / 210.0, table.getProb(ValueFactory.create(1.0)), 0.0001);
+		assertEquals(3 / 210.0, table.getProb(ValueFactory.create(1.1)), 0.0001);
+		assertEquals(4 / 210.0, table.getProb(ValueFactory.create(1.4)), 0.0001);
+		assertEquals(1 / 210.0, table.getProb(ValueFactory.create(-3.0)), 0.0001);
+		assertEquals(20 / 210.0, table.getProb(ValueFactory.create(42.0)), 0.0001);
+		assertEquals(ValueFactory.create(9.5), table.getBest());
+		double total = 0.0;
+		for (int i = 0; i < 5000; i++) {
+			total += ((DoubleVal) table.sample()).getDouble();
+		}
+		assertEquals(6.33, total / 5000, 0.3);
+		assertTrue(table.pruneValues(0.02));
+		assertEquals(16, table.size());
+		assertFalse(table.hasProb(ValueFactory.create(1.0)));
+		assertEquals(5 / 200.0, table.getProb(ValueFactory.create(2.0)), 0.0001);
+		assertEquals(table, table.copy());
+		assertEquals(table.hashCode(), table.copy().hashCode());
+	}
+
+	@Test
+	public void testConditionalLookup() {
+		ConditionalTable.Builder builder = new ConditionalTable.Builder("C");
+		for (int i = 0; i < 20; i++) {
+			for (String b : Arrays.asList("x", "y")) {
+				Assignment cond = new Assignment(new Assignment("A", i),
+						new Assignment("B", b));
+				builder.addRow(cond, "c" + i + b, 0.6);
+				builder.addRow(cond, "other", 0.4);
+			}
+		}
+		ConditionalTable table = builder.build();
+		Assignment cond = new Assignment(new Assignment("A", 3),
+				new Assignment("B", "y"));
+		assertEquals(0.6, table.getProb(cond, ValueFactory.create("c3y")), 0.0001);
+		assertEquals(0.6, table.getProb(new Assignment(cond, "D", "foo"),
+				ValueFactory.create("c3y")), 0.0001);
+		assertEquals(0.0, table.getProb(new Assignment("A", 3),
+				ValueFactory.create("c3y")), 0.0001);
+		assertEquals(0.4, table.getProbDistrib(cond).getProb("other"), 0.0001);
+		assertEquals(ValueFactory.none(), table
+				.getProbDistrib(new Assignment(cond, "D", "foo")).getBest());
+		assertTrue(table.getProbDistrib(cond).getValues()
+				.contains(table.sample(new Assignment(cond, "D", "foo"))));
+		ConditionalTable posterior =
+				(ConditionalTable) table.getPosterior(new Assignment("B", "x"));
+		assertEquals(20, posterior.getConditions().size());
+		assertEquals(0.6, posterior.getProb(new Assignment("A", 7),
+				ValueFactory.create("c7x")), 0.0001);
+		posterior = (ConditionalTable) table.getPosterior(new Assignment("A", 7));
+		assertEquals(2, posterior.getConditions().size());
+		table.modifyVariableId("B", "B'");
+		assertEquals(0.0, table.getProb(cond, ValueFactory.create("c3y")), 0.0001);
+		assertEquals(0.6, table.getProb(new Assignment(new Assignment("A", 3),
+				new Assignment("B'", "y")), ValueFactory.create("c3y")), 0.0001);
+	}
+
+	@Test
+	public void testEmpiricalColumns() {
+		EmpiricalDistribution distrib = new EmpiricalDistribution();
+		for (int i = 0; i < 100; i++) {
+			Assignment sample = new Assignment("A", (i % 4 == 0) ? "yes" : "no");
+			sample.addPair("X", i / 10.0);
+			if (i % 2 == 0) {
+				sample.addPair("B", i % 3);
+			}
+			distrib.addSample(sample, (i < 50) ? 1.0 : 3.0);
+		}
+		assertEquals(100, distrib.size());
+		assertEquals(0.245, distrib.getMarginal("A").getProb("yes"), 0.0001);
+		assertEquals(0.5, distrib.getMarginal("B").getProb(ValueFactory.none()),
+				0.0001);
+		assertTrue(distrib.getMarginal("X") instanceof ContinuousDistribution);
+		assertTrue(distrib.getMarginal("B") instanceof CategoricalTable);
+		ConditionalTable cond = (ConditionalTable) distrib.getMarginal("B",
+				new HashSet<String>(Arrays.asList("A")));
+		assertEquals(100 / 151.0, cond.getProb(new Assignment("A", "no"),
+				ValueFactory.none()), 0.0001);
+
+		distrib.addSample(new Assignment("X", "unknown"));
+		assertEquals(1.0 / 201, distrib.createDiscrete("X").getProb("unknown"),
+				0.0001);
+		assertTrue(distrib.pruneValues(0.01));
+		assertEquals(100, distrib.size());
+		distrib.modifyVariableId("A", "A2");
+		assertEquals(0.245, distrib.copy().getMarginal("A2").getProb("yes"),
+				0.0001);
+		assertTrue(distrib.getSamples().contains(distrib.sample()));
+	}
+
+	@Test
+	public void testKernelApproximation() {
+		GaussianDensityFunction gaussian =
+				new GaussianDensityFunction(new double[] { 2.0, -1.0 },
+						new double[] { 3.0, 0.5 });
+		List<double[]> points = new ArrayList<double[]>();
+		for (int i = 0; i < 3000; i++) {
+			points.add(gaussian.sample());
+		}
+		KernelDensityFunction kde = new KernelDensityFunction(points);
+		for (double x = -6; x < 10; x += 0.37) {
+			double[] point = new double[] { x, -1.0 + x / 10 };
+			assertEquals(kde.getExactDensity(point), kde.getDensity(point), 1e-8);
+		}
+		assertEquals(1 / (2 * Math.PI * Math.sqrt(1.5)), kde.getDensity(2.0, -1.0),
+				0.03);
+		assertEquals(kde.getDensity(1.0, -0.8), kde.copy().getDensity(1.0, -0.8),
+				1e-10);
+
+		GaussianDensityFunction gaussian2 = new GaussianDensityFunction(1.0, 4.0);
+		points.clear();
+		for (int i = 0; i < 3000; i++) {
+			points.add(gaussian2.sample());
+		}
+		kde = new KernelDensityFunction(points);
+		double r = KernelDensityFunction.GRID_RESOLUTION;
+		double l = KernelDensityFunction.MAX_KERNEL_DISTANCE;
+		double maxError = (1 / (4 * r * r) + Math.exp(-l * l / 2))
+				/ (kde.getBandwidth()[0] * Math.sqrt(2 * Math.PI));
+		for (double x = -8; x < 10; x += 0.13) {
+			assertEquals(kde.getExactDensity(x), kde.getDensity(x), maxError);
+		}
+		assertEquals(gaussian2.getDensity(1.0), kde.getDensity(1.0), 0.03);
+		assertEquals(0.0, kde.getDensity(1000.0), 1e-10);
+	}
+
+	@Test
+	public void testDiscretisationCache() {
+		ContinuousDistribution distrib = new ContinuousDistribution("X",
+				new DirichletDensityFunction(new double[] { 2.0, 3.0, 1.0 }));
+		CategoricalTable table = distrib.toDiscrete();
+		CategoricalTable table2 = distrib.copy().toDiscrete();
+		assertEquals(table.getValues(), table2.getValues());
+		for (Value v : table.getValues()) {
+			assertEquals(table.getProb(v), table2.getProb(v), 0.00001);
+		}
+
+		GaussianDensityFunction gaussian =
+				new GaussianDensityFunction(1.0, 4.0);
+		assertEquals(gaussian, gaussian.copy());
+		assertEquals(gaussian.hashCode(), gaussian.copy().hashCode());
+		assertTrue(DiscretisationCache.discretise(gaussian, 20, true) ==
+				DiscretisationCache.discretise(gaussian.copy(), 20, true));
+		Settings.quantileDiscretisation = true;
+		CategoricalTable quantiles =
+				new ContinuousDistribution("Y", gaussian).toDiscrete();
+		Settings.quantileDiscretisation = false;
+		assertEquals(Settings.discretisationBuckets, quantiles.getValues().size());
+		double below = 0.0;
+		for (Value v : quantiles.getValues()) {
+			assertEquals(1.0 / Settings.discretisationBuckets,
+					quantiles.getProb(v), 0.0001);
+			below += (((DoubleVal) v).getDouble() < 3.0) ? quantiles.getProb(v)
+					: 0.0;
+		}
+		assertEquals(gaussian.getCDF(3.0), below, 0.02);
+	}
+
+	@Test
+	public void testTopRanking() {
+		UtilityTable table = new UtilityTable();
+		for (int i = 0; i < 1000; i++) {
+			table.setUtil(new Assignment("a", "v" + i), (i * 37) % 1000 / 10.0);
+		}
+		UtilityTable nbest = table.getNBest(5);
+		assertEquals(5, nbest.getRows().size());
+		assertEquals(99.9, nbest.getBest().getValue(), 0.0001);
+		assertTrue(nbest.getRows().contains(new Assignment("a", "v135")));
+		assertFalse(nbest.getRows().contains(new Assignment("a", "v162")));
+		List<Double> utils = new ArrayList<Double>(
+				InferenceUtils.getNBest(table.getTable(), 1000).values());
+		assertEquals(1000, utils.size());
+		for (int i = 1; i < utils.size(); i++) {
+			assertTrue(utils.get(i - 1) >= utils.get(i));
+		}
+		assertEquals(0, table.getRanking(new Assignment("a", "v27"), 0.01));
+		assertEquals(3, table.getRanking(new Assignment("a", "v108"), 0.01));
+		assertEquals(1, table.getRanking(new Assignment("a", "v108"), 0.25));
+		assertEquals(-1, table.getRanking(new Assignment("a", "v1000"), 0.01));
+	}
 }
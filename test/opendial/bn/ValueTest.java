@@ -27,6 +27,8 @@ import java.util.logging.*;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 
 import java.util.Arrays;
@@ -118,6 +120,25 @@ public class ValueTest {
 
 	}
 
+	@Test
+	public void testInterning() {
+		assertSame(ValueFactory.create("blabla"), ValueFactory.create("blabla"));
+		assertSame(ValueFactory.create("3.5"), ValueFactory.create("3.5"));
+		assertSame(ValueFactory.create(true), ValueFactory.create("TRUE"));
+		assertSame(ValueFactory.create(false), ValueFactory.create(false).copy());
+		assertSame(ValueFactory.none(), ValueFactory.create("none"));
+		assertEquals(ValueFactory.create("Blabla"), ValueFactory.create("blabla"));
+		assertEquals("Blabla", ValueFactory.create("Blabla").toString());
+		assertNotSame(ValueFactory.create("[a,b]"), ValueFactory.create("[a,b]"));
+		assertNotSame(ValueFactory.create("[1,2]"), ValueFactory.create("[1,2]"));
+		assertTrue(ValueFactory.create("1.") instanceof StringVal);
+		assertTrue(ValueFactory.create("-.5e-3") instanceof DoubleVal);
+		assertTrue(ValueFactory.create("[1 ,2]") instanceof SetVal);
+		assertEquals(ValueFactory.create("[f(x),g(y,z),a?b]"),
+				ValueFactory.create("[f(x), g(y,z), a, b]"));
+		assertEquals(2, ValueFactory.create("[x, h(y))]").length());
+	}
+
 	public void testClosest() {
 		Builder builder = new CategoricalTable.Builder("v");
 		builder.addRow(new double[] { 0.2, 0.2 }, 0.3);
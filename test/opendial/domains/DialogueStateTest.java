@@ -23,11 +23,19 @@
 
 package opendial.domains;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
 import java.util.logging.*;
 
+import java.util.Arrays;
+import java.util.HashSet;
+
 import opendial.DialogueState;
 import opendial.DialogueSystem;
 import opendial.common.InferenceChecks;
+import opendial.datastructs.Assignment;
 import opendial.domains.rules.effects.Effect;
 import opendial.modules.ForwardPlanner;
 import opendial.modules.StatePruner;
@@ -103,4 +111,45 @@ public class DialogueStateTest {
 
 	}
 
+	@Test
+	public void testNewVariables() {
+		DialogueState state = new DialogueState();
+		state.addToState(new Assignment("a_u", "Hello"));
+		state.addToState(new Assignment("b", "World"));
+		assertEquals(new HashSet<String>(Arrays.asList("a_u", "b")),
+				state.getNewVariables());
+		DialogueState copy = state.copy();
+		assertEquals(state.getNewVariables(), copy.getNewVariables());
+		state.getChanceNode("b'").setId("b");
+		assertEquals(new HashSet<String>(Arrays.asList("a_u")),
+				state.getNewVariables());
+		state.reduce();
+		assertTrue(state.getNewVariables().isEmpty());
+		assertTrue(state.hasChanceNode("a_u"));
+		assertEquals(2, copy.getNewVariables().size());
+		copy.removeNode("a_u'");
+		assertEquals(new HashSet<String>(Arrays.asList("b")),
+				copy.getNewVariables());
+	}
+
+	@Test
+	public void testSnapshots() {
+		DialogueSystem system = new DialogueSystem(domain);
+		system.getSettings().showGUI = false;
+		system.detachModule(ForwardPlanner.class);
+		system.startSystem();
+
+		DialogueState snapshot = system.getSnapshot();
+		long version = system.getSnapshotVersion();
+		assertTrue(snapshot != system.getState());
+		assertFalse(snapshot.hasChanceNode("foo"));
+
+		system.addContent("foo", "bar");
+		assertTrue(system.getSnapshotVersion() > version);
+		assertTrue(system.getSnapshot().hasChanceNode("foo"));
+		assertFalse(snapshot.hasChanceNode("foo"));
+		assertEquals("bar", system.getSnapshot().queryProb("foo").getBest()
+				.toString());
+	}
+
 }
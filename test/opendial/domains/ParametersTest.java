@@ -30,12 +30,19 @@ import static org.junit.Assert.assertTrue;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 
+import opendial.DialogueState;
 import opendial.DialogueSystem;
 import opendial.bn.BNetwork;
 import opendial.bn.distribs.CategoricalTable;
+import opendial.bn.distribs.ContinuousDistribution;
 import opendial.bn.distribs.IndependentDistribution;
 import opendial.bn.distribs.UtilityTable;
+import opendial.bn.distribs.densityfunctions.DensityFunction;
+import opendial.bn.distribs.densityfunctions.DirichletDensityFunction;
+import opendial.bn.nodes.ChanceNode;
+import opendial.bn.values.Value;
 import opendial.bn.values.ValueFactory;
 import opendial.common.InferenceChecks;
 import opendial.datastructs.Assignment;
@@ -47,6 +54,7 @@ import opendial.domains.rules.parameters.ComplexParameter;
 import opendial.domains.rules.parameters.SingleParameter;
 import opendial.inference.approximate.SamplingAlgorithm;
 import opendial.modules.ForwardPlanner;
+import opendial.modules.WizardLearner;
 import opendial.readers.XMLDomainReader;
 import opendial.readers.XMLStateReader;
 
@@ -248,4 +256,57 @@ public class ParametersTest {
 		assertEquals(0.05, table.getProb("value: second with type 2"), 0.05);
 	}
 
+	@Test
+	public void testConjugateParams() {
+		DialogueState state = new DialogueState();
+		state.setParameters(params);
+		state.addNode(new ChanceNode("u_u", ValueFactory.create("no no")));
+		List<Rule> rules =
+				new ArrayList<Rule>(domain1.getModels().get(0).getRules());
+		state.applyRule(rules.get(1));
+		Map<Value, Integer> dims = state.getCategoricalDimensions("theta_4");
+		assertEquals(2, dims.size());
+		assertEquals(1, (int) dims.get(new Effect(new BasicEffect("a_u",
+				"Disapproval"))));
+		assertTrue(dims.containsValue(0));
+		assertTrue(state.getCategoricalDimensions("theta_3").isEmpty());
+
+		DirichletDensityFunction prior =
+				(DirichletDensityFunction) state.queryProb("theta_4").toContinuous()
+						.getFunction();
+		DirichletDensityFunction posterior =
+				prior.getPosteriorFromOutcome(new double[] { 0.0, 1.0 });
+		assertEquals(81 / 121.0, posterior.getMean()[1], 0.0001);
+		assertEquals(prior.getPosterior(new double[] { 0, 1 }).getVariance()[1],
+				posterior.getVariance()[1], 0.00001);
+		posterior = prior.getPosteriorFromOutcome(new double[] { 0.5, 0.5 });
+		assertEquals(80.5 / 121, posterior.getMean()[1], 0.0001);
+		posterior = prior.getPosteriorFromOutcome(new double[] { 0.0, 0.0 });
+		assertEquals(prior.getMean()[1], posterior.getMean()[1], 0.0001);
+
+		// the wizard learner updates the parameter in closed form
+		DialogueSystem system = new DialogueSystem(domain1);
+		system.getSettings().showGUI = false;
+		system.detachModule(ForwardPlanner.class);
+		system.attachModule(WizardLearner.class);
+		system.startSystem();
+		system.getState().addEvidence(new Assignment("u_m'", "so interesting!"));
+		system.addContent(new Assignment("u_u", "no no"));
+		ChanceNode paramNode = system.getState().getChanceNode("theta_4");
+		assertTrue(paramNode.getDistrib() instanceof ContinuousDistribution);
+		DensityFunction function =
+				((ContinuousDistribution) paramNode.getDistrib()).getFunction();
+		assertTrue(function instanceof DirichletDensityFunction);
+
+		// the outcome of the rule has probabilities (1/3, 2/3)
+		DirichletDensityFunction expected =
+				prior.getPosteriorFromOutcome(new double[] { 1 / 3.0, 2 / 3.0 });
+		double mean = function.getMean()[1];
+		double alphaSum = mean * (1 - mean) / function.getVariance()[1] - 1;
+		double expectedMean = expected.getMean()[1];
+		double expectedSum =
+				expectedMean * (1 - expectedMean) / expected.getVariance()[1] - 1;
+		assertEquals(expectedMean, mean, 0.005);
+		assertEquals(expectedSum, alphaSum, 0.5);
+	}
 }
@@ -24,7 +24,12 @@
 package opendial.domains;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
 
+import java.util.Arrays;
+import java.util.HashSet;
 import java.util.Set;
 import java.util.SortedSet;
 import java.util.TreeSet;
@@ -32,10 +37,15 @@ import java.util.logging.Logger;
 
 import opendial.DialogueState;
 import opendial.DialogueSystem;
+import opendial.bn.BNetwork;
 import opendial.bn.distribs.CategoricalTable;
+import opendial.bn.nodes.ChanceNode;
 import opendial.bn.values.Value;
 import opendial.bn.values.ValueFactory;
 import opendial.common.InferenceChecks;
+import opendial.common.NetworkExamples;
+import opendial.datastructs.Assignment;
+import opendial.modules.StatePruner;
 import opendial.readers.XMLDomainReader;
 
 import org.junit.Test;
@@ -183,4 +193,82 @@ public class PruningTest {
 		system.getState().reset(initialState);
 
 	}
+
+	@Test
+	public void testIncrementalPruning() {
+		DialogueState state = new DialogueState();
+		state.addToState(new Assignment("x", "a"));
+		CategoricalTable.Builder builder = new CategoricalTable.Builder("y");
+		builder.addRow("b", 0.6);
+		builder.addRow("c", 0.4);
+		state.addToState(builder.build());
+		state.reduce();
+		ChanceNode x = state.getChanceNode("x");
+		assertTrue(StatePruner.getAffectedRegion(state).isEmpty());
+
+		state.addToState(new Assignment("z", "d"));
+		state.addToState(new Assignment("y", "e"));
+		assertEquals(new HashSet<String>(Arrays.asList("y", "y'", "z'")),
+				StatePruner.getAffectedRegion(state));
+		state.reduce();
+		assertSame(x, state.getChanceNode("x"));
+		assertEquals(new HashSet<String>(Arrays.asList("x", "y", "z")),
+				state.getChanceNodeIds());
+		inference.checkProb(state, "y", "e", 1.0);
+		inference.checkProb(state, "z", "d", 1.0);
+	}
+
+	@Test
+	public void testResourceBounds() {
+		int maxValues = StatePruner.MAX_VALUES;
+		int maxCliqueSize = StatePruner.MAX_CLIQUE_SIZE;
+		int maxNodes = StatePruner.MAX_NODES;
+		StatePruner.MAX_VALUES = 3;
+		StatePruner.MAX_CLIQUE_SIZE = 10;
+		StatePruner.MAX_NODES = 7;
+		try {
+			BNetwork network = NetworkExamples.constructBasicNetwork();
+			network.removeNodes(Arrays.asList("Action", "Util1", "Util2"));
+			DialogueState state = new DialogueState(network);
+			double alarmProb =
+					state.queryProb("Alarm").getProb(ValueFactory.create(true));
+			CategoricalTable.Builder builder = new CategoricalTable.Builder("x");
+			builder.addRow("a", 0.4);
+			builder.addRow("b", 0.3);
+			builder.addRow("c", 0.2);
+			builder.addRow("d", 0.1);
+			state.addToState(builder.build());
+			builder = new CategoricalTable.Builder("y");
+			builder.addRow("f", 0.2);
+			state.addToState(builder.build());
+			state.addToState(new Assignment("z", "e"));
+			state.reduce();
+
+			assertEquals(3, state.getChanceNode("x").getNbValues());
+			assertEquals(0.3, state.getDroppedMass(), 0.0001);
+			inference.checkProb(state, "x", "a", 0.4 / 0.9);
+			assertTrue(state.getChanceNode("Alarm").getInputNodeIds().isEmpty());
+			inference.checkProb(state, "Alarm", "true", alarmProb);
+			assertEquals(7, state.getChanceNodeIds().size());
+			assertFalse(state.hasChanceNode("y"));
+			assertTrue(state.hasChanceNode("z"));
+
+			builder = new CategoricalTable.Builder("w");
+			builder.addRow("a", 0.5);
+			builder.addRow("b", 0.2);
+			builder.addRow("c", 0.2);
+			builder.addRow("d", 0.1);
+			state.addToState(builder.build());
+			state.reduce();
+			assertEquals(7, state.getChanceNodeIds().size());
+			assertEquals(1.4, state.getDroppedMass(), 0.0001);
+			state.resetDroppedMass();
+			assertEquals(0.0, state.getDroppedMass(), 0.0001);
+		}
+		finally {
+			StatePruner.MAX_VALUES = maxValues;
+			StatePruner.MAX_CLIQUE_SIZE = maxCliqueSize;
+			StatePruner.MAX_NODES = maxNodes;
+		}
+	}
 }
@@ -27,13 +27,26 @@ import java.util.logging.*;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 import opendial.DialogueSystem;
 import opendial.bn.values.ValueFactory;
 import opendial.common.InferenceChecks;
+import opendial.datastructs.Assignment;
+import opendial.domains.rules.Rule;
+import opendial.domains.rules.Rule.RuleType;
+import opendial.domains.rules.RuleGrounding;
+import opendial.domains.rules.RuleOutput;
+import opendial.domains.rules.conditions.BasicCondition;
+import opendial.domains.rules.conditions.BasicCondition.Relation;
+import opendial.domains.rules.conditions.ComplexCondition;
+import opendial.domains.rules.conditions.ComplexCondition.BinaryOperator;
+import opendial.domains.rules.conditions.Condition;
+import opendial.domains.rules.conditions.VoidCondition;
 import opendial.domains.rules.effects.BasicEffect;
 import opendial.domains.rules.effects.Effect;
 import opendial.modules.ForwardPlanner;
@@ -131,6 +144,62 @@ public class RuleTest3 {
 				Effect.parseEffect("v1:=val1 ^ v2+=val2 ^ v2!=val3"));
 	}
 
+	@Test
+	public void testIndexedCases() {
+		Rule rule = new Rule("indexed", RuleType.PROB);
+		Rule rule2 = new Rule("indexed", RuleType.PROB);
+		List<Condition> conds = new ArrayList<Condition>();
+		conds.add(new BasicCondition("a_u", "A", Relation.EQUAL));
+		conds.add(new ComplexCondition(Arrays.asList(new BasicCondition("a_u", "B",
+				Relation.EQUAL), new BasicCondition("x", "1", Relation.EQUAL)),
+				BinaryOperator.AND));
+		conds.add(new BasicCondition("x", "2", Relation.EQUAL));
+		conds.add(new BasicCondition("a_u", "B", Relation.EQUAL));
+		conds.add(new BasicCondition("a_u", "A", Relation.EQUAL));
+		conds.add(new BasicCondition("a_u", "C", Relation.EQUAL));
+		conds.add(new VoidCondition());
+		for (int i = 0; i < conds.size(); i++) {
+			RuleOutput o = new RuleOutput(RuleType.PROB);
+			o.addEffect(Effect.parseEffect("a_m:=Case" + i), 1.0);
+			rule.addCase(conds.get(i), o);
+			rule2.addCase(conds.get(i), o);
+		}
+		rule.indexCases();
+		assertTrue(rule.isIndexed());
+		assertFalse(rule2.isIndexed());
+		for (String au : Arrays.asList("A", "B", "C", "D", "None")) {
+			for (String x : Arrays.asList("1", "2", "3")) {
+				Assignment input = new Assignment(new Assignment("a_u", au),
+						new Assignment("x", x));
+				assertEquals(rule2.getOutput(input), rule.getOutput(input));
+			}
+		}
+		assertEquals(rule2.getOutput(new Assignment("x", "2")),
+				rule.getOutput(new Assignment("x", "2")));
+		assertTrue(rule.getOutput(new Assignment("a_u", "B")).getEffects()
+				.contains(Effect.parseEffect("a_m:=Case3")));
+	}
+
+	@Test
+	public void testGroundingJoin() {
+		Condition cond = new ComplexCondition(Arrays.asList(new BasicCondition(
+				"A", "[a,b,c]", Relation.IN), new BasicCondition("B", "[d,e]",
+				Relation.IN), new BasicCondition("B", "e", Relation.EQUAL),
+				new BasicCondition("u_u", "{A} is {C}", Relation.EQUAL)),
+				BinaryOperator.AND);
+		RuleGrounding g = cond.getGroundings(new Assignment("u_u", "b is blue"));
+		assertEquals(1, g.getAlternatives().size());
+		assertEquals(new Assignment(new Assignment("A", "b"), new Assignment("B",
+				"e"), new Assignment("C", "blue")), g.getAlternatives().iterator()
+				.next());
+		assertTrue(cond.getGroundings(new Assignment("u_u", "d is blue"))
+				.isFailed());
+		RuleGrounding g2 = new RuleGrounding(Arrays.asList(new Assignment("A", "a"),
+				new Assignment("A", "b")));
+		g2.extend(Arrays.asList(new Assignment("A", "a"), new Assignment("B", "c")));
+		assertEquals(3, g2.getAlternatives().size());
+	}
+
 	@Test
 	public void testIncondition() throws InterruptedException {
 		Domain domain = XMLDomainReader.extractDomain(inconditionFile);
@@ -219,6 +219,34 @@ public class TemplateStringTest {
 		assertEquals(t.fillSlots(new Assignment("X", "3")).toString(), "5");
 	}
 
+	@Test
+	public void testCompiledMath() {
+		String[] exprs = { "theta*2+1", "-theta^2/(1+alpha)", "sin(theta)*cos(alpha)",
+				"theta^3 % 2", "sqrt(abs(theta-10)) + log(exp(alpha))",
+				"theta_1 * (alpha + theta1)", "-(-theta)+ +alpha" };
+		Assignment input = new Assignment(new Assignment("theta", 2.5),
+				new Assignment("alpha", 0.4), new Assignment("theta_1", -1.0),
+				new Assignment("theta1", 4.0));
+		for (String expr : exprs) {
+			MathExpression exp = new MathExpression(expr);
+			assertEquals(exp.evaluateWithExp4j(input), exp.evaluate(input), 0.00001);
+		}
+		MathExpression exp = new MathExpression("theta0 + 2 * theta1");
+		Assignment input2 = new Assignment("theta", new double[] { 3.0, 4.0 });
+		assertEquals(11.0, exp.evaluate(input2), 0.0001);
+		assertEquals(exp.evaluateWithExp4j(input2), exp.evaluate(input2), 0.0001);
+		double[] slots = new double[2];
+		slots[exp.getCompiled().getSlotIndex("theta0")] = 1.0;
+		slots[exp.getCompiled().getSlotIndex("theta1")] = 2.0;
+		assertEquals(5.0, exp.getCompiled().evaluate(slots), 0.0001);
+		try {
+			exp.evaluate(new Assignment("alpha", 2.0));
+			assertTrue(false);
+		}
+		catch (IllegalArgumentException e) {
+		}
+	}
+
 	@Test
 	public void ComplexRegex() {
 		Template t = new Template("a (pizza)? margherita");
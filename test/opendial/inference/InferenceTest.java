@@ -29,6 +29,7 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
 import java.util.Arrays;
+import java.util.List;
 import java.util.Map;
 
 import opendial.bn.BNetwork;
@@ -37,9 +38,12 @@ import opendial.bn.distribs.ContinuousDistribution;
 import opendial.bn.distribs.EmpiricalDistribution;
 import opendial.bn.distribs.MultivariateDistribution;
 import opendial.bn.distribs.MultivariateTable;
+import opendial.bn.distribs.UtilityTable;
 import opendial.bn.distribs.densityfunctions.GaussianDensityFunction;
 import opendial.bn.distribs.densityfunctions.UniformDensityFunction;
+import opendial.bn.nodes.ActionNode;
 import opendial.bn.nodes.ChanceNode;
+import opendial.bn.nodes.UtilityNode;
 import opendial.bn.values.ValueFactory;
 import opendial.common.NetworkExamples;
 import opendial.datastructs.Assignment;
@@ -381,6 +385,57 @@ public class InferenceTest {
 		SwitchingAlgorithm.MAX_BRANCHING_FACTOR = oldFactor;
 	}
 
+	@Test
+	public void testFactoredDecision() {
+		BNetwork network = NetworkExamples.constructBasicNetwork();
+		ActionNode action2 = new ActionNode("Action2");
+		ActionNode action3 = new ActionNode("Action3");
+		for (String val : Arrays.asList("A", "B", "C")) {
+			action2.addValue(ValueFactory.create(val));
+			action3.addValue(ValueFactory.create(val));
+		}
+		network.addNode(action2);
+		network.addNode(action3);
+
+		UtilityNode util3 = new UtilityNode("Util3");
+		util3.addInputNode(network.getNode("Alarm"));
+		util3.addInputNode(action2);
+		util3.addUtility(new Assignment(new Assignment("Alarm"), "Action2", "A"),
+				2.0);
+		util3.addUtility(new Assignment(new Assignment("!Alarm"), "Action2", "B"),
+				1.0);
+		network.addNode(util3);
+
+		UtilityNode util4 = new UtilityNode("Util4");
+		util4.addInputNode(action2);
+		util4.addInputNode(action3);
+		util4.addUtility(new Assignment(new Assignment("Action2", "C"), "Action3",
+				"C"), 1.5);
+		util4.addUtility(new Assignment(new Assignment("Action2", "A"), "Action3",
+				"A"), -0.4);
+		network.addNode(util4);
+
+		UtilityNode util5 = new UtilityNode("Util5");
+		util5.addInputNode(network.getNode("JohnCalls"));
+		util5.addUtility(new Assignment("JohnCalls"), -0.2);
+		network.addNode(util5);
+
+		List<String> actions = Arrays.asList("Action", "Action2", "Action3");
+		Assignment evidence = new Assignment("MaryCalls");
+		UtilityTable full =
+				new VariableElimination().queryUtil(network, actions, evidence);
+		UtilityTable factored =
+				new FactoredDecision(new VariableElimination()).queryBestActions(
+						network, actions, evidence, 4);
+		assertEquals(4, factored.getRows().size());
+		for (Assignment a : factored.getRows()) {
+			assertEquals(full.getUtil(a), factored.getUtil(a), 0.0001);
+			assertTrue(full.getRanking(a, 0.0001) < 4);
+		}
+		assertEquals(full.getBest().getValue(), factored.getBest().getValue(),
+				0.0001);
+	}
+
 	/**
 	 * @Test public void specialUtilQueryTest() {
 	 * 
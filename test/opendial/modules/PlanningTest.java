@@ -25,12 +25,22 @@ package opendial.modules;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.logging.Logger;
 
+import opendial.DialogueState;
 import opendial.DialogueSystem;
+import opendial.Settings;
 import opendial.bn.distribs.CategoricalTable;
+import opendial.bn.distribs.ContinuousDistribution;
+import opendial.bn.distribs.densityfunctions.DirichletDensityFunction;
 import opendial.common.InferenceChecks;
+import opendial.datastructs.Assignment;
 import opendial.domains.Domain;
 import opendial.readers.XMLDomainReader;
 
@@ -134,4 +144,188 @@ public class PlanningTest {
 
 	}
 
+	@Test
+	public void testPlanning6() throws InterruptedException {
+
+		for (boolean parallel : new boolean[] { false, true }) {
+			ForwardPlanner.PARALLEL_EVALUATION = parallel;
+			DialogueSystem system = new DialogueSystem(domain3);
+			system.getSettings().showGUI = false;
+
+			system.getSettings().horizon = 3;
+			system.startSystem();
+
+			CategoricalTable.Builder t1 = new CategoricalTable.Builder("a_u");
+			t1.addRow("Ask(Coffee)", 0.3);
+			t1.addRow("Ask(Tea)", 0.3);
+			system.addContent(t1.build());
+			inference.checkProb(system.getState(), "a_m", "AskRepeat", 1.0);
+
+			t1 = new CategoricalTable.Builder("a_u");
+			t1.addRow("Ask(Coffee)", 0.95);
+			t1.addRow("Ask(Tea)", 0.02);
+			system.addContent(t1.build());
+			inference.checkProb(system.getState(), "a_m", "Do(Coffee)", 1.0);
+		}
+		ForwardPlanner.PARALLEL_EVALUATION = true;
+	}
+
+	@Test
+	public void testIterativeDeepening() throws InterruptedException {
+
+		DialogueSystem system = new DialogueSystem(domain3);
+		system.getSettings().showGUI = false;
+		system.getSettings().horizon = 3;
+		system.detachModule(ForwardPlanner.class);
+		system.startSystem();
+
+		CategoricalTable.Builder t1 = new CategoricalTable.Builder("a_u");
+		t1.addRow("Ask(Coffee)", 0.3);
+		t1.addRow("Ask(Tea)", 0.3);
+		system.addContent(t1.build());
+		DialogueState state = system.getState();
+		assertFalse(state.getActionNodeIds().isEmpty());
+
+		// the search is terminated before the second horizon
+		ForwardPlanner planner = new ForwardPlanner(system);
+		ForwardPlanner.PlannerProcess process =
+				planner.new PlannerProcess(state.copy(), 0);
+		assertEquals(1, process.getDepthReached());
+		assertTrue(planner.transpositions.isEmpty());
+
+		// the search runs until the full horizon
+		process = planner.new PlannerProcess(state.copy(), -1);
+		assertEquals(3, process.getDepthReached());
+		assertFalse(planner.transpositions.isEmpty());
+	}
+
+	@Test
+	public void testTranspositions() throws InterruptedException {
+
+		DialogueSystem system = new DialogueSystem(domain3);
+		system.getSettings().showGUI = false;
+
+		system.getSettings().horizon = 3;
+		system.startSystem();
+
+		CategoricalTable.Builder t1 = new CategoricalTable.Builder("a_u");
+		t1.addRow("Ask(Coffee)", 0.95);
+		t1.addRow("Ask(Tea)", 0.02);
+		DialogueState state = system.getState().copy();
+		state.addToState(t1.build());
+		assertEquals(ForwardPlanner.getFingerprint(state),
+				ForwardPlanner.getFingerprint(state.copy()));
+		assertFalse(ForwardPlanner.getFingerprint(state).equals(
+				ForwardPlanner.getFingerprint(system.getState())));
+
+		DialogueState state2 = state.copy();
+		DialogueState state3 = state.copy();
+		state.addToState(new ContinuousDistribution("theta",
+				new DirichletDensityFunction(new double[] { 1.0, 2.0 })));
+		state2.addToState(new ContinuousDistribution("theta",
+				new DirichletDensityFunction(new double[] { 1.0, 2.0 })));
+		state3.addToState(new ContinuousDistribution("theta",
+				new DirichletDensityFunction(new double[] { 2.0, 1.0 })));
+		assertEquals(ForwardPlanner.getFingerprint(state),
+				ForwardPlanner.getFingerprint(state2));
+		assertFalse(ForwardPlanner.getFingerprint(state).equals(
+				ForwardPlanner.getFingerprint(state3)));
+
+		system.addContent(t1.build());
+		inference.checkProb(system.getState(), "a_m", "Do(Coffee)", 1.0);
+		ForwardPlanner planner = system.getModule(ForwardPlanner.class);
+		assertTrue(planner.transpositions.size() <= 500);
+		system.changeDomain(domain2);
+		system.addContent(t1.build());
+		assertTrue(planner.transpositionDomain == domain2);
+	}
+
+	@Test
+	public void testMCTSPlanning() throws InterruptedException {
+
+		long maxSamplingTime = Settings.maxSamplingTime;
+		Settings.maxSamplingTime = maxSamplingTime * 2;
+		try {
+			DialogueSystem system = new DialogueSystem(domain2);
+			system.getSettings().showGUI = false;
+			system.detachModule(ForwardPlanner.class);
+			system.attachModule(MCTSPlanner.class);
+			system.getSettings().horizon = 2;
+			system.startSystem();
+			inference.checkProb(system.getState(), "a_m", "AskRepeat", 1.0);
+
+			system = new DialogueSystem(domain3);
+			system.getSettings().showGUI = false;
+			system.detachModule(ForwardPlanner.class);
+			system.attachModule(MCTSPlanner.class);
+			system.getSettings().horizon = 3;
+			system.startSystem();
+
+			CategoricalTable.Builder t1 = new CategoricalTable.Builder("a_u");
+			t1.addRow("Ask(Coffee)", 0.3);
+			t1.addRow("Ask(Tea)", 0.3);
+			system.addContent(t1.build());
+			inference.checkProb(system.getState(), "a_m", "AskRepeat", 1.0);
+
+			t1 = new CategoricalTable.Builder("a_u");
+			t1.addRow("Ask(Coffee)", 0.95);
+			t1.addRow("Ask(Tea)", 0.02);
+			system.addContent(t1.build());
+			inference.checkProb(system.getState(), "a_m", "Do(Coffee)", 1.0);
+			assertTrue(system.getModule(MCTSPlanner.class).lastTree.visits > 0);
+		}
+		finally {
+			Settings.maxSamplingTime = maxSamplingTime;
+		}
+	}
+
+	@Test
+	public void testCompiledPolicy() throws InterruptedException, IOException {
+
+		DialogueSystem system = new DialogueSystem(domain3);
+		system.getSettings().showGUI = false;
+		system.getSettings().horizon = 3;
+		system.attachModule(PolicyCompiler.class);
+		system.startSystem();
+
+		CategoricalTable.Builder t1 = new CategoricalTable.Builder("a_u");
+		t1.addRow("Ask(Coffee)", 0.95);
+		t1.addRow("Ask(Tea)", 0.02);
+		system.addContent(t1.build());
+		inference.checkProb(system.getState(), "a_m", "Do(Coffee)", 1.0);
+		CompiledPolicy policy = system.getModule(PolicyCompiler.class).getPolicy();
+		assertTrue(policy.size() > 0);
+
+		File file = File.createTempFile("policy", ".xml");
+		policy.save(file.getPath());
+		CompiledPolicy policy2 = CompiledPolicy.load(file.getPath());
+		file.delete();
+		assertEquals(policy.size(), policy2.size());
+
+		system = new DialogueSystem(domain3);
+		system.getSettings().showGUI = false;
+		system.getSettings().horizon = 3;
+		system.detachModule(ForwardPlanner.class);
+		system.attachModule(new CompiledPlanner(system, policy2));
+		system.startSystem();
+		system.addContent(t1.build());
+		inference.checkProb(system.getState(), "a_m", "Do(Coffee)", 1.0);
+		assertTrue(system.getModule(CompiledPlanner.class).getCoverage() > 0.0);
+
+		CompiledPolicy.PolicyEntry entry = new CompiledPolicy.PolicyEntry();
+		Assignment a1 = new Assignment("a_m", "a1");
+		Assignment a2 = new Assignment("a_m", "a2");
+		Map<Assignment, Double> qValues = new HashMap<Assignment, Double>();
+		qValues.put(a1, 10.0);
+		qValues.put(a2, 1.0);
+		entry.update(qValues);
+		qValues.remove(a1);
+		entry.update(qValues);
+		qValues.put(a1, 0.0);
+		entry.update(qValues);
+		assertEquals(3, entry.count);
+		assertEquals(5.0, entry.values.get(a1), 0.0001);
+		assertEquals(1.0, entry.values.get(a2), 0.0001);
+	}
+
 }